@@ -0,0 +1,140 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of calling a private {@code tryUnloadCube} method the way the old unload sweep did (a generic {@link MethodHandle#invoke} on
+ * an untyped call site) against the way {@link CubeUnloader} does (a {@code static final} handle called with {@link MethodHandle#invokeExact}).
+ * <p>
+ * Cubic Chunks can't be loaded outside of a running server, so this uses a stand-in class with the same shape as {@code CubeProviderServer}.
+ * Each operation is a single cube, so the reported throughput is in unload attempts per second.
+ *
+ * @author DaPorkchop_
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(CubeUnloaderBenchmark.CUBES)
+public class CubeUnloaderBenchmark {
+    protected static final int CUBES = 4096;
+
+    private static final MethodHandle TRY_UNLOAD_CUBE;
+    private static final Method TRY_UNLOAD_CUBE_METHOD;
+    private static final Object[] SINGLETON_ARRAY = new Object[1];
+
+    static {
+        try {
+            TRY_UNLOAD_CUBE_METHOD = StandInProvider.class.getDeclaredMethod("tryUnloadCube", StandInCube.class);
+            TRY_UNLOAD_CUBE_METHOD.setAccessible(true);
+            TRY_UNLOAD_CUBE = MethodHandles.lookup().unreflect(TRY_UNLOAD_CUBE_METHOD)
+                    .asType(MethodType.methodType(boolean.class, StandInProvider.class, StandInCube.class));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //not final, so that the jit can't treat the handle as a constant: this matches a handle called through the generic invoke path
+    protected MethodHandle untypedHandle;
+
+    protected StandInProvider provider;
+    protected StandInCube[] cubes;
+
+    @Setup
+    public void setup() {
+        this.untypedHandle = TRY_UNLOAD_CUBE.asType(MethodType.methodType(Object.class, Object.class, Object.class));
+        this.provider = new StandInProvider();
+        this.cubes = new StandInCube[CUBES];
+        for (int i = 0; i < CUBES; i++) {
+            this.cubes[i] = new StandInCube((i & 3) != 0);
+        }
+    }
+
+    @Benchmark
+    public void reflection(Blackhole bh) throws Exception {
+        for (StandInCube cube : this.cubes) {
+            bh.consume((boolean) TRY_UNLOAD_CUBE_METHOD.invoke(this.provider, cube));
+        }
+    }
+
+    @Benchmark
+    public void invokeGeneric(Blackhole bh) throws Throwable {
+        for (StandInCube cube : this.cubes) {
+            SINGLETON_ARRAY[0] = cube;
+            bh.consume((boolean) this.untypedHandle.invoke((Object) this.provider, SINGLETON_ARRAY[0]));
+        }
+        SINGLETON_ARRAY[0] = null;
+    }
+
+    @Benchmark
+    public void invokeExact(Blackhole bh) throws Throwable {
+        for (StandInCube cube : this.cubes) {
+            bh.consume((boolean) TRY_UNLOAD_CUBE.invokeExact(this.provider, cube));
+        }
+    }
+
+    /**
+     * Stands in for {@code CubeProviderServer}.
+     */
+    public static class StandInProvider {
+        private int unloaded;
+
+        private boolean tryUnloadCube(StandInCube cube) {
+            if (!cube.unloadable) {
+                return false;
+            }
+            this.unloaded++;
+            return true;
+        }
+    }
+
+    /**
+     * Stands in for {@code Cube}.
+     */
+    public static class StandInCube {
+        private final boolean unloadable;
+
+        public StandInCube(boolean unloadable) {
+            this.unloadable = unloadable;
+        }
+    }
+}
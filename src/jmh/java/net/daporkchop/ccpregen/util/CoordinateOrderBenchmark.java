@@ -0,0 +1,90 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.util;
+
+import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the stream-based {@link CoordinateOrder#iterator(Volume)} against the allocation-free {@link CoordinateOrder#cursor(Volume, long)}.
+ * <p>
+ * Each operation is a single position, so the reported throughput is in positions per second. When run with {@code -prof gc} (which is the default
+ * for the {@code jmh} gradle task), {@code gc.alloc.rate.norm} gives the number of bytes allocated per position.
+ *
+ * @author DaPorkchop_
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(CoordinateOrderBenchmark.TOTAL)
+public class CoordinateOrderBenchmark {
+    protected static final int SIZE_XZ = 64;
+    protected static final int SIZE_Y = 16;
+    protected static final int TOTAL = SIZE_XZ * SIZE_Y * SIZE_XZ;
+
+    @Param
+    public CoordinateOrder order;
+
+    protected Volume volume;
+
+    @Setup
+    public void setup() {
+        this.volume = new Volume(-SIZE_XZ / 2, -SIZE_Y / 2, -SIZE_XZ / 2, SIZE_XZ / 2 - 1, SIZE_Y / 2 - 1, SIZE_XZ / 2 - 1);
+    }
+
+    @Benchmark
+    public void iterator(Blackhole bh) {
+        for (Iterator<CubePos> itr = this.order.iterator(this.volume); itr.hasNext(); ) {
+            CubePos pos = itr.next();
+            bh.consume(pos.getX());
+            bh.consume(pos.getY());
+            bh.consume(pos.getZ());
+        }
+    }
+
+    @Benchmark
+    public void cursor(Blackhole bh) {
+        for (CubeCursor cursor = this.order.cursor(this.volume, 0L); cursor.hasNext(); ) {
+            cursor.advance();
+            bh.consume(cursor.x());
+            bh.consume(cursor.y());
+            bh.consume(cursor.z());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import static java.lang.Math.*;
+
+/**
+ * Adjusts the generation rate and async prefetch depth of a pregeneration task in order to hold the save queue size and server tick time
+ * below their configured targets.
+ * <p>
+ * This uses AIMD (additive increase, multiplicative decrease): as long as both targets are met, the rate slowly grows, and as soon as either one
+ * is exceeded, it is cut back by a constant factor. This converges on the highest rate which can be sustained without swinging between full
+ * speed and a complete stop.
+ *
+ * @author DaPorkchop_
+ * @see PregenConfig#adaptiveControl
+ */
+public final class AdaptiveController {
+    private static final double DECREASE_FACTOR = 0.75d;
+    private static final double RATE_INCREMENT = 1.0d;
+    private static final double PREFETCH_INCREMENT = 16.0d;
+    private static final int MIN_PREFETCH_DEPTH = 16;
+
+    private double cubesPerCall = 1.0d;
+    private double prefetchDepth = MIN_PREFETCH_DEPTH;
+    private String lastDecision = "starting";
+
+    /**
+     * @return the maximum number of cubes which should be generated in the next call
+     */
+    public int cubesPerCall() {
+        return max(min((int) this.cubesPerCall, PregenConfig.maxCubesPerCall), 1);
+    }
+
+    /**
+     * @return the number of cubes which should be prefetched
+     */
+    public int prefetchDepth() {
+        return max(min((int) this.prefetchDepth, PregenConfig.asyncPrefetchCount), 1);
+    }
+
+    /**
+     * Updates the controller with the measurements from the most recent call.
+     *
+     * @param saveQueueSize the number of cubes currently queued for saving
+     * @param tickNanos     the duration of the most recent server tick, in nanoseconds
+     * @param readyPolls    the number of times the generator reported a cube as READY during the call
+     * @param waitingPolls  the number of times the generator reported a cube as WAITING during the call
+     */
+    public void update(int saveQueueSize, long tickNanos, int readyPolls, int waitingPolls) {
+        if (saveQueueSize > PregenConfig.adaptiveTargetSaveQueueSize) {
+            //the disk can't keep up: slow down generation, and also prefetch less since prefetched cubes will end up in the save queue soon
+            this.cubesPerCall = max(this.cubesPerCall * DECREASE_FACTOR, 1.0d);
+            this.prefetchDepth = max(this.prefetchDepth * DECREASE_FACTOR, MIN_PREFETCH_DEPTH);
+            this.lastDecision = "save queue over target";
+        } else if (tickNanos > PregenConfig.adaptiveTargetTickMillis * 1000000L) {
+            //the server is lagging: slow down generation on the server thread, but keep prefetching since that happens on other threads
+            this.cubesPerCall = max(this.cubesPerCall * DECREASE_FACTOR, 1.0d);
+            this.lastDecision = "tick time over target";
+        } else {
+            this.cubesPerCall = min(this.cubesPerCall + RATE_INCREMENT, PregenConfig.maxCubesPerCall);
+
+            int polls = readyPolls + waitingPolls;
+            if (polls > 0 && readyPolls * 4 < polls) { //less than a quarter of the polled cubes were ready: the generator needs more lookahead
+                this.prefetchDepth = min(this.prefetchDepth + PREFETCH_INCREMENT, max(PregenConfig.asyncPrefetchCount, MIN_PREFETCH_DEPTH));
+                this.lastDecision = "increasing prefetch";
+            } else {
+                this.lastDecision = "increasing rate";
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d cubes/call, prefetch %d (%s)", this.cubesPerCall(), this.prefetchDepth(), this.lastDecision);
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import io.github.opencubicchunks.cubicchunks.api.world.ICubeProviderServer;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.Volume;
+
+import java.util.Iterator;
+import java.util.function.LongConsumer;
+
+import static java.lang.Math.*;
+import static net.daporkchop.ccpregen.util.CoordinateOrder.*;
+
+/**
+ * Decides which cubes are still needed by bricks which haven't been completed yet, for jobs using {@link CoordinateOrder#BRICKS}.
+ * <p>
+ * A cube is needed until every brick which contains a cube in its neighborhood (the cubes which load it in order to be populated and lit) has
+ * been completed, since nothing in the job will load it again after that. Keeping exactly those cubes loaded keeps the layer of cubes around the
+ * bricks which have already been completed, but nothing behind it.
+ * <p>
+ * No per-brick state is kept: each brick's cubes have contiguous indices (see {@link CoordinateOrder#brickIndex(Volume, int, int, int)}), so a
+ * brick is complete once the watermark of every lane which it overlaps has passed it. This also covers bricks which were completed before the job
+ * was resumed. Cubes above the watermark which were completed out of order only count once the watermark has caught up with them, so they may be
+ * kept a little longer than necessary.
+ * <p>
+ * Cubes which are still needed are parked until the first incomplete brick which needs them has been completed, so that they don't have to be
+ * checked again and again in the meantime. Only the bricks which have parked cubes are checked, which is about one per brick along the frontier.
+ *
+ * @author DaPorkchop_
+ * @see FrontierUnloader
+ */
+public final class BrickTracker {
+    private static final int MAX_CACHED_BRICKS = 1 << 16;
+
+    /**
+     * @return whether or not the given job visits its cubes one brick at a time
+     */
+    public static boolean supports(PregenJob job) {
+        return job.proximity == null && job.order == CoordinateOrder.BRICKS;
+    }
+
+    private final Volume volume;
+    private final PregenLane[] lanes;
+    private final int radius;
+    private final int bricksY;
+    private final int bricksZ;
+
+    //the index of the first cube in each recently checked brick, since finding it means descending through the whole hilbert curve
+    private final Long2LongOpenHashMap brickIndices = new Long2LongOpenHashMap();
+    //the cubes which are waiting for each brick to be completed
+    private final Long2ObjectOpenHashMap<LongArrayList> parked = new Long2ObjectOpenHashMap<>();
+
+    public BrickTracker(PregenJob job) {
+        this.volume = job.volume;
+        this.lanes = job.lanes;
+        this.radius = PregenConfig.requirement.ordinal() > ICubeProviderServer.Requirement.GENERATE.ordinal() ? 1 : 0;
+        this.bricksY = (job.volume.sizeY() + BRICK_SIZE - 1) / BRICK_SIZE;
+        this.bricksZ = (job.volume.sizeZ() + BRICK_SIZE - 1) / BRICK_SIZE;
+        this.brickIndices.defaultReturnValue(-1L);
+    }
+
+    /**
+     * @return whether or not the cube at the given position may still be loaded by a brick which hasn't been completed yet
+     */
+    public boolean isNeeded(int x, int y, int z) {
+        return this.neededBy(x, y, z) >= 0L;
+    }
+
+    /**
+     * Parks the given cube until the brick which needs it has been completed, if any.
+     *
+     * @param pos the cube's packed position, which is returned by {@link #unpark(LongConsumer, boolean)}
+     * @return whether or not the cube is still needed and was parked
+     */
+    public boolean park(long pos, int x, int y, int z) {
+        long brick = this.neededBy(x, y, z);
+        if (brick < 0L) {
+            return false;
+        }
+
+        LongArrayList list = this.parked.get(brick);
+        if (list == null) {
+            this.parked.put(brick, list = new LongArrayList());
+        }
+        list.add(pos);
+        return true;
+    }
+
+    /**
+     * Removes the cubes which are no longer waiting for an incomplete brick.
+     *
+     * @param action the action to run with each cube's packed position
+     * @param all    whether or not to remove every cube, even if the brick it's waiting for is still incomplete
+     */
+    public void unpark(LongConsumer action, boolean all) {
+        for (Iterator<Long2ObjectMap.Entry<LongArrayList>> itr = this.parked.long2ObjectEntrySet().fastIterator(); itr.hasNext(); ) {
+            Long2ObjectMap.Entry<LongArrayList> entry = itr.next();
+            long brick = entry.getLongKey();
+            int bz = (int) (brick % this.bricksZ);
+            int by = (int) (brick / this.bricksZ % this.bricksY);
+            int bx = (int) (brick / this.bricksZ / this.bricksY);
+            if (all || this.isComplete(bx, by, bz)) {
+                LongArrayList list = entry.getValue();
+                for (int i = 0, size = list.size(); i < size; i++) {
+                    action.accept(list.getLong(i));
+                }
+                itr.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the key of a brick which hasn't been completed yet and may still load the cube at the given position, or {@code -1} if there is none
+     */
+    private long neededBy(int x, int y, int z) {
+        Volume volume = this.volume;
+        int r = this.radius;
+        int minX = max(x - r, volume.minX);
+        int maxX = min(x + r, volume.maxX);
+        int minY = max(y - r, volume.minY);
+        int maxY = min(y + r, volume.maxY);
+        int minZ = max(z - r, volume.minZ);
+        int maxZ = min(z + r, volume.maxZ);
+        if (minX > maxX || minY > maxY || minZ > maxZ) { //the cube isn't next to the volume
+            return -1L;
+        }
+
+        //the neighborhood is much smaller than a brick, so it overlaps at most two bricks along each axis
+        for (int bx = (minX - volume.minX) / BRICK_SIZE; bx <= (maxX - volume.minX) / BRICK_SIZE; bx++) {
+            for (int by = (minY - volume.minY) / BRICK_SIZE; by <= (maxY - volume.minY) / BRICK_SIZE; by++) {
+                for (int bz = (minZ - volume.minZ) / BRICK_SIZE; bz <= (maxZ - volume.minZ) / BRICK_SIZE; bz++) {
+                    if (!this.isComplete(bx, by, bz)) {
+                        return this.key(bx, by, bz);
+                    }
+                }
+            }
+        }
+        return -1L;
+    }
+
+    private long key(int bx, int by, int bz) {
+        return ((long) bx * this.bricksY + by) * this.bricksZ + bz;
+    }
+
+    private boolean isComplete(int bx, int by, int bz) {
+        Volume volume = this.volume;
+        int minX = volume.minX + bx * BRICK_SIZE;
+        int minY = volume.minY + by * BRICK_SIZE;
+        int minZ = volume.minZ + bz * BRICK_SIZE;
+
+        long key = this.key(bx, by, bz);
+        long first = this.brickIndices.get(key);
+        if (first < 0L) {
+            if (this.brickIndices.size() >= MAX_CACHED_BRICKS) { //the frontier has moved on, forget about the bricks behind it
+                this.brickIndices.clear();
+            }
+            first = BRICKS.brickIndex(volume, minX, minY, minZ);
+            this.brickIndices.put(key, first);
+        }
+        long end = first
+                   + (long) (min(minX + BRICK_SIZE - 1, volume.maxX) - minX + 1)
+                     * (min(minY + BRICK_SIZE - 1, volume.maxY) - minY + 1)
+                     * (min(minZ + BRICK_SIZE - 1, volume.maxZ) - minZ + 1);
+
+        for (PregenLane lane : this.lanes) {
+            long laneEnd = min(end, lane.end);
+            if (max(first, lane.start) < laneEnd && lane.watermark() < laneEnd) { //part of the brick is in this lane, and it hasn't been completed yet
+                return false;
+            }
+        }
+        return true;
+    }
+}
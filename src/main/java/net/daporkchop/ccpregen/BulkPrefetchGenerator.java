@@ -0,0 +1,67 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import io.github.opencubicchunks.cubicchunks.api.world.ICubeProviderServer;
+import io.github.opencubicchunks.cubicchunks.api.worldgen.ICubeGenerator;
+
+/**
+ * An optional interface for {@link ICubeGenerator}s which generate cubes in larger groups, such as whole columns or bricks of 2x2x2 cubes.
+ * <p>
+ * When the world's generator implements this interface, the pregenerator groups the positions it wants to prefetch by the generator's
+ * {@link #prefetchGrouping() grouping}, and polls each group once using {@link #pollAsyncCubes} instead of polling every cube in it individually.
+ *
+ * @author DaPorkchop_
+ * @see PrefetchGroups
+ */
+public interface BulkPrefetchGenerator {
+    /**
+     * @return how cubes should be grouped when prefetching
+     */
+    Grouping prefetchGrouping();
+
+    /**
+     * Polls the readiness of all cubes in the given box at once, starting to generate them asynchronously if they aren't already.
+     * <p>
+     * All coordinates are inclusive. The box is exactly one group, as defined by {@link #prefetchGrouping()}.
+     *
+     * @param requirement the requirement which the cubes will be generated with. If greater than or equal to
+     *                    {@link ICubeProviderServer.Requirement#POPULATE}, the cubes' populators should be prepared as well.
+     * @return {@link ICubeGenerator.GeneratorReadyState#READY} only if every cube in the box is ready
+     * @see ICubeGenerator#pollAsyncCubeGenerator(int, int, int)
+     * @see ICubeGenerator#pollAsyncCubePopulator(int, int, int)
+     */
+    ICubeGenerator.GeneratorReadyState pollAsyncCubes(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, ICubeProviderServer.Requirement requirement);
+
+    /**
+     * @author DaPorkchop_
+     */
+    enum Grouping {
+        /**
+         * Each group is a column, spanning the full height of the pregeneration volume.
+         */
+        COLUMNS,
+        /**
+         * Each group is a brick of 2x2x2 cubes, aligned to even coordinates.
+         */
+        BRICKS
+    }
+}
@@ -20,12 +20,15 @@
 
 package net.daporkchop.ccpregen;
 
+import net.daporkchop.ccpregen.command.JobsCommand;
 import net.daporkchop.ccpregen.command.PausePregenCommand;
 import net.daporkchop.ccpregen.command.PregenCommand;
 import net.daporkchop.ccpregen.command.PregenCubesCommand;
 import net.daporkchop.ccpregen.command.ResumePregenCommand;
+import net.daporkchop.ccpregen.command.StatsCommand;
 import net.daporkchop.ccpregen.command.StopPregenCommand;
 import net.daporkchop.ccpregen.command.SurfaceTrackingCommand;
+import net.daporkchop.ccpregen.metrics.MetricsHttpServer;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.Mod.EventHandler;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
@@ -35,6 +38,8 @@ import net.minecraftforge.server.permission.DefaultPermissionLevel;
 import net.minecraftforge.server.permission.PermissionAPI;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+
 @Mod(modid = CCPregen.MODID,
         useMetadata = true,
         dependencies = "required:cubicchunks@[1.12.2-0.0.1015.0,)",
@@ -44,6 +49,8 @@ public class CCPregen {
 
     public static Logger LOGGER;
 
+    private MetricsHttpServer metricsServer;
+
     @EventHandler
     public void preInit(FMLPreInitializationEvent event) {
         LOGGER = event.getModLog();
@@ -57,6 +64,8 @@ public class CCPregen {
         PermissionAPI.registerNode(MODID + ".command.ccpregen_pause", DefaultPermissionLevel.OP, "Allows to run the /ccpregen_pause command");
         PermissionAPI.registerNode(MODID + ".command.ccpregen_resume", DefaultPermissionLevel.OP, "Allows to run the /ccpregen_resume command");
         PermissionAPI.registerNode(MODID + ".command.ccpregen_surfacetrack", DefaultPermissionLevel.OP, "Allows to run the /ccpregen_surfacetrack command");
+        PermissionAPI.registerNode(MODID + ".command.ccpregen_stats", DefaultPermissionLevel.OP, "Allows to run the /ccpregen_stats command");
+        PermissionAPI.registerNode(MODID + ".command.ccpregen_jobs", DefaultPermissionLevel.OP, "Allows to run the /ccpregen_jobs command");
 
         event.registerServerCommand(new PregenCommand());
         event.registerServerCommand(new PregenCubesCommand());
@@ -64,15 +73,30 @@ public class CCPregen {
         event.registerServerCommand(new PausePregenCommand());
         event.registerServerCommand(new ResumePregenCommand());
         event.registerServerCommand(new SurfaceTrackingCommand());
+        event.registerServerCommand(new StatsCommand());
+        event.registerServerCommand(new JobsCommand());
 
         PregenConfig.update();
+        if (PregenConfig.metricsServer && this.metricsServer == null) {
+            try {
+                this.metricsServer = new MetricsHttpServer("127.0.0.1", PregenConfig.metricsServerPort);
+                LOGGER.info("Serving metrics at http://127.0.0.1:{}/metrics", this.metricsServer.port());
+            } catch (IOException e) {
+                LOGGER.error("Unable to start metrics server on port " + PregenConfig.metricsServerPort, e);
+            }
+        }
         PregenState.loadState(event.getServer());
         SurfaceTrackingState.loadState(event.getServer());
     }
 
     @EventHandler
     public void serverStopping(FMLServerStoppingEvent event)    {
-        PregenState.persistState();
+        PregenState.unloadState();
         SurfaceTrackingState.persistState();
+
+        if (this.metricsServer != null) {
+            this.metricsServer.close();
+            this.metricsServer = null;
+        }
     }
 }
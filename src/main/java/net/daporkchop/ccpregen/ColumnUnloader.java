@@ -0,0 +1,181 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import io.github.opencubicchunks.cubicchunks.api.world.ICubeProviderServer;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.Volume;
+import net.minecraft.util.math.ChunkPos;
+
+import static java.lang.Math.*;
+
+/**
+ * Finishes and unloads whole columns as soon as pregeneration can no longer need them.
+ * <p>
+ * A column is complete once every cube in it which is inside the job's volume has been generated (or skipped). A column can be finished once it
+ * and all of the neighboring columns which are needed to populate and light it are complete, since nothing in the job will load any of its cubes
+ * again. Finishing a column surface tracks its fully populated cubes, then unloads all of its cubes and the column itself, which serializes each
+ * of them exactly once.
+ * <p>
+ * This only works well if the job's order visits each column from top to bottom (or bottom to top) before moving on to the next one, see
+ * {@link #supports(PregenJob)}. Counters are only kept for the columns along the frontier, which for those orders is at most about one row of
+ * columns, so memory usage stays flat regardless of the volume's size. Other orders would start every column in the volume long before
+ * finishing any of them. The {@link FrontierUnloader} doesn't unload cubes in columns which are still being counted, so that each column is
+ * unloaded by this class in one go, unless more cubes are loaded than the working set limit allows.
+ * <p>
+ * When a job is resumed, its cursors start at each lane's watermark (or skip completed player proximity regions), so the cubes which were
+ * generated before that are never reported as complete. They are counted up front instead: columns entirely below the watermark are treated as
+ * complete, and the column straddling it starts out with its lower cubes already counted. This requires the unloader to be created before any
+ * cubes are generated in the current run.
+ *
+ * @author DaPorkchop_
+ * @see PregenConfig.UnloadMode#COLUMNS
+ */
+public final class ColumnUnloader {
+    private final WorldUnloader cubes;
+    private final Volume volume;
+    private final CoordinateOrder order;
+    private final PlayerProximityCursor proximity;
+    private final int radius;
+
+    //the range of indices in each lane which was already complete when the job was resumed
+    private final long[] laneStarts;
+    private final long[] laneWatermarks;
+
+    //the number of cubes which haven't been completed yet in each column which has been started
+    private final Long2IntOpenHashMap remainingCubes = new Long2IntOpenHashMap();
+    //the number of neighboring columns which haven't been completed yet for each column which has at least one complete neighbor
+    private final Long2IntOpenHashMap remainingNeighbors = new Long2IntOpenHashMap();
+
+    /**
+     * @return whether or not columns can be finished soon after they're started when generating the given job
+     */
+    public static boolean supports(PregenJob job) {
+        return job.proximity != null || job.order.columnMajor(); //full-height player proximity regions are generated one column at a time
+    }
+
+    /**
+     * @param job the job whose columns to finish. No cubes may have been generated since it was started or resumed
+     */
+    public ColumnUnloader(WorldUnloader cubes, PregenJob job) {
+        this.cubes = cubes;
+        this.volume = job.volume;
+        this.order = job.order;
+        this.proximity = job.proximity;
+        this.radius = PregenConfig.requirement.ordinal() > ICubeProviderServer.Requirement.GENERATE.ordinal() ? 1 : 0;
+
+        this.laneStarts = new long[job.lanes.length];
+        this.laneWatermarks = new long[job.lanes.length];
+        for (int i = 0; i < job.lanes.length; i++) {
+            this.laneStarts[i] = job.lanes[i].start;
+            this.laneWatermarks[i] = job.lanes[i].watermark();
+        }
+    }
+
+    /**
+     * Notifies the unloader that the cube at the given position has been generated or skipped.
+     */
+    public void complete(int x, int z) {
+        long key = ChunkPos.asLong(x, z);
+        int remaining = this.remainingCubes.get(key);
+        if (remaining == 0) { //this is the first cube in the column
+            remaining = this.volume.sizeY() - this.resumedCubes(x, z);
+        }
+
+        if (--remaining > 0) {
+            this.remainingCubes.put(key, remaining);
+            return;
+        }
+        this.remainingCubes.remove(key);
+
+        //the column is complete, which means that every column in its neighborhood has one less incomplete neighbor
+        int r = this.radius;
+        for (int dx = -r; dx <= r; dx++) {
+            for (int dz = -r; dz <= r; dz++) {
+                this.neighborComplete(x + dx, z + dz);
+            }
+        }
+    }
+
+    private void neighborComplete(int x, int z) {
+        long key = ChunkPos.asLong(x, z);
+        int remaining = this.remainingNeighbors.get(key);
+        if (remaining == 0) { //this is the first complete neighbor, count how many neighbors (including the column itself) are still incomplete
+            int r = this.radius;
+            Volume volume = this.volume;
+            for (int nx = max(x - r, volume.minX); nx <= min(x + r, volume.maxX); nx++) {
+                for (int nz = max(z - r, volume.minZ); nz <= min(z + r, volume.maxZ); nz++) {
+                    if (this.resumedCubes(nx, nz) < volume.sizeY()) {
+                        remaining++;
+                    }
+                }
+            }
+        }
+
+        if (--remaining > 0) {
+            this.remainingNeighbors.put(key, remaining);
+            return;
+        }
+        this.remainingNeighbors.remove(key);
+        this.finish(x, z);
+    }
+
+    /**
+     * @return the number of cubes in the column at the given position which were already complete when the job was resumed, and will therefore
+     * never be reported as complete
+     */
+    private int resumedCubes(int x, int z) {
+        if (this.proximity != null) { //progress within regions isn't kept when resuming, only completed regions are skipped
+            return this.proximity.wasCompleted(x, z) ? this.volume.sizeY() : 0;
+        }
+
+        long first = this.order.columnIndex(this.volume, x, z) * this.volume.sizeY();
+        long end = first + this.volume.sizeY();
+        long count = 0L;
+        for (int i = 0; i < this.laneStarts.length; i++) {
+            count += max(min(end, this.laneWatermarks[i]) - max(first, this.laneStarts[i]), 0L);
+        }
+        return (int) count;
+    }
+
+    private void finish(int x, int z) {
+        if (this.cubes.finishColumn(x, z)) {
+            Metrics.COLUMNS_FINISHED.increment();
+        }
+    }
+
+    /**
+     * @return whether or not the column at the given position has been started, but not finished yet
+     */
+    public boolean isUnfinished(int x, int z) {
+        long key = ChunkPos.asLong(x, z);
+        return this.remainingCubes.containsKey(key) || this.remainingNeighbors.containsKey(key);
+    }
+
+    /**
+     * @return the number of columns which are currently being tracked
+     */
+    public int size() {
+        return this.remainingCubes.size() + this.remainingNeighbors.size();
+    }
+}
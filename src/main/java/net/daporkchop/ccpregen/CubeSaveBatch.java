@@ -0,0 +1,141 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import io.github.opencubicchunks.cubicchunks.core.server.CubeProviderServer;
+import io.github.opencubicchunks.cubicchunks.core.world.cube.Cube;
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.minecraft.world.chunk.Chunk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.lang.Math.*;
+
+/**
+ * Saves generated cubes and their columns in batches, rather than one at a time as soon as they're generated.
+ * <p>
+ * Generated cubes are collected until {@link PregenConfig#saveBatchSize} of them are pending. The batch is then sorted so that cubes in the same
+ * column and storage region are saved consecutively, and each column is saved once after its last cube in the batch, even if that cube was
+ * already unloaded. The batch is saved gradually over the following calls: each call saves at least as many cubes as were generated since the
+ * previous call, so that saving keeps up with generation, and then keeps going until the call's time budget is used up.
+ * <p>
+ * Cubes are serialized on the server thread, since that's the only thread which may access them. Cubes which have already been unloaded by the
+ * time their turn comes were saved by Cubic Chunks while unloading them, and are skipped.
+ *
+ * @author DaPorkchop_
+ * @see PregenConfig#immediateCubeSave
+ */
+public final class CubeSaveBatch {
+    private static final Comparator<Cube> REGION_ORDER = Comparator.<Cube>comparingInt(cube -> cube.getX() >> 4)
+            .thenComparingInt(cube -> cube.getZ() >> 4)
+            .thenComparingInt(Cube::getX)
+            .thenComparingInt(Cube::getZ)
+            .thenComparingInt(Cube::getY);
+
+    private List<Cube> pending = new ArrayList<>();
+    private Cube[] batch = new Cube[0];
+    private int batchIndex;
+    private Chunk column; //the column of the cubes which were most recently saved, which hasn't been saved itself yet
+
+    private int addedSinceLastSave;
+
+    /**
+     * Adds a generated cube to be saved.
+     */
+    public void add(Cube cube) {
+        this.pending.add(cube);
+        this.addedSinceLastSave++;
+        Metrics.SAVE_BATCH_PENDING.increment();
+    }
+
+    /**
+     * Saves some of the pending cubes.
+     *
+     * @param deadline the {@link System#nanoTime()} after which no more cubes should be saved than needed to keep up with generation
+     */
+    public void save(CubeProviderServer provider, long deadline) {
+        int budget = this.addedSinceLastSave;
+        this.addedSinceLastSave = 0;
+
+        while (budget-- > 0 || System.nanoTime() - deadline < 0L) {
+            if (this.batchIndex == this.batch.length && !this.nextBatch()) {
+                break;
+            }
+
+            Cube cube = this.batch[this.batchIndex];
+            this.batch[this.batchIndex++] = null;
+            Metrics.SAVE_BATCH_PENDING.add(-1L);
+
+            //save the previous column once all of its cubes in this batch have been saved
+            if (cube.getColumn() != this.column) {
+                this.saveColumn(provider);
+            }
+
+            if (provider.getLoadedCube(cube.getX(), cube.getY(), cube.getZ()) == cube) { //otherwise, the cube was saved when it was unloaded
+                long start = System.nanoTime();
+                provider.getCubeIO().saveCube(cube);
+                Metrics.SAVE_CUBE.recordSince(start);
+                this.column = cube.getColumn();
+            }
+
+            if (this.batchIndex == this.batch.length) { //the batch is finished, regardless of whether or not its last cube was saved
+                this.saveColumn(provider);
+            }
+        }
+    }
+
+    private void saveColumn(CubeProviderServer provider) {
+        Chunk column = this.column;
+        if (column != null) {
+            this.column = null;
+            if (provider.getLoadedChunk(column.x, column.z) == column) { //otherwise, the column was saved when it was unloaded
+                provider.getCubeIO().saveColumn(column);
+            }
+        }
+    }
+
+    private boolean nextBatch() {
+        if (this.pending.size() < max(PregenConfig.saveBatchSize, 1)) { //wait until there's enough cubes for a full batch
+            return false;
+        }
+
+        Cube[] batch = this.pending.toArray(new Cube[0]);
+        Arrays.sort(batch, REGION_ORDER);
+        this.pending = new ArrayList<>(batch.length);
+        this.batch = batch;
+        this.batchIndex = 0;
+        return true;
+    }
+
+    /**
+     * Forgets about all pending cubes, which will be saved by Cubic Chunks once they're unloaded.
+     */
+    public void clear() {
+        Metrics.SAVE_BATCH_PENDING.add(-(this.pending.size() + (long) (this.batch.length - this.batchIndex)));
+        this.pending.clear();
+        this.batch = new Cube[0];
+        this.batchIndex = 0;
+        this.column = null;
+    }
+}
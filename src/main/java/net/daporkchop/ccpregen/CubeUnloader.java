@@ -0,0 +1,283 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import io.github.opencubicchunks.cubicchunks.api.util.XYZMap;
+import io.github.opencubicchunks.cubicchunks.api.world.IColumn;
+import io.github.opencubicchunks.cubicchunks.api.world.ICube;
+import io.github.opencubicchunks.cubicchunks.api.world.ICubicWorldServer;
+import io.github.opencubicchunks.cubicchunks.core.server.CubeProviderServer;
+import io.github.opencubicchunks.cubicchunks.core.world.cube.Cube;
+import it.unimi.dsi.fastutil.longs.LongList;
+import lombok.SneakyThrows;
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.daporkchop.ccpregen.util.CubePositionList;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.WorldServer;
+import net.minecraft.world.chunk.Chunk;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Unloads cubes and columns from a single world, and keeps count of how many unloads succeeded or were refused.
+ * <p>
+ * Cubic Chunks doesn't expose a way to unload a single cube, so this calls its private methods through method handles. The handles are stored in
+ * {@code static final} fields and always called using {@link MethodHandle#invokeExact} with their exact types, so that they're linked directly
+ * and are as cheap as a normal method call once the JIT has compiled the caller.
+ * <p>
+ * There is no shared mutable state: every worker uses its own instance, which must only be used from the server thread.
+ *
+ * @author DaPorkchop_
+ */
+public final class CubeUnloader implements WorldUnloader {
+    private static final MethodHandle TRY_UNLOAD_CUBE; //(CubeProviderServer, Cube)boolean
+    private static final MethodHandle CUBES_ITERATOR; //(CubeProviderServer)Iterator
+    private static final MethodHandle CUBE_MAP; //(CubeProviderServer)XYZMap
+    private static final MethodHandle TRY_UNLOAD_COLUMN; //(CubeProviderServer, Chunk)boolean, or null if not supported
+
+    static {
+        try {
+            Method tryUnloadCube = CubeProviderServer.class.getDeclaredMethod("tryUnloadCube", Cube.class);
+            tryUnloadCube.setAccessible(true);
+            TRY_UNLOAD_CUBE = MethodHandles.lookup().unreflect(tryUnloadCube)
+                    .asType(MethodType.methodType(boolean.class, CubeProviderServer.class, Cube.class));
+
+            Method cubesIterator = CubeProviderServer.class.getDeclaredMethod("cubesIterator");
+            cubesIterator.setAccessible(true);
+            CUBES_ITERATOR = MethodHandles.lookup().unreflect(cubesIterator)
+                    .asType(MethodType.methodType(Iterator.class, CubeProviderServer.class));
+
+            Field cubeMap = CubeProviderServer.class.getDeclaredField("cubeMap");
+            cubeMap.setAccessible(true);
+            CUBE_MAP = MethodHandles.lookup().unreflectGetter(cubeMap)
+                    .asType(MethodType.methodType(XYZMap.class, CubeProviderServer.class));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        MethodHandle tryUnloadColumn = null;
+        try {
+            Method method = CubeProviderServer.class.getDeclaredMethod("tryUnloadColumn", Chunk.class);
+            method.setAccessible(true);
+            tryUnloadColumn = MethodHandles.lookup().unreflect(method)
+                    .asType(MethodType.methodType(boolean.class, CubeProviderServer.class, Chunk.class));
+        } catch (Exception e) {
+            //columns will only be unloaded by cubic chunks itself
+        }
+        TRY_UNLOAD_COLUMN = tryUnloadColumn;
+    }
+
+    private final CubeProviderServer provider;
+
+    private long cubesUnloaded;
+    private long cubesRefused;
+    private long columnsUnloaded;
+    private long columnsRefused;
+
+    public CubeUnloader(WorldServer world) {
+        this.provider = (CubeProviderServer) ((ICubicWorldServer) world).getCubeCache();
+    }
+
+    /**
+     * @return the cube provider which cubes are unloaded from
+     */
+    public CubeProviderServer provider() {
+        return this.provider;
+    }
+
+    /**
+     * Unloads the given cube, unless something else is still using it.
+     *
+     * @return whether or not the cube was unloaded
+     */
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    public boolean unloadCube(Cube cube) {
+        long start = System.nanoTime();
+        boolean unloaded = (boolean) TRY_UNLOAD_CUBE.invokeExact(this.provider, cube);
+        if (unloaded) {
+            ((XYZMap<Cube>) CUBE_MAP.invokeExact(this.provider)).remove(cube);
+            this.cubesUnloaded++;
+            Metrics.CUBES_UNLOADED.increment();
+        } else {
+            this.cubesRefused++;
+        }
+        Metrics.UNLOAD_CUBE.recordSince(start);
+        return unloaded;
+    }
+
+    /**
+     * Unloads the given column, unless something else is still using it or any of its cubes are still loaded.
+     *
+     * @return whether or not the column was unloaded
+     */
+    @SneakyThrows
+    public boolean unloadColumn(Chunk column) {
+        if (TRY_UNLOAD_COLUMN == null || !((IColumn) column).getLoadedCubes().isEmpty()) {
+            this.columnsRefused++;
+            return false;
+        }
+
+        boolean unloaded = (boolean) TRY_UNLOAD_COLUMN.invokeExact(this.provider, column);
+        if (unloaded) {
+            this.provider.id2ChunkMap.remove(ChunkPos.asLong(column.x, column.z));
+            this.columnsUnloaded++;
+            Metrics.COLUMNS_UNLOADED.increment();
+        } else {
+            this.columnsRefused++;
+        }
+        return unloaded;
+    }
+
+    @Override
+    public int unload(LongList positions, int originY, boolean columns) {
+        int unloaded = 0;
+        for (int i = 0, size = positions.size(); i < size; i++) {
+            long pos = positions.getLong(i);
+            Cube cube = this.provider.getLoadedCube(CubePositionList.unpackX(pos), CubePositionList.unpackY(pos) + originY, CubePositionList.unpackZ(pos));
+            if (cube == null) {
+                continue;
+            }
+
+            Chunk column = cube.getColumn();
+            if (this.unloadCube(cube)) {
+                unloaded++;
+                if (columns) {
+                    this.unloadColumn(column);
+                }
+            }
+        }
+        return unloaded;
+    }
+
+    @Override
+    public boolean finishColumn(int x, int z) {
+        Chunk column = this.provider.getLoadedChunk(x, z);
+        if (column == null) {
+            return false;
+        }
+
+        //copy the cubes first, since unloading them modifies the collection
+        List<ICube> loadedCubes = new ArrayList<>(((IColumn) column).getLoadedCubes());
+        for (ICube loadedCube : loadedCubes) {
+            Cube cube = (Cube) loadedCube;
+            if (cube.isFullyPopulated() && !cube.isSurfaceTracked()) {
+                long start = System.nanoTime();
+                cube.trackSurface();
+                Metrics.TRACK_SURFACE.recordSince(start);
+                Metrics.CUBES_SURFACE_TRACKED.increment();
+            }
+            this.unloadCube(cube);
+        }
+        return this.unloadColumn(column);
+    }
+
+    /**
+     * Unloads every cube in the world which isn't being used by anything else.
+     *
+     * @param columns whether or not to also unload every column which has no more loaded cubes
+     * @return the number of cubes which were unloaded
+     */
+    public int unloadAll(boolean columns) {
+        return this.unloadAll(columns, null);
+    }
+
+    /**
+     * Unloads every cube in the world which isn't being used by anything else, except for the ones which are still needed by bricks which haven't
+     * been completed yet.
+     *
+     * @param columns whether or not to also unload every column which has no more loaded cubes
+     * @param keep    the {@link BrickTracker} deciding which cubes are still needed, or {@code null} to unload everything
+     * @return the number of cubes which were unloaded
+     */
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    public int unloadAll(boolean columns, BrickTracker keep) {
+        long start = System.nanoTime();
+        int unloaded = 0;
+        for (Iterator<Cube> itr = (Iterator<Cube>) CUBES_ITERATOR.invokeExact(this.provider); itr.hasNext(); ) {
+            Cube cube = itr.next();
+            if (keep != null && keep.isNeeded(cube.getX(), cube.getY(), cube.getZ())) {
+                continue;
+            } else if ((boolean) TRY_UNLOAD_CUBE.invokeExact(this.provider, cube)) {
+                itr.remove();
+                unloaded++;
+                this.cubesUnloaded++;
+            } else {
+                this.cubesRefused++;
+            }
+        }
+        Metrics.CUBES_UNLOADED.add(unloaded);
+
+        if (columns) {
+            //copy the columns first, since unloading them modifies the map
+            List<Chunk> loadedColumns = new ArrayList<>(this.provider.id2ChunkMap.values());
+            for (Chunk column : loadedColumns) {
+                this.unloadColumn(column);
+            }
+        }
+        Metrics.UNLOAD_OLD_CUBES.recordSince(start);
+
+        Runtime runtime = Runtime.getRuntime();
+        Metrics.HEAP_USED_AFTER_UNLOAD.set(runtime.totalMemory() - runtime.freeMemory());
+        return unloaded;
+    }
+
+    /**
+     * @return the number of cubes which were unloaded
+     */
+    public long cubesUnloaded() {
+        return this.cubesUnloaded;
+    }
+
+    /**
+     * @return the number of cubes which couldn't be unloaded because something else was still using them
+     */
+    public long cubesRefused() {
+        return this.cubesRefused;
+    }
+
+    /**
+     * @return the number of columns which were unloaded
+     */
+    public long columnsUnloaded() {
+        return this.columnsUnloaded;
+    }
+
+    /**
+     * @return the number of columns which couldn't be unloaded because something else was still using them, or they still had loaded cubes
+     */
+    public long columnsRefused() {
+        return this.columnsRefused;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("unloaded %d cubes (%d refused), %d columns (%d refused)", this.cubesUnloaded, this.cubesRefused, this.columnsUnloaded, this.columnsRefused);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import io.github.opencubicchunks.cubicchunks.api.world.ICubeProviderServer;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayFIFOQueue;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.CubePositionList;
+import net.daporkchop.ccpregen.util.HeapMonitor;
+import net.daporkchop.ccpregen.util.Volume;
+
+import static java.lang.Math.*;
+
+/**
+ * Unloads the cubes used by a pregeneration job once the job's frontier has moved past them, rather than periodically unloading everything.
+ * <p>
+ * Every generated cube touches its neighborhood: the cubes which have to be loaded in order to populate and light it. A cube is unloaded once
+ * it hasn't been touched for a number of generated cubes (the delay), which is chosen based on the job's {@link CoordinateOrder}
+ * so that neighboring cubes which will be needed again soon stay loaded. Columns are unloaded as soon as their last cube is unloaded. If more
+ * cubes than the working set limit are being kept loaded, the least recently touched ones are unloaded early.
+ * <p>
+ * The working set limit starts at {@link PregenConfig#maxWorkingSetCubes}. If {@link PregenConfig#memoryPressureUnloading} is enabled, it is
+ * adjusted after every garbage collection using AIMD: it grows slowly while the heap is below the target and the limit is actually being hit,
+ * and is cut back by a constant factor while the heap is above the target. This keeps as many cubes loaded as the heap can safely hold. It never
+ * grows beyond a fixed multiple of {@link PregenConfig#maxWorkingSetCubes}, so that a heap measurement which is too low can't lift it
+ * indefinitely.
+ * <p>
+ * The work is spread out evenly: each call unloads at most twice as many cubes as were touched for the first time since the previous call, so
+ * that the unloader keeps up with generation without ever stalling the server.
+ * <p>
+ * When using {@link PregenConfig.UnloadMode#COLUMNS}, cubes in columns which the {@link ColumnUnloader} hasn't finished yet are kept until the
+ * whole column is unloaded at once. Only if the working set limit has been hit are they unloaded here anyway, so that a column which never
+ * finishes can't keep its cubes loaded forever.
+ * <p>
+ * When using {@link CoordinateOrder#BRICKS}, cubes which are still needed by a brick which hasn't been completed yet are parked in a
+ * {@link BrickTracker} instead, and are only unloaded once that brick has been completed. This keeps the layer of cubes around the completed bricks
+ * loaded, so that they never have to be loaded again. They are also only unloaded early if the working set limit has been hit.
+ * <p>
+ * Positions are tracked using {@link CubePositionList#pack(int, int, int)}, with their Y coordinates relative to the middle of the job's volume.
+ * This covers more than 8 million blocks above and below it. Cubes in even taller jobs which are out of that range aren't tracked, and are left for
+ * Cubic Chunks to unload.
+ *
+ * @author DaPorkchop_
+ * @see PregenConfig.UnloadMode#FRONTIER
+ */
+public final class FrontierUnloader {
+    private static final int MIN_BUDGET = 64;
+    private static final int MIN_LIMIT = 27;
+    private static final double DECREASE_FACTOR = 0.75d;
+    private static final int MAX_LIMIT_FACTOR = 8;
+
+    /**
+     * Computes the number of generated cubes after which a cube which hasn't been touched again is considered to be behind the frontier.
+     */
+    private static long delay(PregenJob job) {
+        if (PregenConfig.unloadDelay > 0) {
+            return PregenConfig.unloadDelay;
+        }
+
+        Volume volume = job.volume;
+        long delay;
+        if (job.proximity != null) { //neighboring regions are usually generated soon after each other
+            delay = 2L * PlayerProximityCursor.REGION_SIZE * PlayerProximityCursor.REGION_SIZE * volume.sizeY();
+        } else {
+            switch (job.order) {
+                case SLICES_TOP_TO_BOTTOM:
+                case SLICES_BOTTOM_TO_TOP: //the next slice needs the whole previous slice
+                    delay = (long) volume.sizeX() * volume.sizeZ() + volume.sizeZ() + 1L;
+                    break;
+                case COLUMNS_TOP_TO_BOTTOM:
+                case COLUMNS_BOTTOM_TO_TOP: //columns are visited in rows along the Z axis, the next row needs the previous one
+                    delay = (volume.sizeZ() + 2L) * volume.sizeY();
+                    break;
+                case HILBERT_2D_TOP_TO_BOTTOM:
+                case HILBERT_2D_BOTTOM_TO_TOP: //most neighboring columns are close to each other along the curve
+                    delay = 16L * volume.sizeY();
+                    break;
+                case BRICKS: //cubes are kept for as long as the bricks around them need them, see BrickTracker
+                    delay = (long) CoordinateOrder.BRICK_SIZE * CoordinateOrder.BRICK_SIZE * CoordinateOrder.BRICK_SIZE;
+                    break;
+                default:
+                    delay = 4096L;
+                    break;
+            }
+        }
+        return delay * job.lanes.length; //lanes take turns, so each lane only advances by a fraction of the generated cubes
+    }
+
+    private final WorldUnloader cubes;
+    private final ColumnUnloader columns;
+    private final BrickTracker bricks;
+    private final int radius;
+    private final long delay;
+    private final int originY; //packed positions' Y coordinates are relative to this
+
+    //the sequence number at which each position was last touched
+    private final Long2LongOpenHashMap lastTouched = new Long2LongOpenHashMap();
+
+    //positions and the sequence number at which they were touched, in the order in which they were touched. a position is only ever in the queue
+    // once, if it's touched again it's moved to the back when it reaches the front
+    private final LongArrayFIFOQueue positions = new LongArrayFIFOQueue();
+    private final LongArrayFIFOQueue sequences = new LongArrayFIFOQueue();
+
+    //positions which are being unloaded in the current call
+    private final LongArrayList evicted = new LongArrayList();
+
+    private final HeapMonitor heap;
+    private int limit = PregenConfig.maxWorkingSetCubes;
+    private boolean limited; //whether or not the limit has been hit since the last garbage collection
+
+    private long sequence;
+    private int addedSinceLastUnload;
+
+    /**
+     * @param columns the {@link ColumnUnloader} which is finishing columns for the same job, or {@code null} if none
+     */
+    public FrontierUnloader(WorldUnloader cubes, PregenJob job, ColumnUnloader columns) {
+        this(cubes, job, columns, new HeapMonitor());
+    }
+
+    /**
+     * @param columns the {@link ColumnUnloader} which is finishing columns for the same job, or {@code null} if none
+     * @param heap    the heap monitor to use for {@link PregenConfig#memoryPressureUnloading}
+     */
+    public FrontierUnloader(WorldUnloader cubes, PregenJob job, ColumnUnloader columns, HeapMonitor heap) {
+        this.cubes = cubes;
+        this.columns = columns;
+        this.bricks = BrickTracker.supports(job) ? new BrickTracker(job) : null;
+        this.heap = heap;
+        this.radius = PregenConfig.requirement.ordinal() > ICubeProviderServer.Requirement.GENERATE.ordinal() ? 1 : 0;
+        this.delay = delay(job);
+        this.originY = (int) (((long) job.volume.minY + job.volume.maxY) >> 1);
+        this.lastTouched.defaultReturnValue(-1L);
+    }
+
+    /**
+     * Marks the cube at the given position and its neighborhood as being in use.
+     */
+    public void touch(int x, int y, int z) {
+        long sequence = ++this.sequence;
+        int r = this.radius;
+        for (int dx = -r; dx <= r; dx++) {
+            for (int dy = -r; dy <= r; dy++) {
+                for (int dz = -r; dz <= r; dz++) {
+                    long relativeY = (long) y + dy - this.originY;
+                    if (relativeY != (int) relativeY || !CubePositionList.canPack(x + dx, (int) relativeY, z + dz)) {
+                        Metrics.WORKING_SET_UNTRACKED.increment();
+                        continue;
+                    }
+
+                    long pos = CubePositionList.pack(x + dx, (int) relativeY, z + dz);
+                    if (this.lastTouched.put(pos, sequence) < 0L) { //the position isn't queued yet
+                        this.positions.enqueue(pos);
+                        this.sequences.enqueue(sequence);
+                        this.addedSinceLastUnload++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Unloads cubes which are behind the frontier.
+     */
+    public void unload() {
+        int limit = this.limit();
+        int budget = max(this.addedSinceLastUnload << 1, MIN_BUDGET);
+        if (this.lastTouched.size() > limit) { //catch up quickly if the limit was reduced
+            budget = max(budget, (this.lastTouched.size() - limit) >> 2);
+        }
+        this.addedSinceLastUnload = 0;
+
+        if (this.bricks != null) { //cubes which were waiting for bricks that have been completed since then are queued again
+            this.bricks.unpark(this::requeue, this.lastTouched.size() > limit);
+        }
+
+        while (budget-- > 0 && !this.positions.isEmpty()) {
+            boolean overfull = this.lastTouched.size() > limit;
+            this.limited |= overfull;
+            if (!overfull && this.sequences.firstLong() > this.sequence - this.delay) { //the oldest position isn't behind the frontier yet
+                break;
+            }
+
+            long pos = this.positions.dequeueLong();
+            long sequence = this.sequences.dequeueLong();
+            long lastTouched = this.lastTouched.get(pos);
+            if (!overfull && (lastTouched != sequence //the position has been touched again since it was queued
+                              || (this.columns != null && this.columns.isUnfinished(CubePositionList.unpackX(pos), CubePositionList.unpackZ(pos))))) { //the column will be unloaded as a whole
+                this.positions.enqueue(pos);
+                this.sequences.enqueue(lastTouched);
+                continue;
+            } else if (!overfull && this.bricks != null
+                       && this.bricks.park(pos, CubePositionList.unpackX(pos), CubePositionList.unpackY(pos) + this.originY, CubePositionList.unpackZ(pos))) {
+                continue; //a brick which hasn't been completed yet still needs it
+            }
+
+            this.lastTouched.remove(pos);
+            this.evicted.add(pos);
+        }
+
+        int unloaded = this.evicted.isEmpty() ? 0 : this.cubes.unload(this.evicted, this.originY, PregenConfig.unloadColumns);
+        this.evicted.clear();
+
+        Metrics.WORKING_SET_SIZE.set(this.lastTouched.size());
+        Metrics.WORKING_SET_LIMIT.set(limit);
+        if (unloaded > 0) {
+            Runtime runtime = Runtime.getRuntime();
+            Metrics.HEAP_USED_AFTER_UNLOAD.set(runtime.totalMemory() - runtime.freeMemory());
+        }
+    }
+
+    private void requeue(long pos) {
+        this.positions.enqueue(pos);
+        this.sequences.enqueue(this.lastTouched.get(pos));
+    }
+
+    /**
+     * @return the maximum number of positions which may currently be kept loaded
+     */
+    private int limit() {
+        if (!PregenConfig.memoryPressureUnloading) {
+            return this.limit = PregenConfig.maxWorkingSetCubes;
+        } else if (!this.heap.poll()) { //no new measurements since the last garbage collection
+            return this.limit;
+        }
+
+        double occupancy = this.heap.occupancy();
+        Metrics.HEAP_OCCUPANCY_PERCENT.set((long) (occupancy * 100.0d));
+        if (occupancy > PregenConfig.heapTargetMaxPercent / 100.0d) {
+            //the heap is getting full: shrink the working set, starting from its current size in case it was below the limit
+            this.limit = max((int) (min(this.limit, this.lastTouched.size()) * DECREASE_FACTOR), MIN_LIMIT);
+        } else if (occupancy < PregenConfig.heapTargetMinPercent / 100.0d && this.limited) {
+            //there's plenty of memory left and more cubes would have been kept loaded if they were allowed to
+            long maxLimit = min((long) PregenConfig.maxWorkingSetCubes * MAX_LIMIT_FACTOR, Integer.MAX_VALUE);
+            this.limit = (int) min((long) this.limit + max(PregenConfig.maxWorkingSetCubes >> 3, MIN_LIMIT), maxLimit);
+        }
+        this.limited = false;
+        return this.limit;
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import net.daporkchop.ccpregen.util.CubeCursor;
+import net.daporkchop.ccpregen.util.Hilbert;
+import net.daporkchop.ccpregen.util.Volume;
+import net.minecraft.entity.player.EntityPlayer;
+
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static java.lang.Math.*;
+
+/**
+ * A {@link CubeCursor} which generates the regions of a {@link Volume} closest to online players first.
+ * <p>
+ * The volume is divided into full-height regions of {@link #REGION_SIZE}x{@link #REGION_SIZE} columns. Whenever a region is finished, the next one
+ * is taken from a priority queue containing the unstarted regions near each player's predicted position (their current position, extrapolated
+ * along the direction they're travelling in). If no players are nearby, regions are generated along a 2D hilbert curve.
+ * <p>
+ * Since the order depends on where players are, indices returned by this cursor are only meaningful until the job is stopped. Progress is instead
+ * persisted as a bitmap of completed regions, see {@link #bitmap(long)}. Regions which were only partially generated are started again from the
+ * beginning when the job is resumed.
+ *
+ * @author DaPorkchop_
+ * @see PregenConfig#prioritizePlayers
+ */
+public final class PlayerProximityCursor extends CubeCursor {
+    /**
+     * The width of a region, in cubes.
+     */
+    public static final int REGION_SIZE = 4;
+
+    private static final long REFRESH_INTERVAL_NANOS = 1000000000L;
+
+    /**
+     * The number of seconds ahead which a player's position is predicted.
+     */
+    private static final double LOOKAHEAD_SECONDS = 10.0d;
+
+    /**
+     * @return whether or not the given volume is small enough for its regions to be tracked
+     */
+    public static boolean supports(Volume volume) {
+        return regions(volume.sizeX()) * (long) regions(volume.sizeZ()) < Integer.MAX_VALUE - 8;
+    }
+
+    /**
+     * Restores a cursor which was previously saved using {@link #bitmap(long)}.
+     */
+    public static PlayerProximityCursor decode(Volume volume, byte[] bitmap) {
+        return new PlayerProximityCursor(volume, BitSet.valueOf(bitmap));
+    }
+
+    /**
+     * Restores a cursor which was saved in the config by an older version.
+     */
+    public static PlayerProximityCursor decode(Volume volume, String encoded) {
+        return decode(volume, Base64.getDecoder().decode(encoded));
+    }
+
+    private static int regions(int size) {
+        return (size + REGION_SIZE - 1) / REGION_SIZE;
+    }
+
+    private static long countCubes(Volume volume, BitSet regions) {
+        int regionsZ = regions(volume.sizeZ());
+        long count = 0L;
+        for (int region = regions.nextSetBit(0); region >= 0; region = regions.nextSetBit(region + 1)) {
+            int minX = volume.minX + region / regionsZ * REGION_SIZE;
+            int minZ = volume.minZ + region % regionsZ * REGION_SIZE;
+            count += (long) (min(minX + REGION_SIZE - 1, volume.maxX) - minX + 1) * (min(minZ + REGION_SIZE - 1, volume.maxZ) - minZ + 1) * volume.sizeY();
+        }
+        return count;
+    }
+
+    private final Volume volume;
+    private final int regionsX;
+    private final int regionsZ;
+
+    private final BitSet completed; //regions which are entirely generated
+    private final BitSet resumed; //regions which were already entirely generated when this cursor was created
+    private final BitSet started; //regions which have been returned by this cursor, or were already completed
+    private final long completedCubes;
+
+    //started regions which aren't known to be completed yet, and the index after their last cube
+    private final ArrayDeque<long[]> pending = new ArrayDeque<>();
+
+    //candidate regions near players, packed as (squared distance << 32 | region)
+    private final PriorityQueue<Long> candidates = new PriorityQueue<>();
+    private final Hilbert.Cursor2d fallback;
+    private long lastRefresh = System.nanoTime() - REFRESH_INTERVAL_NANOS;
+    private Map<Object, double[]> lastPositions = new IdentityHashMap<>();
+
+    //the bounds of the region currently being iterated over
+    private int regionMinX;
+    private int regionMaxX;
+    private int regionMinZ;
+    private int regionMaxZ;
+    private long remainingInRegion;
+
+    private int nextX;
+    private int nextY;
+    private int nextZ;
+
+    public PlayerProximityCursor(Volume volume) {
+        this(volume, new BitSet());
+    }
+
+    private PlayerProximityCursor(Volume volume, BitSet completed) {
+        super(volume.total - countCubes(volume, completed), 0L);
+        this.volume = volume;
+        this.regionsX = regions(volume.sizeX());
+        this.regionsZ = regions(volume.sizeZ());
+        this.completed = completed;
+        this.started = (BitSet) completed.clone();
+        this.resumed = (BitSet) completed.clone();
+        this.completedCubes = volume.total - this.total;
+        this.fallback = Hilbert.cursor2d(0, 0, this.regionsX, this.regionsZ, 0L);
+    }
+
+    /**
+     * @return the number of cubes in regions which were already completed when this cursor was created
+     */
+    public long completedCubes() {
+        return this.completedCubes;
+    }
+
+    /**
+     * @return whether or not the column at the given position is in a region which was already completed when this cursor was created, and will
+     * therefore never be returned
+     */
+    public boolean wasCompleted(int x, int z) {
+        return this.resumed.get((x - this.volume.minX) / REGION_SIZE * this.regionsZ + (z - this.volume.minZ) / REGION_SIZE);
+    }
+
+    /**
+     * Updates the candidate regions based on the current positions of the given players.
+     * <p>
+     * Does nothing if the candidates have already been updated recently.
+     *
+     * @param players the players in the job's dimension
+     */
+    public void refresh(List<EntityPlayer> players) {
+        if (System.nanoTime() - this.lastRefresh < REFRESH_INTERVAL_NANOS) { //don't bother collecting the positions
+            return;
+        }
+
+        Map<Object, double[]> positions = new IdentityHashMap<>();
+        for (EntityPlayer player : players) {
+            positions.put(player, new double[]{ player.posX, player.posZ });
+        }
+        this.refresh(positions);
+    }
+
+    /**
+     * Updates the candidate regions based on the given player positions.
+     * <p>
+     * Does nothing if the candidates have already been updated recently.
+     *
+     * @param players the (x, z) position of each player in blocks, keyed by an object which identifies the player across calls
+     */
+    public void refresh(Map<?, double[]> players) {
+        long now = System.nanoTime();
+        if (now - this.lastRefresh < REFRESH_INTERVAL_NANOS) {
+            return;
+        }
+        double seconds = (now - this.lastRefresh) / 1000000000.0d;
+        this.lastRefresh = now;
+
+        this.candidates.clear();
+        int radius = max(PregenConfig.prioritizePlayersRadius / REGION_SIZE, 1);
+        Map<Object, double[]> positions = new IdentityHashMap<>();
+        for (Map.Entry<?, double[]> entry : players.entrySet()) {
+            double x = entry.getValue()[0] / 16.0d;
+            double z = entry.getValue()[1] / 16.0d;
+            positions.put(entry.getKey(), new double[]{ x, z });
+
+            //extrapolate the player's movement since the last refresh, players usually keep exploring in the direction they're travelling in
+            double[] last = this.lastPositions.get(entry.getKey());
+            if (last != null) {
+                double dx = (x - last[0]) / seconds * LOOKAHEAD_SECONDS;
+                double dz = (z - last[1]) / seconds * LOOKAHEAD_SECONDS;
+                double length = sqrt(dx * dx + dz * dz);
+                double maxLength = radius * REGION_SIZE * 0.5d;
+                if (length > maxLength) { //don't look so far ahead that the player's surroundings are no longer prioritized
+                    dx *= maxLength / length;
+                    dz *= maxLength / length;
+                }
+                x += dx;
+                z += dz;
+            }
+            this.addCandidates(x, z, radius);
+        }
+        this.lastPositions = positions;
+    }
+
+    private void addCandidates(double x, double z, int radius) {
+        //convert to region coordinates
+        double centerX = (x - this.volume.minX) / REGION_SIZE;
+        double centerZ = (z - this.volume.minZ) / REGION_SIZE;
+
+        int minRegionX = max((int) floor(centerX) - radius, 0);
+        int maxRegionX = min((int) floor(centerX) + radius, this.regionsX - 1);
+        int minRegionZ = max((int) floor(centerZ) - radius, 0);
+        int maxRegionZ = min((int) floor(centerZ) + radius, this.regionsZ - 1);
+        for (int regionX = minRegionX; regionX <= maxRegionX; regionX++) {
+            for (int regionZ = minRegionZ; regionZ <= maxRegionZ; regionZ++) {
+                int region = regionX * this.regionsZ + regionZ;
+                if (!this.started.get(region)) {
+                    double dx = (regionX + 0.5d - centerX) * REGION_SIZE;
+                    double dz = (regionZ + 0.5d - centerZ) * REGION_SIZE;
+                    this.candidates.add((long) (dx * dx + dz * dz) << 32L | region);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks all regions whose cubes are all below the given index as completed.
+     *
+     * @param watermark the index below which all cubes returned by this cursor have been generated
+     */
+    public void update(long watermark) {
+        long[] entry;
+        while ((entry = this.pending.peekFirst()) != null && entry[1] <= watermark) {
+            this.pending.pollFirst();
+            this.completed.set((int) entry[0]);
+        }
+    }
+
+    /**
+     * @param watermark the index below which all cubes returned by this cursor have been generated
+     * @return the bitmap of completed regions
+     */
+    public byte[] bitmap(long watermark) {
+        this.update(watermark);
+        return this.completed.toByteArray();
+    }
+
+    @Override
+    protected void advance0() {
+        if (this.remainingInRegion == 0L) {
+            this.beginRegion(this.nextRegion());
+        }
+
+        this.x = this.nextX;
+        this.y = this.nextY;
+        this.z = this.nextZ;
+        this.remainingInRegion--;
+
+        //iterate over the columns in the region, generating each from top to bottom
+        if (--this.nextY < this.volume.minY) {
+            this.nextY = this.volume.maxY;
+            if (++this.nextZ > this.regionMaxZ) {
+                this.nextZ = this.regionMinZ;
+                this.nextX++;
+            }
+        }
+    }
+
+    private int nextRegion() {
+        Long candidate;
+        while ((candidate = this.candidates.poll()) != null) {
+            int region = (int) (long) candidate;
+            if (!this.started.get(region)) {
+                return region;
+            }
+        }
+
+        while (this.fallback.hasNext()) {
+            this.fallback.advance();
+            int region = this.fallback.x() * this.regionsZ + this.fallback.z();
+            if (!this.started.get(region)) {
+                return region;
+            }
+        }
+        throw new IllegalStateException("no regions left");
+    }
+
+    private void beginRegion(int region) {
+        this.started.set(region);
+        this.regionMinX = this.volume.minX + region / this.regionsZ * REGION_SIZE;
+        this.regionMaxX = min(this.regionMinX + REGION_SIZE - 1, this.volume.maxX);
+        this.regionMinZ = this.volume.minZ + region % this.regionsZ * REGION_SIZE;
+        this.regionMaxZ = min(this.regionMinZ + REGION_SIZE - 1, this.volume.maxZ);
+        this.remainingInRegion = (long) (this.regionMaxX - this.regionMinX + 1) * (this.regionMaxZ - this.regionMinZ + 1) * this.volume.sizeY();
+        this.nextX = this.regionMinX;
+        this.nextY = this.volume.maxY;
+        this.nextZ = this.regionMinZ;
+
+        this.pending.addLast(new long[]{ region, this.nextIndex + this.remainingInRegion });
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import io.github.opencubicchunks.cubicchunks.api.world.ICubeProviderServer;
+import io.github.opencubicchunks.cubicchunks.api.worldgen.ICubeGenerator;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.daporkchop.ccpregen.util.CubePositionList;
+import net.daporkchop.ccpregen.util.Volume;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Polls the readiness of cubes which are being prefetched from an async generator.
+ * <p>
+ * Positions are grouped into columns or bricks of 2x2x2 cubes, and the result of polling a group is remembered until {@link #reset()} is called
+ * (once per call from the world worker manager):
+ * <ul>
+ *     <li>If the generator implements {@link BulkPrefetchGenerator}, the generator's grouping is used, and each group is polled as a whole. No
+ *     matter how many of a group's cubes are in the prefetch window, the group is polled at most once per call.</li>
+ *     <li>Otherwise, positions are grouped by column if the job visits the cubes of each column one after the other, and by brick if not. The
+ *     generator can only be polled one cube at a time, so a group is polled until one of its cubes is {@link ICubeGenerator.GeneratorReadyState#WAITING}.
+ *     The other cubes in the group are generated together with it, so they are very likely to be waiting as well, and are assumed to be until the
+ *     next call. New positions are always polled individually when they are {@link #prefetch(int, int, int) added to the window}, since polling
+ *     is what starts generating them.</li>
+ * </ul>
+ * Bricks which are more than a million cubes above or below the middle of the volume aren't grouped, and are always polled individually.
+ *
+ * @author DaPorkchop_
+ */
+public final class PrefetchGroups {
+    private final ICubeGenerator generator;
+    private final BulkPrefetchGenerator bulk;
+    private final BulkPrefetchGenerator.Grouping grouping;
+    private final int minX;
+    private final int minY;
+    private final int maxY;
+    private final int minZ;
+    private final int originY; //brick keys' Y coordinates are relative to this
+
+    //the state of each group which has been polled since the last reset
+    private final Long2ObjectOpenHashMap<ICubeGenerator.GeneratorReadyState> states = new Long2ObjectOpenHashMap<>();
+
+    public PrefetchGroups(ICubeGenerator generator, PregenJob job) {
+        this.generator = generator;
+        this.bulk = generator instanceof BulkPrefetchGenerator ? (BulkPrefetchGenerator) generator : null;
+        if (this.bulk != null) {
+            this.grouping = this.bulk.prefetchGrouping();
+        } else {
+            this.grouping = job.proximity != null || job.order.columnMajor() ? BulkPrefetchGenerator.Grouping.COLUMNS : BulkPrefetchGenerator.Grouping.BRICKS;
+        }
+
+        Volume volume = job.volume;
+        this.minX = volume.minX;
+        this.minY = volume.minY;
+        this.maxY = volume.maxY;
+        this.minZ = volume.minZ;
+        this.originY = (int) (((long) volume.minY + volume.maxY) >> 1);
+    }
+
+    /**
+     * Forgets the state of all groups, so that they will be polled again.
+     */
+    public void reset() {
+        this.states.clear();
+    }
+
+    /**
+     * Polls the readiness of the cube at the given position, which has just been added to the prefetch window.
+     */
+    public ICubeGenerator.GeneratorReadyState prefetch(int x, int y, int z) {
+        return this.bulk != null ? this.poll(x, y, z) : this.count(this.pollCube(x, y, z));
+    }
+
+    /**
+     * Polls the readiness of the cube at the given position.
+     */
+    public ICubeGenerator.GeneratorReadyState poll(int x, int y, int z) {
+        long key;
+        if (this.grouping == BulkPrefetchGenerator.Grouping.COLUMNS) {
+            key = ChunkPos.asLong(x, z);
+        } else {
+            //bricks are aligned to even coordinates, so that they match the bricks used by bulk generators
+            int brickX = (x >> 1) - (this.minX >> 1);
+            int brickY = (y >> 1) - (this.originY >> 1);
+            int brickZ = (z >> 1) - (this.minZ >> 1);
+            if (!CubePositionList.canPack(brickX, brickY, brickZ)) { //too far away from the middle of the volume, don't group it
+                return this.count(this.bulk != null
+                        ? this.bulk.pollAsyncCubes(x & ~1, y & ~1, z & ~1, x | 1, y | 1, z | 1, PregenConfig.requirement)
+                        : this.pollCube(x, y, z));
+            }
+            key = CubePositionList.pack(brickX, brickY, brickZ);
+        }
+
+        ICubeGenerator.GeneratorReadyState state = this.states.get(key);
+        if (state != null) { //the group has already been polled
+            Metrics.POLL_GROUP_CACHED.increment();
+            return state;
+        }
+
+        if (this.bulk == null) {
+            state = this.pollCube(x, y, z);
+            if (state != ICubeGenerator.GeneratorReadyState.WAITING) { //other cubes in the group may not be ready yet, only a cube which is waiting is representative
+                return this.count(state);
+            }
+        } else if (this.grouping == BulkPrefetchGenerator.Grouping.COLUMNS) {
+            state = this.bulk.pollAsyncCubes(x, this.minY, z, x, this.maxY, z, PregenConfig.requirement);
+        } else {
+            state = this.bulk.pollAsyncCubes(x & ~1, y & ~1, z & ~1, x | 1, y | 1, z | 1, PregenConfig.requirement);
+        }
+        this.states.put(key, state);
+        return this.count(state);
+    }
+
+    private ICubeGenerator.GeneratorReadyState pollCube(int x, int y, int z) {
+        if (PregenConfig.requirement.ordinal() >= ICubeProviderServer.Requirement.POPULATE.ordinal()) {
+            return this.generator.pollAsyncCubePopulator(x, y, z);
+        } else {
+            return this.generator.pollAsyncCubeGenerator(x, y, z);
+        }
+    }
+
+    private ICubeGenerator.GeneratorReadyState count(ICubeGenerator.GeneratorReadyState state) {
+        switch (state) {
+            case READY:
+                Metrics.POLL_READY.increment();
+                break;
+            case WAITING:
+                Metrics.POLL_WAITING.increment();
+                break;
+            case FAIL:
+                Metrics.POLL_FAIL.increment();
+                break;
+        }
+        return state;
+    }
+}
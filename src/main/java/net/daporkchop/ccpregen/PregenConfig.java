@@ -56,14 +56,69 @@ public class PregenConfig {
     public static int saveStateInterval = 30000;
 
     @Config.Comment({
-            "The period (in generated cubes) between unloading of all cubes.",
+            "The period (in seconds) between saves of the current state, regardless of how many cubes have been generated.",
+            "The state is written to a separate file in the background, so saving it frequently is cheap."
+    })
+    @Config.RangeInt(min = 1)
+    public static int saveStateIntervalSeconds = 5;
+
+    @Config.Comment({
+            "How cubes loaded by pregeneration are unloaded.",
+            "FRONTIER: cubes are unloaded a little while after the pregenerator has moved past them, once they're no longer needed to populate or light",
+            "  neighboring cubes. The work is spread out over time, and the number of loaded cubes is kept below maxWorkingSetCubes.",
+            "COLUMNS: like FRONTIER, but each column is also surface tracked and unloaded together with all of its cubes as soon as it and its",
+            "  neighbors have been generated over the full height of the volume, so that the column is only serialized once. Only supported by the",
+            "  COLUMNS_* and HILBERT_2D_* orders and by prioritizePlayers, other jobs fall back to FRONTIER.",
+            "PERIODIC: all cubes are unloaded at once every unloadCubesInterval generated cubes. This causes periodic stalls, and neighboring cubes",
+            "  which are still needed will have to be loaded again afterwards. When using the BRICKS order, the cubes which are still needed by",
+            "  unfinished bricks are kept loaded.",
+            "Surface tracking always uses PERIODIC."
+    })
+    public static UnloadMode unloadMode = UnloadMode.FRONTIER;
+
+    @Config.Comment({
+            "The number of generated cubes after which a cube which is no longer being used will be unloaded, when using FRONTIER unloading.",
+            "If 0, this is chosen automatically based on the coordinate order and the size of the pregeneration volume."
+    })
+    @Config.RangeInt(min = 0)
+    public static int unloadDelay = 0;
+
+    @Config.Comment({
+            "The maximum number of cubes which will be kept loaded for each pregeneration task when using FRONTIER unloading.",
+            "If memoryPressureUnloading is enabled, this is only the initial value, which is then adjusted based on heap usage.",
+            "If more cubes are in use, the least recently used ones are unloaded early, which may cause them to be loaded again later."
+    })
+    @Config.RangeInt(min = 27)
+    public static int maxWorkingSetCubes = 16384;
+
+    @Config.Comment({
+            "Whether or not cubes should be unloaded based on how full the heap is after garbage collection, keeping it between heapTargetMinPercent",
+            "and heapTargetMaxPercent.",
+            "FRONTIER: maxWorkingSetCubes is only the initial limit. It grows while the heap is below the target (up to 8 times maxWorkingSetCubes),",
+            "  and shrinks while the heap is above the target, which causes cubes to be unloaded early.",
+            "PERIODIC: all cubes are unloaded as soon as the heap is above the target, and the periodic unloading is skipped while the heap is below",
+            "  the target."
+    })
+    public static boolean memoryPressureUnloading = true;
+
+    @Config.Comment("The heap occupancy after garbage collection (in percent of the maximum heap size) below which more cubes may be kept loaded.")
+    @Config.RangeInt(min = 1, max = 100)
+    public static int heapTargetMinPercent = 50;
+
+    @Config.Comment("The heap occupancy after garbage collection (in percent of the maximum heap size) above which cubes will be unloaded early.")
+    @Config.RangeInt(min = 1, max = 100)
+    public static int heapTargetMaxPercent = 75;
+
+    @Config.Comment({
+            "The period (in generated cubes) between unloading of all cubes, when using PERIODIC unloading.",
             "Setting this value too low can seriously degrade performance, setting it too high can cause the server to run out of memory."
     })
     @Config.RangeInt(min = 1)
     public static int unloadCubesInterval = 8000;
 
     @Config.Comment({
-            "Whether or not columns should also be automatically unloaded every unloadCubesInterval.",
+            "Whether or not columns should also be automatically unloaded every unloadCubesInterval, or as soon as they are empty when using FRONTIER",
+            "unloading.",
             "This can provide significant performance benefits when pregenerating very tall areas, since serialization of columns becomes increasingly",
             "expensive as the heightmap grows. However, for wider areas this can cause high memory usage, and even cause the JVM to completely run out",
             "of memory."
@@ -73,16 +128,26 @@ public class PregenConfig {
     @Config.Comment({
             "The order in which cubes will be generated.",
             "Slices are 1-cube-tall horizontal planes, columns should be self-explanatory :P",
+            "BRICKS finishes one 4x4x4 brick of cubes at a time, visiting the bricks along a 3D hilbert curve. Cubes are kept loaded until every",
+            "  brick next to them has been finished, so that they never have to be loaded again.",
             "Cannot be updated retroactively on an already running task."
     })
     public static CoordinateOrder order = CoordinateOrder.HILBERT_2D_TOP_TO_BOTTOM;
 
     @Config.Comment({
-            "Whether or not cubes should be saved immediately after they are generated.",
+            "Whether or not cubes should be saved soon after they are generated, rather than only once they are unloaded.",
+            "Generated cubes and their columns are collected into batches of saveBatchSize cubes, which are sorted by region and saved gradually.",
             "This might cause writing to stall occasionally on slow computers, but should generally result in better performance overall."
     })
     public static boolean immediateCubeSave = false;
 
+    @Config.Comment({
+            "The number of generated cubes which are collected before saving them, when immediateCubeSave is enabled.",
+            "Larger batches group more cubes from the same region and column together, but take longer until the cubes are written."
+    })
+    @Config.RangeInt(min = 1)
+    public static int saveBatchSize = 256;
+
     @Config.Comment({
             "Whether or not cubes should be unloaded immediately after they are generated.",
             "This will cause significant slowdown if the generation requirement is set to anything other than GENERATE, and will likely cause significant",
@@ -98,6 +163,123 @@ public class PregenConfig {
     })
     public static int asyncPrefetchCount = 1024;
 
+    @Config.Comment({
+            "The maximum amount of time (in nanoseconds) which may be spent generating cubes each time a pregeneration task is given a chance to run.",
+            "Cubes are generated in a loop until either this budget or maxCubesPerCall is exhausted, which avoids the overhead of returning to the",
+            "scheduler after every single cube. The budget is only checked between cubes, so a single slow cube may exceed it."
+    })
+    @Config.RangeInt(min = 0)
+    public static int maxWorkNanosPerCall = 5000000;
+
+    @Config.Comment("The maximum number of cubes which may be generated each time a pregeneration task is given a chance to run.")
+    @Config.RangeInt(min = 1)
+    public static int maxCubesPerCall = 64;
+
+    @Config.Comment({
+            "Whether or not the generation rate and async prefetch depth should be adjusted automatically.",
+            "If enabled, an AIMD controller continuously adjusts the number of cubes generated per call (up to maxCubesPerCall) and the number of",
+            "prefetched cubes (up to asyncPrefetchCount) in order to keep the save queue below adaptiveTargetSaveQueueSize and the server tick time",
+            "below adaptiveTargetTickMillis. maxSaveQueueSize is still enforced as a hard limit."
+    })
+    public static boolean adaptiveControl = false;
+
+    @Config.Comment("The save queue size which the adaptive controller will try to stay below. Should be lower than maxSaveQueueSize.")
+    @Config.RangeInt(min = 0)
+    public static int adaptiveTargetSaveQueueSize = 5000;
+
+    @Config.Comment("The server tick time (in milliseconds) which the adaptive controller will try to stay below.")
+    @Config.RangeInt(min = 1)
+    public static int adaptiveTargetTickMillis = 45;
+
+    @Config.Comment({
+            "Whether or not pregeneration should be throttled in order to leave tick time for players.",
+            "If enabled, pregeneration may only spend a limited amount of time each tick and generate a limited number of cubes per second, with",
+            "separate limits for when players are online and when the server is empty. While players are online, the time budget is also reduced",
+            "automatically whenever the average tick time exceeds throttleTargetTickMillis, unless adaptiveControl is enabled (which already slows",
+            "down generation whenever the tick time exceeds adaptiveTargetTickMillis)."
+    })
+    public static boolean throttle = false;
+
+    @Config.Comment("The maximum amount of time (in nanoseconds) which pregeneration may spend each tick while players are online.")
+    @Config.RangeInt(min = 1)
+    public static int throttleOnlineNanosPerTick = 10000000;
+
+    @Config.Comment("The maximum amount of time (in nanoseconds) which pregeneration may spend each tick while no players are online. If 0, unlimited.")
+    @Config.RangeInt(min = 0)
+    public static int throttleOfflineNanosPerTick = 0;
+
+    @Config.Comment("The maximum number of cubes which may be generated per second while players are online. If 0, unlimited.")
+    @Config.RangeInt(min = 0)
+    public static int throttleOnlineCubesPerSecond = 0;
+
+    @Config.Comment("The maximum number of cubes which may be generated per second while no players are online. If 0, unlimited.")
+    @Config.RangeInt(min = 0)
+    public static int throttleOfflineCubesPerSecond = 0;
+
+    @Config.Comment("The average server tick time (in milliseconds) which the throttle will try to stay below while players are online. Ignored if adaptiveControl is enabled.")
+    @Config.RangeInt(min = 1)
+    public static int throttleTargetTickMillis = 45;
+
+    @Config.Comment({
+            "The number of lanes which each pregeneration task is split into.",
+            "Each lane is a contiguous part of the task's coordinate order, and all lanes are generated at the same time. Using multiple lanes",
+            "allows async-capable generators to work on several separate regions at once. Only takes effect for newly started tasks."
+    })
+    @Config.RangeInt(min = 1, max = 256)
+    public static int lanes = 1;
+
+    @Config.Comment({
+            "Whether or not pregeneration should prioritize areas near online players.",
+            "If enabled, the volume is split into full-height regions of 4x4 columns, and the regions closest to where players are (and where they're",
+            "heading) are generated first. Otherwise, regions are generated along a 2D hilbert curve. order and lanes are ignored for such tasks.",
+            "Progress is saved per region, so regions which were only partially generated will be started again when the task is resumed.",
+            "Only takes effect for newly started tasks."
+    })
+    public static boolean prioritizePlayers = false;
+
+    @Config.Comment({
+            "The distance (in cubes) around each player within which regions are prioritized.",
+            "The regions around each player are scanned on the server thread once per second, so this is limited to keep that cheap."
+    })
+    @Config.RangeInt(min = 1, max = 512)
+    public static int prioritizePlayersRadius = 64;
+
+    @Config.Comment({
+            "Whether or not cubes which already exist on disk should be skipped without loading them.",
+            "If enabled, all existing cubes in the world are listed when a pregeneration task is started or resumed. A cube is skipped if it",
+            "(and, if the requirement is higher than GENERATE, all 26 of its neighbors) already exists.",
+            "This makes enlarging an already pregenerated area much faster, but requires a recent version of Cubic Chunks."
+    })
+    public static boolean skipExistingCubes = false;
+
+    @Config.Comment({
+            "The number of background threads which the surface tracker uses to check which cubes need to be surface tracked.",
+            "These threads read the cubes' raw data from disk, so that only cubes which actually need to be surface tracked have to be loaded on the",
+            "server thread. Set to 0 to load every cube on the server thread instead."
+    })
+    @Config.RangeInt(min = 0)
+    public static int surfaceTrackingScanThreads = 2;
+
+    @Config.Comment({
+            "Whether or not to serve pregeneration metrics over HTTP in the OpenMetrics (Prometheus) text format.",
+            "The metrics will be available at http://127.0.0.1:<metricsServerPort>/metrics. Only takes effect after a server restart."
+    })
+    public static boolean metricsServer = false;
+
+    @Config.Comment("The port which the metrics server will listen on. The server is only reachable from localhost.")
+    @Config.RangeInt(min = 1, max = 65535)
+    public static int metricsServerPort = 9225;
+
+    /**
+     * @author DaPorkchop_
+     * @see #unloadMode
+     */
+    public enum UnloadMode {
+        FRONTIER,
+        COLUMNS,
+        PERIODIC
+    }
+
     @SubscribeEvent
     public static void onConfigChanged(ConfigChangedEvent.OnConfigChangedEvent event) {
         if (event.getModID().equals(CCPregen.MODID)) {
@@ -116,12 +298,23 @@ public class PregenConfig {
                 }
 
                 //any older version: cancel running pregen task
-                PregenState.active = false;
+                PregenState._legacy_active = false;
                 SurfaceTrackingState.active = false;
             case 1:
+                //version 2 replaced the single pregeneration task with multiple jobs
+                PregenState.migrateLegacyState();
+            case 2:
+                //version 3 moved the job state from the config to a separate checkpoint file
+                PregenState.migrateConfigState();
+            case 3:
         }
 
-        version = 1;
+        version = 3;
         ConfigManager.sync(CCPregen.MODID, Config.Type.INSTANCE);
+
+        if (adaptiveControl && throttle) {
+            //both of them backing off at the same time would slow down generation far more than necessary
+            CCPregen.LOGGER.info("adaptiveControl and throttle are both enabled, only adaptiveTargetTickMillis will be used to limit the tick time");
+        }
     }
 }
@@ -0,0 +1,203 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.ProgressTracker;
+import net.daporkchop.ccpregen.util.Volume;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A single pregeneration job.
+ *
+ * @author DaPorkchop_
+ */
+public final class PregenJob {
+    /**
+     * Restores a job which was previously saved using {@link #write(DataOutput)}.
+     */
+    public static PregenJob read(DataInput in) throws IOException {
+        int id = in.readInt();
+        int dim = in.readInt();
+        Volume volume = new Volume(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        CoordinateOrder order = CoordinateOrder.valueOf(in.readUTF());
+        boolean paused = in.readBoolean();
+        int weight = in.readInt();
+        int priority = in.readInt();
+        long generated = in.readLong();
+
+        PregenJob job;
+        int laneCount = in.readInt();
+        if (laneCount < 0) { //the job prioritizes regions near players
+            byte[] bitmap = new byte[in.readInt()];
+            in.readFully(bitmap);
+            job = new PregenJob(id, dim, volume, order, PlayerProximityCursor.decode(volume, bitmap));
+        } else {
+            PregenLane[] lanes = new PregenLane[laneCount];
+            for (int i = 0; i < laneCount; i++) {
+                lanes[i] = PregenLane.read(order, volume, in);
+            }
+            job = new PregenJob(id, dim, volume, order, lanes);
+        }
+
+        job.paused = paused;
+        job.weight = weight;
+        job.priority = priority;
+        job.generated = generated;
+        return job;
+    }
+
+    /**
+     * Restores a job which was saved in the config by an older version.
+     *
+     * @param id      the job's ID
+     * @param encoded the encoded job
+     */
+    public static PregenJob decode(int id, String encoded) {
+        String[] split = encoded.split(",", -1);
+        if (split.length != 11 && split.length != 12) {
+            throw new IllegalArgumentException("invalid job: " + encoded);
+        }
+
+        int dim = Integer.parseInt(split[0]);
+        Volume volume = new Volume(
+                Integer.parseInt(split[1]), Integer.parseInt(split[2]), Integer.parseInt(split[3]),
+                Integer.parseInt(split[4]), Integer.parseInt(split[5]), Integer.parseInt(split[6]));
+        CoordinateOrder order = CoordinateOrder.valueOf(split[7]);
+
+        if (split.length == 12) { //the job prioritizes regions near players, and has a single lane whose progress is stored as a region bitmap
+            PregenJob job = new PregenJob(id, dim, volume, order, PlayerProximityCursor.decode(volume, split[11]));
+            job.paused = Boolean.parseBoolean(split[8]);
+            job.weight = Integer.parseInt(split[9]);
+            return job;
+        }
+
+        String[] encodedLanes = split[10].split(";");
+        PregenLane[] lanes = new PregenLane[encodedLanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = PregenLane.decode(order, volume, encodedLanes[i]);
+        }
+
+        PregenJob job = new PregenJob(id, dim, volume, order, lanes);
+        job.paused = Boolean.parseBoolean(split[8]);
+        job.weight = Integer.parseInt(split[9]);
+        return job;
+    }
+
+    public final int id;
+    public final int dim;
+    public final Volume volume;
+    public final CoordinateOrder order;
+    public final PregenLane[] lanes;
+
+    /**
+     * The cursor of this job's only lane if it prioritizes regions near players, otherwise {@code null}.
+     */
+    public final PlayerProximityCursor proximity;
+
+    /**
+     * Whether or not this job is still running. Set to {@code false} to abort it.
+     */
+    public boolean active = true;
+    public boolean paused;
+
+    /**
+     * This job's share of the available time, relative to the other jobs.
+     */
+    public int weight = 1;
+
+    /**
+     * The priority of this job while it is waiting in the queue. Queued jobs with a higher priority are started first.
+     */
+    public int priority;
+
+    /**
+     * The number of cubes which have been completed.
+     */
+    public long generated;
+
+    public PregenJob(int id, int dim, Volume volume, CoordinateOrder order, PregenLane[] lanes) {
+        this(id, dim, volume, order, lanes, null);
+    }
+
+    /**
+     * Creates a job which generates the regions closest to online players first.
+     */
+    public PregenJob(int id, int dim, Volume volume, CoordinateOrder order, PlayerProximityCursor proximity) {
+        this(id, dim, volume, order, new PregenLane[]{ new PregenLane(proximity, 0L, proximity.total(), new ProgressTracker()) }, proximity);
+        this.generated += proximity.completedCubes();
+    }
+
+    private PregenJob(int id, int dim, Volume volume, CoordinateOrder order, PregenLane[] lanes, PlayerProximityCursor proximity) {
+        this.id = id;
+        this.dim = dim;
+        this.volume = volume;
+        this.order = order;
+        this.lanes = lanes;
+        this.proximity = proximity;
+
+        for (PregenLane lane : lanes) {
+            this.generated += lane.completed();
+        }
+    }
+
+    /**
+     * Writes this job's state to the given output.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(this.id);
+        out.writeInt(this.dim);
+        out.writeInt(this.volume.minX);
+        out.writeInt(this.volume.minY);
+        out.writeInt(this.volume.minZ);
+        out.writeInt(this.volume.maxX);
+        out.writeInt(this.volume.maxY);
+        out.writeInt(this.volume.maxZ);
+        out.writeUTF(this.order.name());
+        out.writeBoolean(this.paused);
+        out.writeInt(this.weight);
+        out.writeInt(this.priority);
+        out.writeLong(this.generated);
+
+        if (this.proximity != null) { //the lane's progress can't be restored, so only the completed regions are saved
+            out.writeInt(-1);
+            byte[] bitmap = this.proximity.bitmap(this.lanes[0].watermark());
+            out.writeInt(bitmap.length);
+            out.write(bitmap);
+        } else {
+            out.writeInt(this.lanes.length);
+            for (PregenLane lane : this.lanes) {
+                lane.write(out);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("#%d: dimension %d, cubes (%d, %d, %d) to (%d, %d, %d), %d/%d cubes (%.1f%%), weight %d%s",
+                this.id, this.dim, this.volume.minX, this.volume.minY, this.volume.minZ, this.volume.maxX, this.volume.maxY, this.volume.maxZ,
+                this.generated, this.volume.total, this.generated * 100.0d / this.volume.total, this.weight,
+                (this.proximity != null ? ", prioritizing players" : "") + (this.paused ? ", paused" : ""));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.CubeCursor;
+import net.daporkchop.ccpregen.util.PrefetchWindow;
+import net.daporkchop.ccpregen.util.ProgressTracker;
+import net.daporkchop.ccpregen.util.Volume;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A contiguous range of indices in a pregeneration task's {@link CoordinateOrder}, which is generated independently of the other lanes.
+ * <p>
+ * Splitting a task into multiple lanes allows the generator to work on several separate regions at once, which can improve throughput with
+ * async-capable generators. Each lane has its own cursor, progress and prefetch window.
+ *
+ * @author DaPorkchop_
+ */
+public final class PregenLane {
+    /**
+     * Splits the given volume into the given number of lanes of (almost) equal size.
+     */
+    public static PregenLane[] split(CoordinateOrder order, Volume volume, int count) {
+        count = (int) Math.max(Math.min(count, volume.total), 1L);
+
+        PregenLane[] lanes = new PregenLane[count];
+        long size = volume.total / count;
+        long remainder = volume.total % count;
+        for (int i = 0; i < count; i++) {
+            long start = i * size + Math.min(i, remainder);
+            long end = start + size + (i < remainder ? 1L : 0L);
+            lanes[i] = new PregenLane(order, volume, start, end, new ProgressTracker());
+        }
+        return lanes;
+    }
+
+    /**
+     * Restores a lane which was previously saved using {@link #write(DataOutput)}.
+     */
+    public static PregenLane read(CoordinateOrder order, Volume volume, DataInput in) throws IOException {
+        long start = in.readLong();
+        long end = in.readLong();
+        long watermark = in.readLong();
+        byte[] bitmap = new byte[in.readInt()];
+        in.readFully(bitmap);
+        return new PregenLane(order, volume, start, end, new ProgressTracker(watermark, bitmap));
+    }
+
+    /**
+     * Restores a lane which was saved in the config by an older version.
+     */
+    public static PregenLane decode(CoordinateOrder order, Volume volume, String encoded) {
+        String[] split = encoded.split(":", -1);
+        if (split.length != 4) {
+            throw new IllegalArgumentException("invalid lane: " + encoded);
+        }
+        return new PregenLane(order, volume, Long.parseLong(split[0]), Long.parseLong(split[1]), new ProgressTracker(Long.parseLong(split[2]), split[3]));
+    }
+
+    public final long start;
+    public final long end;
+
+    public final CubeCursor cursor;
+    public final PrefetchWindow window = new PrefetchWindow();
+
+    //indices in the progress tracker are relative to the start of the lane
+    private final ProgressTracker progress;
+
+    public PregenLane(CoordinateOrder order, Volume volume, long start, long end, ProgressTracker progress) {
+        //seek directly to the first position which might not have been generated yet
+        this(order.cursor(volume, start + progress.watermark()), start, end, progress);
+    }
+
+    /**
+     * @param cursor the cursor over this lane's positions, which must already be positioned at the first position which might not have been
+     *               generated yet
+     */
+    public PregenLane(CubeCursor cursor, long start, long end, ProgressTracker progress) {
+        this.start = start;
+        this.end = end;
+        this.progress = progress;
+        this.cursor = cursor;
+    }
+
+    /**
+     * @return whether or not the cursor has any more positions in this lane
+     */
+    public boolean hasNext() {
+        return this.cursor.hasNext() && this.cursor.nextIndex() < this.end;
+    }
+
+    /**
+     * @return whether or not this lane has any positions left which haven't been generated yet
+     */
+    public boolean hasWork() {
+        return !this.window.isEmpty() || this.hasNext();
+    }
+
+    /**
+     * @return the number of positions in this lane which have been completed
+     */
+    public long completed() {
+        return this.progress.completed();
+    }
+
+    /**
+     * @return the global index below which all positions in this lane are complete
+     */
+    public long watermark() {
+        return this.start + this.progress.watermark();
+    }
+
+    public boolean isComplete(long index) {
+        return this.progress.isComplete(index - this.start);
+    }
+
+    public boolean markComplete(long index) {
+        return this.progress.markComplete(index - this.start);
+    }
+
+    /**
+     * Writes this lane's state to the given output.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(this.start);
+        out.writeLong(this.end);
+        out.writeLong(this.progress.watermark());
+
+        byte[] bitmap = this.progress.bitmap();
+        out.writeInt(bitmap.length);
+        out.write(bitmap);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.minecraft.command.ICommandSender;
+import net.minecraftforge.common.WorldWorkerManager;
+import net.minecraftforge.fml.common.FMLCommonHandler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Shares the time available to world workers between all running {@link PregenJob}s.
+ * <p>
+ * Forge's {@link WorldWorkerManager} only ever services the first registered worker, so running multiple jobs at once requires them to share a
+ * single worker. Jobs are scheduled using stride scheduling: every job accumulates the time it has used divided by its weight, and the job which
+ * has accumulated the least is always run next. Over time, each job receives a share of the time proportional to its weight.
+ *
+ * @author DaPorkchop_
+ */
+public final class PregenScheduler implements WorldWorkerManager.IWorker {
+    public static final PregenScheduler INSTANCE = new PregenScheduler();
+
+    private static final Comparator<Entry> BY_PASS = Comparator.comparingDouble(entry -> entry.pass);
+
+    private final List<Entry> entries = new ArrayList<>();
+    private boolean registered;
+    private long lastSave = System.nanoTime();
+
+    final Throttle throttle = new Throttle();
+
+    private PregenScheduler() {
+    }
+
+    /**
+     * Starts running the given job.
+     *
+     * @param sender the command sender which progress notifications should be sent to
+     * @param job    the job
+     */
+    public void add(ICommandSender sender, PregenJob job) {
+        //new jobs start at the same point as the job which has run the least, so that they don't get to monopolize the time until they catch up
+        double pass = this.entries.stream().mapToDouble(entry -> entry.pass).min().orElse(0.0d);
+        this.entries.add(new Entry(job, new PregenerationWorker(sender, job), pass));
+
+        if (!this.registered) {
+            this.registered = true;
+            WorldWorkerManager.addWorker(this);
+        }
+    }
+
+    @Override
+    public boolean hasWork() {
+        if (this.entries.isEmpty()) {
+            //the world worker manager will remove us now, so we need to be registered again when the next job is added
+            this.registered = false;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean doWork() {
+        if (PregenConfig.throttle && !this.throttle.tryAcquire(FMLCommonHandler.instance().getMinecraftServerInstance())) {
+            //out of budget, yield the rest of this tick
+            this.updateMetrics();
+            return false;
+        }
+
+        this.entries.sort(BY_PASS);
+
+        boolean worked = false;
+        for (int i = 0; i < this.entries.size() && !worked; i++) {
+            Entry entry = this.entries.get(i);
+
+            long generated = entry.job.generated;
+            long start = System.nanoTime();
+            worked = entry.worker.doWork();
+            long elapsed = System.nanoTime() - start;
+            entry.pass += elapsed / (double) Math.max(entry.job.weight, 1);
+            this.throttle.record(elapsed, entry.job.generated - generated);
+
+            if (!entry.worker.hasWork()) { //the job is complete
+                this.entries.remove(i--);
+            }
+        }
+
+        if (System.nanoTime() - this.lastSave >= PregenConfig.saveStateIntervalSeconds * 1000000000L) {
+            this.lastSave = System.nanoTime();
+            PregenState.persistState();
+        }
+
+        this.updateMetrics();
+        return worked;
+    }
+
+    /**
+     * Forgets about all jobs.
+     * <p>
+     * Called when the server is stopping, after which the world worker manager will also have forgotten about us.
+     */
+    public void clear() {
+        this.entries.clear();
+        this.registered = false;
+    }
+
+    private void updateMetrics() {
+        long total = 0L;
+        long generated = 0L;
+        long windowSize = 0L;
+        double speed = 0.0d;
+        for (Entry entry : this.entries) {
+            total += entry.job.volume.total;
+            generated += entry.job.generated;
+            for (PregenLane lane : entry.job.lanes) {
+                windowSize += lane.window.size();
+            }
+            speed += entry.worker.speed();
+        }
+
+        Metrics.PREGEN_CUBES_TOTAL.set(total);
+        Metrics.PREGEN_CUBES_COMPLETED.set(generated);
+        Metrics.PREFETCH_WINDOW_SIZE.set(windowSize);
+        Metrics.PREGEN_CUBES_PER_SECOND.set(Math.round(speed));
+        Metrics.PREGEN_ETA_SECONDS.set(speed > 0.0d ? (long) ((total - generated) / speed) : -1L);
+        Metrics.THROTTLE_BUDGET_NANOS.set(PregenConfig.throttle ? this.throttle.budgetNanos() : 0L);
+    }
+
+    /**
+     * @author DaPorkchop_
+     */
+    private static final class Entry {
+        final PregenJob job;
+        final PregenerationWorker worker;
+        double pass;
+
+        Entry(PregenJob job, PregenerationWorker worker, double pass) {
+            this.job = job;
+            this.worker = worker;
+            this.pass = pass;
+        }
+    }
+}
@@ -21,31 +21,53 @@
 package net.daporkchop.ccpregen;
 
 import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.daporkchop.ccpregen.util.CheckpointFile;
 import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.ProgressTracker;
 import net.daporkchop.ccpregen.util.Volume;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.text.TextComponentString;
-import net.minecraftforge.common.WorldWorkerManager;
 import net.minecraftforge.common.config.Config;
-import net.minecraftforge.common.config.ConfigManager;
+import net.minecraftforge.fml.common.Loader;
 
-import java.util.Iterator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * @author DaPorkchop_
  */
 @Config(modid = CCPregen.MODID, category = "state")
 public class PregenState {
-    @Config.Comment({
-            "Whether or not the pregenerator is currently running.",
-            "Set to false to abort an ongoing pregeneration task."
-    })
-    public static boolean active = false;
-    public static boolean paused = false;
-
-    public static int dim;
+    //legacy job state, which was stored in the config by versions before 3. only read in order to migrate the jobs, see PregenConfig#update()
+    @Config.Name("jobs")
+    public static Map<String, String> _legacy_jobs = new HashMap<>();
+    @Config.Name("queue")
+    public static Map<String, String> _legacy_queue = new HashMap<>();
+    @Config.Name("nextJobId")
+    public static int _legacy_nextJobId = 0;
 
+    //legacy single-task state. these fields are only read in order to migrate a task started by an older version, see PregenConfig#update()
+    @Config.Name("active")
+    public static boolean _legacy_active = false;
+    @Config.Name("paused")
+    public static boolean _legacy_paused = false;
+    @Config.Name("dim")
+    public static int _legacy_dim;
     @Config.Name("minX")
     public static int _minX;
     @Config.Name("minY")
@@ -58,71 +80,284 @@ public class PregenState {
     public static int _maxY;
     @Config.Name("maxZ")
     public static int _maxZ;
-
-    //these fields are a hack because forge doesn't support long fields for config
     @Config.Name("generated")
-    public static String _generated_as_string = ""; //not to be used directly
+    public static String _generated_as_string = "";
+    @Config.Name("completed")
+    public static String _completed_as_string = "";
+    @Config.Name("lanes")
+    public static String[] _lanes_as_strings = new String[0];
+    @Config.Name("order")
+    public static CoordinateOrder _legacy_order = PregenConfig.order;
 
-    public static CoordinateOrder order = PregenConfig.order;
+    private static final int CHECKPOINT_MAGIC = 0x43435047; //"CCPG"
+    private static final int CHECKPOINT_VERSION = 1;
 
     @Config.Ignore
-    public static Volume volume;
+    public static int nextJobId = 0;
+
     @Config.Ignore
-    public static Iterator<CubePos> iterator;
+    public static final Map<Integer, PregenJob> jobs = new TreeMap<>();
+
+    /**
+     * Jobs which will be started once all running jobs are complete, in the order in which they will be started.
+     */
     @Config.Ignore
-    public static long generated;
+    public static final List<PregenJob> queue = new ArrayList<>();
 
-    public static boolean startPregeneration(ICommandSender sender, BlockPos min, BlockPos max, int dimension) {
+    private static final Comparator<PregenJob> QUEUE_ORDER = Comparator.<PregenJob>comparingInt(job -> -job.priority).thenComparingInt(job -> job.id);
+
+    private static CheckpointFile checkpoint;
+
+    public static PregenJob startPregeneration(ICommandSender sender, BlockPos min, BlockPos max, int dimension) {
         return startPregenerationCubes(sender,
                 new CubePos(min.getX() >> 4, min.getY() >> 4, min.getZ() >> 4),
                 new CubePos(max.getX() >> 4, max.getY() >> 4, max.getZ() >> 4).add(1, 1, 1),
                 dimension);
     }
 
-    public static boolean startPregenerationCubes(ICommandSender sender, CubePos min, CubePos max, int dimension) {
-        if (active) {
-            return false;
-        } else {
-            active = true;
-        }
+    public static PregenJob startPregenerationCubes(ICommandSender sender, CubePos min, CubePos max, int dimension) {
+        PregenJob job = createJob(min, max, dimension);
+        jobs.put(job.id, job);
 
-        paused = false;
-        dim = dimension;
+        persistState();
+        PregenScheduler.INSTANCE.add(sender, job);
+        return job;
+    }
 
-        volume = new Volume(
-                _minX = min.getX(), _minY = min.getY(), _minZ = min.getZ(),
-                _maxX = max.getX(), _maxY = max.getY(), _maxZ = max.getZ());
-        order = PregenConfig.order;
+    public static PregenJob enqueuePregeneration(ICommandSender sender, BlockPos min, BlockPos max, int dimension, int priority) {
+        return enqueuePregenerationCubes(sender,
+                new CubePos(min.getX() >> 4, min.getY() >> 4, min.getZ() >> 4),
+                new CubePos(max.getX() >> 4, max.getY() >> 4, max.getZ() >> 4).add(1, 1, 1),
+                dimension, priority);
+    }
 
-        generated = 0L;
-        iterator = order.iterator(volume);
+    /**
+     * Adds a new job to the queue. If no jobs are currently running, it will be started immediately.
+     */
+    public static PregenJob enqueuePregenerationCubes(ICommandSender sender, CubePos min, CubePos max, int dimension, int priority) {
+        PregenJob job = createJob(min, max, dimension);
+        job.priority = priority;
+        enqueue(job);
 
         persistState();
-        WorldWorkerManager.addWorker(new PregenerationWorker(sender));
-        return true;
+        startQueuedJob(sender);
+        return job;
     }
 
-    public static void loadState(ICommandSender sender) {
-        if (active) {
-            sender.sendMessage(new TextComponentString("Resuming pregeneration..."));
+    private static PregenJob createJob(CubePos min, CubePos max, int dimension) {
+        Volume volume = new Volume(min.getX(), min.getY(), min.getZ(), max.getX(), max.getY(), max.getZ());
+        CoordinateOrder order = PregenConfig.order;
+        if (PregenConfig.prioritizePlayers) {
+            if (PlayerProximityCursor.supports(volume)) {
+                return new PregenJob(nextJobId++, dimension, volume, order, new PlayerProximityCursor(volume));
+            }
+            CCPregen.LOGGER.warn("Pregeneration volume is too large to prioritize regions near players, using order {} instead", order);
+        }
+        return new PregenJob(nextJobId++, dimension, volume, order, PregenLane.split(order, volume, PregenConfig.lanes));
+    }
+
+    private static void enqueue(PregenJob job) {
+        int index = Collections.binarySearch(queue, job, QUEUE_ORDER);
+        queue.add(index < 0 ? -index - 1 : index, job);
+    }
+
+    /**
+     * Changes the priority of a queued job.
+     */
+    public static void setPriority(PregenJob job, int priority) {
+        if (queue.remove(job)) {
+            job.priority = priority;
+            enqueue(job);
+            persistState();
+        }
+    }
+
+    /**
+     * Removes a job from the queue.
+     *
+     * @return whether or not the job was queued
+     */
+    public static boolean dequeue(PregenJob job) {
+        if (queue.remove(job)) {
+            persistState();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Starts the next job in the queue, if no other jobs are currently running.
+     */
+    public static void startQueuedJob(ICommandSender sender) {
+        if (jobs.isEmpty() && !queue.isEmpty()) {
+            PregenJob job = queue.remove(0);
+            jobs.put(job.id, job);
+            persistState();
+
+            sender.sendMessage(new TextComponentString("Starting queued pregeneration job #" + job.id + "..."));
+            PregenScheduler.INSTANCE.add(sender, job);
+        }
+    }
+
+    /**
+     * Converts a task started by an older version, which only supported a single task at a time, to a job.
+     */
+    public static void migrateLegacyState() {
+        if (_legacy_active) {
+            Volume volume = new Volume(_minX, _minY, _minZ, _maxX, _maxY, _maxZ);
+            PregenLane[] lanes;
+            if (_lanes_as_strings.length == 0) { //the task was started by a version which only had a single lane
+                lanes = new PregenLane[]{
+                        new PregenLane(_legacy_order, volume, 0L, volume.total, new ProgressTracker(Long.parseLong(_generated_as_string), _completed_as_string))
+                };
+            } else {
+                lanes = new PregenLane[_lanes_as_strings.length];
+                for (int i = 0; i < lanes.length; i++) {
+                    lanes[i] = PregenLane.decode(_legacy_order, volume, _lanes_as_strings[i]);
+                }
+            }
 
-            //restore non-serialized objects
-            volume = new Volume(_minX, _minY, _minZ, _maxX, _maxY, _maxZ);
-            generated = Long.parseLong(_generated_as_string);
+            PregenJob job = new PregenJob(_legacy_nextJobId++, _legacy_dim, volume, _legacy_order, lanes);
+            job.paused = _legacy_paused;
+            jobs.put(job.id, job);
+        }
+
+        _legacy_active = false;
+        _generated_as_string = _completed_as_string = "";
+        _lanes_as_strings = new String[0];
+    }
 
-            //restore iterator and seek to last generated position
-            iterator = order.iterator(volume);
-            for (long l = 0L; l < generated; l++) {
-                iterator.next();
+    /**
+     * Converts the jobs stored in the config by an older version to the checkpoint file.
+     * <p>
+     * The converted jobs are written to the checkpoint file by {@link #loadState(ICommandSender)}.
+     */
+    public static void migrateConfigState() {
+        for (Map.Entry<String, String> entry : _legacy_jobs.entrySet()) {
+            try {
+                PregenJob job = PregenJob.decode(Integer.parseInt(entry.getKey()), entry.getValue());
+                jobs.put(job.id, job);
+            } catch (Exception e) {
+                CCPregen.LOGGER.error("Unable to migrate pregeneration job #" + entry.getKey() + ": " + entry.getValue(), e);
+            }
+        }
+        for (Map.Entry<String, String> entry : _legacy_queue.entrySet()) {
+            try {
+                String[] split = entry.getValue().split(",", 2);
+                PregenJob job = PregenJob.decode(Integer.parseInt(entry.getKey()), split[1]);
+                job.priority = Integer.parseInt(split[0]);
+                enqueue(job);
+            } catch (Exception e) {
+                CCPregen.LOGGER.error("Unable to migrate queued pregeneration job #" + entry.getKey() + ": " + entry.getValue(), e);
             }
+        }
+        nextJobId = Math.max(nextJobId, _legacy_nextJobId);
+
+        _legacy_jobs = new HashMap<>();
+        _legacy_queue = new HashMap<>();
+        _legacy_nextJobId = 0;
+    }
+
+    public static void loadState(ICommandSender sender) {
+        Path path = Loader.instance().getConfigDir().toPath().resolve(CCPregen.MODID + "-state.bin");
+        checkpoint = new CheckpointFile(path, CHECKPOINT_MAGIC);
+        try {
+            byte[] data = checkpoint.read();
+            if (data != null) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+                if (in.readInt() != CHECKPOINT_VERSION) {
+                    throw new IOException("unsupported checkpoint version");
+                }
+
+                nextJobId = Math.max(nextJobId, in.readInt());
+                for (int i = in.readInt(); i > 0; i--) {
+                    PregenJob job = PregenJob.read(in);
+                    jobs.put(job.id, job);
+                }
+                for (int i = in.readInt(); i > 0; i--) {
+                    enqueue(PregenJob.read(in));
+                }
+            }
+        } catch (Exception e) {
+            Path broken = path.resolveSibling(path.getFileName() + ".broken");
+            CCPregen.LOGGER.error("Unable to load pregeneration state, moving it to " + broken, e);
+            try {
+                Files.move(path, broken, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e1) {
+                CCPregen.LOGGER.error("Unable to move " + path, e1);
+            }
+        }
+
+        for (PregenJob job : jobs.values()) {
+            sender.sendMessage(new TextComponentString("Resuming pregeneration job #" + job.id + "..."));
+            PregenScheduler.INSTANCE.add(sender, job);
+        }
+        persistState();
+        startQueuedJob(sender);
+    }
 
-            WorldWorkerManager.addWorker(new PregenerationWorker(sender));
+    /**
+     * Writes the final state of all jobs and forgets about them.
+     * <p>
+     * Called when the server is stopping.
+     */
+    public static void unloadState() {
+        persistState();
+        if (checkpoint != null) {
+            checkpoint.close();
+            checkpoint = null;
         }
+
+        jobs.clear();
+        queue.clear();
+        PregenScheduler.INSTANCE.clear();
+    }
+
+    /**
+     * Removes a job which has completed or been stopped, and starts the next queued job if it was the last one running.
+     */
+    public static void removeJob(ICommandSender sender, PregenJob job) {
+        jobs.remove(job.id, job);
+        persistState();
+        startQueuedJob(sender);
     }
 
+    /**
+     * Takes a checkpoint of the state of all jobs.
+     * <p>
+     * The state is serialized on the calling thread, but written to disk in the background.
+     */
     public static void persistState() {
-        _generated_as_string = String.valueOf(generated);
+        if (checkpoint == null) { //the state hasn't been loaded yet, we don't want to overwrite it
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeInt(nextJobId);
 
-        ConfigManager.sync(CCPregen.MODID, Config.Type.INSTANCE);
+            List<PregenJob> active = new ArrayList<>();
+            for (PregenJob job : jobs.values()) {
+                if (job.active) {
+                    active.add(job);
+                }
+            }
+            out.writeInt(active.size());
+            for (PregenJob job : active) {
+                job.write(out);
+            }
+            out.writeInt(queue.size());
+            for (PregenJob job : queue) {
+                job.write(out);
+            }
+
+            checkpoint.write(baos.toByteArray());
+        } catch (IOException e) { //impossible
+            throw new IllegalStateException(e);
+        }
+        Metrics.PERSIST_STATE.recordSince(start);
     }
 }
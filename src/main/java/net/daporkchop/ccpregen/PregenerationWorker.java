@@ -20,16 +20,21 @@
 
 package net.daporkchop.ccpregen;
 
-import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
-import io.github.opencubicchunks.cubicchunks.api.util.XYZMap;
 import io.github.opencubicchunks.cubicchunks.api.world.ICubeProviderServer;
 import io.github.opencubicchunks.cubicchunks.api.world.ICubicWorldServer;
-import io.github.opencubicchunks.cubicchunks.api.worldgen.ICubeGenerator;
+import io.github.opencubicchunks.cubicchunks.api.world.storage.ICubicStorage;
 import io.github.opencubicchunks.cubicchunks.core.CubicChunks;
 import io.github.opencubicchunks.cubicchunks.core.server.CubeProviderServer;
+import io.github.opencubicchunks.cubicchunks.core.server.chunkio.AsyncBatchingCubeIO;
 import io.github.opencubicchunks.cubicchunks.core.world.cube.Cube;
 import lombok.SneakyThrows;
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.daporkchop.ccpregen.util.CubeBitmap;
+import net.daporkchop.ccpregen.util.CubeCursor;
+import net.daporkchop.ccpregen.util.HeapMonitor;
+import net.daporkchop.ccpregen.util.PrefetchWindow;
 import net.minecraft.command.ICommandSender;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.text.Style;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextFormatting;
@@ -42,238 +47,536 @@ import net.minecraftforge.fml.common.ModContainer;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.ArrayDeque;
-import java.util.Iterator;
-import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.DoubleStream;
 
-import static net.daporkchop.ccpregen.PregenState.*;
-
 /**
  * @author DaPorkchop_
  */
 public class PregenerationWorker implements WorldWorkerManager.IWorker {
-    private static final MethodHandle CUBEPROVIDERSERVER_TRYUNLOADCUBE;
-    private static final MethodHandle CUBEPROVIDERSERVER_CUBESITERATOR;
-    private static final MethodHandle CUBEPROVIDERSERVER_CUBEMAP;
-    private static final Object[] SINGLETON_ARRAY = new Object[1];
+    private static final MethodHandle ASYNCBATCHINGCUBEIO_STORAGE;
 
     private static final boolean ASYNC_TERRAIN;
 
+    private static final int MAX_WINDOW_SPAN_FACTOR = 8;
+    private static final long ASYNC_FAIL_BACKOFF_NANOS = 50_000_000L;
+    private static final int ASYNC_FAIL_RETRIES = 8;
+    private static final int MAX_FAIL_WARNINGS = 16;
+    private static final int MAX_SKIPPED_PER_CALL = 16384;
+
     static {
+        MethodHandle asyncBatchingCubeIO_storage = null;
         try {
-            Method cubeProviderServer_tryUnloadCube = CubeProviderServer.class.getDeclaredMethod("tryUnloadCube", Cube.class);
-            cubeProviderServer_tryUnloadCube.setAccessible(true);
-            CUBEPROVIDERSERVER_TRYUNLOADCUBE = MethodHandles.lookup().unreflect(cubeProviderServer_tryUnloadCube);
-
-            Method cubeProviderServer_cubesIterator = CubeProviderServer.class.getDeclaredMethod("cubesIterator");
-            cubeProviderServer_cubesIterator.setAccessible(true);
-            CUBEPROVIDERSERVER_CUBESITERATOR = MethodHandles.lookup().unreflect(cubeProviderServer_cubesIterator);
-
-            Field cubeProviderServer_cubeMap = CubeProviderServer.class.getDeclaredField("cubeMap");
-            cubeProviderServer_cubeMap.setAccessible(true);
-            CUBEPROVIDERSERVER_CUBEMAP = MethodHandles.lookup().unreflectGetter(cubeProviderServer_cubeMap);
+            Field field = AsyncBatchingCubeIO.class.getDeclaredField("storage");
+            field.setAccessible(true);
+            asyncBatchingCubeIO_storage = MethodHandles.lookup().unreflectGetter(field);
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            //older versions of cubic chunks don't have the storage api
         }
+        ASYNCBATCHINGCUBEIO_STORAGE = asyncBatchingCubeIO_storage;
 
         ModContainer cubicchunks = Loader.instance().getIndexedModList().get(CubicChunks.MODID);
         String asyncVersion = "1.12.2-0.0.1175.0"; //the version at which the async terrain gen api was added
         ASYNC_TERRAIN = asyncVersion.compareTo(cubicchunks.getVersion()) <= 0;
     }
 
+    /**
+     * Gets the {@link ICubicStorage} used by the given {@link CubeProviderServer}.
+     *
+     * @throws UnsupportedOperationException if the installed version of Cubic Chunks doesn't support the storage api
+     */
     @SneakyThrows
-    @SuppressWarnings("unchecked")
-    protected static void postGenerateCube(WorldServer world, CubeProviderServer provider, Cube cube, boolean unloadAll) {
+    protected static ICubicStorage getStorage(CubeProviderServer provider) {
+        if (ASYNCBATCHINGCUBEIO_STORAGE == null) {
+            throw new UnsupportedOperationException("storage api is not supported by this version of cubic chunks");
+        }
+        return (ICubicStorage) ASYNCBATCHINGCUBEIO_STORAGE.invoke((AsyncBatchingCubeIO) provider.getCubeIO());
+    }
+
+    /**
+     * @param keep the cubes which shouldn't be unloaded if {@code unloadAll} is {@code true}, or {@code null} to unload everything
+     */
+    protected static void postGenerateCube(CubeUnloader unloader, Cube cube, CubeSaveBatch saves, boolean unloadAll, BrickTracker keep) {
         //save the cube if configured
-        if (PregenConfig.immediateCubeSave) {
-            provider.getCubeIO().saveCube(cube);
+        if (PregenConfig.immediateCubeSave && saves != null) {
+            saves.add(cube);
+        } else if (PregenConfig.immediateCubeSave) {
+            long start = System.nanoTime();
+            unloader.provider().getCubeIO().saveCube(cube);
+            Metrics.SAVE_CUBE.recordSince(start);
         }
 
         //unload the cube if configured
         if (PregenConfig.immediateCubeUnload) {
-            try {
-                SINGLETON_ARRAY[0] = cube;
-                if ((boolean) CUBEPROVIDERSERVER_TRYUNLOADCUBE.invokeExact(provider, cube)) {
-                    ((XYZMap<Cube>) CUBEPROVIDERSERVER_CUBEMAP.invokeExact(provider)).remove(cube);
-                }
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            } finally {
-                SINGLETON_ARRAY[0] = null;
-            }
+            unloader.unloadCube(cube);
         }
 
         //unload everything if requested
         if (unloadAll) {
-            if (PregenConfig.unloadColumns) {
-                ((ICubicWorldServer) world).unloadOldCubes();
-            } else {
-                try {
-                    for (Iterator<Cube> itr = (Iterator<Cube>) CUBEPROVIDERSERVER_CUBESITERATOR.invokeExact(provider); itr.hasNext(); ) {
-                        SINGLETON_ARRAY[0] = itr.next();
-                        if ((boolean) CUBEPROVIDERSERVER_TRYUNLOADCUBE.invoke(provider, SINGLETON_ARRAY)) {
-                            itr.remove();
-                        }
-                    }
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    SINGLETON_ARRAY[0] = null;
-                }
-            }
+            unloader.unloadAll(PregenConfig.unloadColumns, keep);
         }
     }
 
     private final ICommandSender sender;
+    private final PregenJob job;
+    private final String prefix;
     private long lastMsg = System.currentTimeMillis();
     private final double[] speeds = new double[10];
     private int gennedSinceLastNotification = 0;
+    private int callsSinceLastNotification = 0;
+    private long workNanosSinceLastNotification = 0L;
+    private long maxWorkNanosSinceLastNotification = 0L;
     private WorldServer world;
     private boolean keepingLoaded;
-    private CubePos printedFailWarning;
-
-    private final Queue<CubePos> waitingPositions = new ArrayDeque<>();
-
-    public PregenerationWorker(ICommandSender sender) {
+    private int printedFailWarnings;
+    private int readyPolls;
+    private int waitingPolls;
+
+    private CubeBitmap existing;
+    private CompletableFuture<CubeBitmap> existingScan;
+    private volatile boolean cancelExistingScan;
+    private long existingScanStart;
+    private boolean scannedExisting;
+    private long skippedExisting;
+    private int skippedThisCall;
+    private long completedThisRun;
+    private int nextLane;
+    private FrontierUnloader frontier;
+    private ColumnUnloader columns;
+    private final BrickTracker bricks; //keeps the cubes which are still needed when using PERIODIC unloading
+    private PrefetchGroups prefetch;
+    private CubeUnloader cubes;
+    private final HeapMonitor heap = new HeapMonitor();
+    private final CubeSaveBatch saves = new CubeSaveBatch();
+
+    private final AdaptiveController controller = new AdaptiveController();
+
+    public PregenerationWorker(ICommandSender sender, PregenJob job) {
         this.sender = sender;
+        this.job = job;
+        this.prefix = "[Job #" + job.id + "] ";
+        this.bricks = BrickTracker.supports(job) ? new BrickTracker(job) : null;
+    }
+
+    /**
+     * @return the recent generation rate, in cubes per second
+     */
+    public double speed() {
+        return DoubleStream.of(this.speeds).sum() / this.speeds.length;
     }
 
     @Override
     public boolean hasWork() {
-        return active && (!this.waitingPositions.isEmpty() || iterator.hasNext());
+        if (this.job.active) {
+            for (PregenLane lane : this.job.lanes) {
+                if (lane.hasWork()) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     @Override
     public boolean doWork() {
         boolean generated = true;
 
-        if (active) {
+        if (this.job.active) {
             if (this.world == null) {
-                WorldServer world = DimensionManager.getWorld(dim);
+                WorldServer world = DimensionManager.getWorld(this.job.dim);
                 if (world == null) {
-                    DimensionManager.initDimension(dim);
-                    world = DimensionManager.getWorld(dim);
+                    DimensionManager.initDimension(this.job.dim);
+                    world = DimensionManager.getWorld(this.job.dim);
                     if (world == null) {
-                        this.sender.sendMessage(new TextComponentString("Unable to load dimension " + dim));
-                        active = false;
+                        this.sender.sendMessage(new TextComponentString(this.prefix + "Unable to load dimension " + this.job.dim));
+                        this.job.active = false;
+                        PregenState.removeJob(this.sender, this.job);
                         return false;
                     }
                 }
                 this.world = world;
-                this.keepingLoaded = DimensionManager.keepDimensionLoaded(dim, true);
+                this.cubes = new CubeUnloader(world);
+                this.keepingLoaded = DimensionManager.keepDimensionLoaded(this.job.dim, true);
             }
 
             CubeProviderServer provider = (CubeProviderServer) ((ICubicWorldServer) this.world).getCubeCache();
+            if (PregenConfig.unloadMode != PregenConfig.UnloadMode.PERIODIC && this.frontier == null) {
+                if (PregenConfig.unloadMode == PregenConfig.UnloadMode.COLUMNS) {
+                    if (!ColumnUnloader.supports(this.job)) { //columns would only be finished once the whole volume is almost done
+                        CCPregen.LOGGER.warn("COLUMNS unloading doesn't support the {} order, using FRONTIER unloading for job #{} instead", this.job.order, this.job.id);
+                        this.sender.sendMessage(new TextComponentString(this.prefix + "COLUMNS unloading doesn't support the " + this.job.order + " order, using FRONTIER unloading instead.")
+                                .setStyle(new Style().setColor(TextFormatting.YELLOW)));
+                    } else if (this.completedThisRun > 0L) { //the unloading mode was changed while the job was running, we don't know which cubes were counted
+                        CCPregen.LOGGER.warn("Unloading mode was changed to COLUMNS while job #{} was running, using FRONTIER unloading until it is resumed", this.job.id);
+                    } else {
+                        this.columns = new ColumnUnloader(this.cubes, this.job);
+                    }
+                }
+                this.frontier = new FrontierUnloader(this.cubes, this.job, this.columns);
+            }
+            if (PregenConfig.skipExistingCubes && !this.scannedExisting && !this.scanExisting(provider)) {
+                return false; //don't generate anything until we know which cubes already exist
+            }
+
             int saveQueueSize = provider.getCubeIO().getPendingCubeCount();
+            Metrics.SAVE_QUEUE_SIZE.set(saveQueueSize);
+            Metrics.SAVE_QUEUE_SIZES.record(saveQueueSize);
 
             if (this.lastMsg + PregenConfig.notificationInterval < System.currentTimeMillis()) {
                 System.arraycopy(this.speeds, 0, this.speeds, 1, this.speeds.length - 1);
                 this.speeds[0] = this.gennedSinceLastNotification * 1000.0d / (double) (System.currentTimeMillis() - this.lastMsg);
 
-                this.sender.sendMessage(new TextComponentString(String.format(
-                        "Generated %d/%d cubes (%.1f cubes/s), save queue: %d",
-                        PregenState.generated, volume.total, DoubleStream.of(this.speeds).sum() / this.speeds.length, saveQueueSize
-                )));
+                double speed = this.speed();
+
+                int calls = Math.max(this.callsSinceLastNotification, 1);
+                String msg = String.format(
+                        "Generated %d/%d cubes (%.1f cubes/s), save queue: %d, %.1f cubes/call, %.2fms/call (max %.2fms)",
+                        this.job.generated, this.job.volume.total, speed, saveQueueSize,
+                        this.gennedSinceLastNotification / (double) calls,
+                        this.workNanosSinceLastNotification / (calls * 1000000.0d), this.maxWorkNanosSinceLastNotification / 1000000.0d);
+                if (this.existing != null) {
+                    msg += ", skipped " + this.skippedExisting + " existing";
+                }
+                if (PregenConfig.adaptiveControl) {
+                    msg += ", adaptive: " + this.controller;
+                }
+                if (PregenConfig.throttle) {
+                    msg += ", throttle: " + PregenScheduler.INSTANCE.throttle;
+                }
+                this.sender.sendMessage(new TextComponentString(this.prefix + msg));
 
                 this.gennedSinceLastNotification = 0;
+                this.callsSinceLastNotification = 0;
+                this.workNanosSinceLastNotification = 0L;
+                this.maxWorkNanosSinceLastNotification = 0L;
                 this.lastMsg = System.currentTimeMillis();
             }
             if (saveQueueSize > PregenConfig.maxSaveQueueSize) { //don't do anything until the save queue can be flushed a bit
+                if (PregenConfig.adaptiveControl) {
+                    this.controller.update(saveQueueSize, this.lastTickNanos(), 0, 0);
+                }
                 return false;
             }
 
-            if (!paused && this.hasWork()) {
-                if (ASYNC_TERRAIN && PregenConfig.asyncPrefetchCount > 0) {
-                    generated = this.generateCubeAsync(provider);
-                } else {
-                    generated = this.generateCubeBlocking(provider);
+            if (!this.job.paused && this.hasWork()) {
+                if (this.job.proximity != null) {
+                    this.job.proximity.refresh(this.world.playerEntities);
+                }
+
+                this.readyPolls = this.waitingPolls = this.skippedThisCall = 0;
+                generated = this.generateCubes(provider);
+
+                if (PregenConfig.adaptiveControl) {
+                    this.controller.update(saveQueueSize, this.lastTickNanos(), this.readyPolls, this.waitingPolls);
                 }
             }
         }
 
         boolean hasWork = this.hasWork();
         if (!hasWork) {
-            this.sender.sendMessage(new TextComponentString("Generation complete."));
+            this.sender.sendMessage(new TextComponentString(this.prefix + "Generation complete."));
+            this.saves.clear(); //anything which wasn't saved yet will be saved while unloading
             if (this.world != null) {
                 ((ICubicWorldServer) this.world).unloadOldCubes();
                 if (this.keepingLoaded) {
                     //allow world to be unloaded
-                    DimensionManager.keepDimensionLoaded(dim, false);
+                    DimensionManager.keepDimensionLoaded(this.job.dim, false);
                 }
             }
-            active = false;
-            persistState();
+            if (this.existing != null) {
+                this.existing.close();
+                this.existing = null;
+            }
+            this.cancelExistingScan = true; //the job may have been stopped while still listing existing cubes
+            this.existingScan = null;
+            this.job.active = false;
+            PregenState.removeJob(this.sender, this.job);
         }
-        return !paused && hasWork && generated;
+        return !this.job.paused && hasWork && generated;
     }
 
-    private boolean generateCubeAsync(CubeProviderServer provider) {
-        ICubeGenerator generator = ((ICubicWorldServer) this.world).getCubeGenerator();
+    /**
+     * Lists the cubes which already exist on disk.
+     * <p>
+     * Iterating over every cube in the world's storage can take a long time, so it is done on a separate thread. This method starts the scan
+     * the first time it is called, and checks whether or not it has completed on later calls.
+     *
+     * @return whether or not the scan has completed (or failed)
+     */
+    private boolean scanExisting(CubeProviderServer provider) {
+        if (this.existingScan == null) {
+            ICubicStorage storage;
+            try {
+                storage = getStorage(provider);
+            } catch (Throwable t) {
+                this.existingScanFailed(t);
+                return true;
+            }
 
-        //fill up the queue if it isn't already full
-        while (this.waitingPositions.size() < PregenConfig.asyncPrefetchCount && iterator.hasNext()) {
-            //add the position to the queue
-            CubePos pos = iterator.next();
-            this.waitingPositions.add(pos);
+            this.sender.sendMessage(new TextComponentString(this.prefix + "Listing existing cubes..."));
+            this.existingScanStart = System.nanoTime();
+
+            //the bitmap has a margin of 1 cube so that we can check if all neighbors of a cube on the edge of the volume exist
+            CubeBitmap existing = new CubeBitmap(this.job.volume, 1);
+            CompletableFuture<CubeBitmap> future = this.existingScan = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    storage.forEachCube(pos -> {
+                        if (this.cancelExistingScan) {
+                            throw new CancellationException();
+                        }
+                        existing.add(pos.getX(), pos.getY(), pos.getZ());
+                    });
+                    future.complete(existing);
+                } catch (Throwable t) {
+                    existing.close();
+                    future.completeExceptionally(t);
+                }
+            }, "CCPregen existing cube scanner (job #" + this.job.id + ')');
+            thread.setDaemon(true);
+            thread.start();
+            return false;
+        } else if (!this.existingScan.isDone()) {
+            return false;
+        }
+
+        CubeBitmap existing;
+        try {
+            existing = this.existingScan.join();
+        } catch (CompletionException e) {
+            this.existingScanFailed(e.getCause());
+            return true;
+        } finally {
+            this.existingScan = null;
+        }
+
+        this.scannedExisting = true;
+        this.existing = existing;
+        this.sender.sendMessage(new TextComponentString(this.prefix + String.format(
+                "Found %d existing cubes in or around the pregeneration volume in %.1fs",
+                existing.count(), (System.nanoTime() - this.existingScanStart) / 1000000000.0d)));
+        return true;
+    }
+
+    private void existingScanFailed(Throwable t) {
+        this.scannedExisting = true;
+        CCPregen.LOGGER.error("Unable to list existing cubes", t);
+        this.sender.sendMessage(new TextComponentString(this.prefix + "Unable to list existing cubes! All cubes will be generated. You may have to update to the latest version of Cubic Chunks! See the log for more information.")
+                .setStyle(new Style().setColor(TextFormatting.RED)));
+    }
+
+    /**
+     * Checks whether or not the cube at the given position already exists and can be skipped, and marks it as complete if so.
+     *
+     * @return whether or not the cube was skipped
+     */
+    private boolean skipExisting(PregenLane lane, int x, int y, int z, long index) {
+        if (this.existing == null
+            || !(PregenConfig.requirement.ordinal() > ICubeProviderServer.Requirement.GENERATE.ordinal()
+                ? this.existing.containsNeighborhood(x, y, z) //the cube has to be populated, which is only certain if all of its neighbors exist
+                : this.existing.contains(x, y, z))) {
+            return false;
+        }
+
+        lane.markComplete(index);
+        this.cubeComplete(x, z);
+        this.skippedExisting++;
+        this.skippedThisCall++;
+        Metrics.CUBES_SKIPPED_EXISTING.increment();
+
+        if (++this.job.generated % PregenConfig.saveStateInterval == 0) {
+            PregenState.persistState();
+        }
+        return true;
+    }
+
+    /**
+     * Generates cubes until either the configured time budget or cube limit is exhausted, or no more cubes are ready to be generated.
+     * <p>
+     * Lanes take turns generating one cube each.
+     *
+     * @return whether or not any cubes were generated
+     */
+    private boolean generateCubes(CubeProviderServer provider) {
+        boolean async = ASYNC_TERRAIN && PregenConfig.asyncPrefetchCount > 0;
+        long start = System.nanoTime();
+        long deadline = start + PregenConfig.maxWorkNanosPerCall;
+        int limit = PregenConfig.adaptiveControl ? this.controller.cubesPerCall() : PregenConfig.maxCubesPerCall;
+
+        if (async) {
+            if (this.prefetch == null) {
+                this.prefetch = new PrefetchGroups(((ICubicWorldServer) this.world).getCubeGenerator(), this.job);
+            }
+            this.prefetch.reset(); //poll each group again, since its state may have changed since the previous call
+        }
+
+        int count = 0;
+        int idleLanes = 0;
+        do {
+            PregenLane lane = this.job.lanes[this.nextLane];
+            this.nextLane = (this.nextLane + 1) % this.job.lanes.length;
+
+            if (lane.hasWork() && (async ? this.generateCubeAsync(provider, lane) : this.generateCubeBlocking(provider, lane))) {
+                count++;
+                idleLanes = 0;
+            } else if (++idleLanes >= this.job.lanes.length) { //nothing is ready in any lane yet, try again later
+                break;
+            }
+        } while (count < limit && this.job.active && this.hasWork() && System.nanoTime() - deadline < 0L);
+
+        if (PregenConfig.immediateCubeSave) {
+            this.saves.save(provider, deadline);
+        }
+
+        if (this.frontier != null) {
+            this.frontier.unload();
+        } else if (PregenConfig.memoryPressureUnloading && this.heap.poll()) {
+            Metrics.HEAP_OCCUPANCY_PERCENT.set((long) (this.heap.occupancy() * 100.0d));
+            if (this.heap.occupancy() > PregenConfig.heapTargetMaxPercent / 100.0d) { //the heap is getting full, unload everything including columns
+                this.cubes.unloadAll(true);
+            }
+        }
+
+        long time = System.nanoTime() - start;
+        Metrics.WORK_CALL.record(time);
+        this.callsSinceLastNotification++;
+        this.workNanosSinceLastNotification += time;
+        this.maxWorkNanosSinceLastNotification = Math.max(this.maxWorkNanosSinceLastNotification, time);
+        return count > 0;
+    }
+
+    private boolean generateCubeAsync(CubeProviderServer provider, PregenLane lane) {
+        PrefetchWindow window = lane.window;
+        CubeCursor cursor = lane.cursor;
+
+        //fill up the window if it isn't already full. if the positions at the start of the window are taking a long time, we stop adding new
+        // positions once the window spans too many indices in order to keep the completed bitmap from growing without bound.
+        // the prefetch depth is shared evenly between all lanes
+        int depth = Math.max((PregenConfig.adaptiveControl ? this.controller.prefetchDepth() : PregenConfig.asyncPrefetchCount) / this.job.lanes.length, 1);
+        long maxSpan = (long) Math.max(PregenConfig.asyncPrefetchCount / this.job.lanes.length, 1) * MAX_WINDOW_SPAN_FACTOR;
+        while (window.size() < depth && lane.hasNext() && cursor.nextIndex() - lane.watermark() < maxSpan
+               && this.skippedThisCall < MAX_SKIPPED_PER_CALL) {
+            cursor.advance();
+            if (lane.isComplete(cursor.index())) { //the cube was already generated before the task was last resumed
+                this.cubeComplete(cursor.x(), cursor.z());
+                continue;
+            } else if (this.skipExisting(lane, cursor.x(), cursor.y(), cursor.z(), cursor.index())) { //the cube already exists on disk
+                continue;
+            }
+
+            //add the position to the window
+            window.add(cursor.x(), cursor.y(), cursor.z(), cursor.index());
 
             //poll the generator to prefetch it
-            this.poll(generator, pos.getX(), pos.getY(), pos.getZ());
+            this.prefetch.prefetch(cursor.x(), cursor.y(), cursor.z());
         }
 
-        //check if the first queued position is ready to be generated
-        CubePos pos = this.waitingPositions.peek();
-        switch (this.poll(generator, pos.getX(), pos.getY(), pos.getZ())) {
-            case READY: //generator reports the cube is ready to be generated
-                //remove position from the queue
-                this.waitingPositions.poll();
+        //find the first position in the window which is ready to be generated
+        long now = System.nanoTime();
+        for (int slot = 0; slot < window.size(); slot++) {
+            if (now - window.retryTime(slot) < 0L) { //we're backing off from this position after a failure
+                continue;
+            }
 
-                //generate the cube
-                this.generateCube(provider, pos);
-                return true;
-            case WAITING: //do nothing
-                return false;
-            case FAIL: //the cube failed?!?
-                if (!pos.equals(this.printedFailWarning)) {
-                    this.printedFailWarning = pos;
-                    this.sender.sendMessage(new TextComponentString("The generator reported that async prefetching of the cube at " + pos + " failed!")
-                            .setStyle(new Style().setColor(TextFormatting.RED)));
-                    this.sender.sendMessage(new TextComponentString("This is very likely to cause pregeneration to hang/stall indefinitely!")
-                            .setStyle(new Style().setColor(TextFormatting.RED)));
+            int x = window.x(slot);
+            int y = window.y(slot);
+            int z = window.z(slot);
+            switch (this.prefetch.poll(x, y, z)) {
+                case READY: { //generator reports the cube is ready to be generated
+                    this.readyPolls++;
+                    long index = window.index(slot);
+                    window.remove(slot);
+
+                    //generate the cube
+                    this.generateCube(provider, lane, x, y, z, index);
+                    return true;
                 }
-                return false;
-            default:
-                throw new IllegalStateException();
+                case WAITING: //do nothing
+                    this.waitingPolls++;
+                    break;
+                case FAIL: { //the cube failed?!?
+                    int failures = window.fail(slot, now + (ASYNC_FAIL_BACKOFF_NANOS << Math.min(window.failures(slot), 5)));
+                    if (failures < ASYNC_FAIL_RETRIES) {
+                        break;
+                    }
+
+                    //prefetching has failed too many times, fall back to generating the cube synchronously
+                    if (this.printedFailWarnings++ < MAX_FAIL_WARNINGS) {
+                        this.sender.sendMessage(new TextComponentString(this.prefix + String.format(
+                                "The generator reported that async prefetching of the cube at (%d, %d, %d) failed %d times, generating it synchronously instead.",
+                                x, y, z, failures))
+                                .setStyle(new Style().setColor(TextFormatting.RED)));
+                    }
+
+                    long index = window.index(slot);
+                    window.remove(slot);
+                    this.generateCube(provider, lane, x, y, z, index);
+                    return true;
+                }
+                default:
+                    throw new IllegalStateException();
+            }
         }
+        return false;
+    }
+
+    /**
+     * @return the duration of the most recently completed server tick, in nanoseconds
+     */
+    private long lastTickNanos() {
+        MinecraftServer server = this.world.getMinecraftServer();
+        return server.tickTimeArray[(server.getTickCounter() + server.tickTimeArray.length - 1) % server.tickTimeArray.length];
     }
 
-    private ICubeGenerator.GeneratorReadyState poll(ICubeGenerator generator, int x, int y, int z) {
-        if (PregenConfig.requirement.ordinal() >= ICubeProviderServer.Requirement.POPULATE.ordinal()) {
-            return generator.pollAsyncCubePopulator(x, y, z);
-        } else {
-            return generator.pollAsyncCubeGenerator(x, y, z);
+    private boolean generateCubeBlocking(CubeProviderServer provider, PregenLane lane) {
+        CubeCursor cursor = lane.cursor;
+        while (lane.hasNext() && this.skippedThisCall < MAX_SKIPPED_PER_CALL) {
+            cursor.advance();
+            if (lane.isComplete(cursor.index())) { //the cube was already generated before the task was last resumed
+                this.cubeComplete(cursor.x(), cursor.z());
+            } else if (!this.skipExisting(lane, cursor.x(), cursor.y(), cursor.z(), cursor.index())) { //generate the chunk at the current position
+                this.generateCube(provider, lane, cursor.x(), cursor.y(), cursor.z(), cursor.index());
+                return true;
+            }
         }
+        return false;
     }
 
-    private boolean generateCubeBlocking(CubeProviderServer provider) {
-        //generate the chunk at the current position
-        this.generateCube(provider, iterator.next());
-        return true;
+    private void generateCube(CubeProviderServer provider, PregenLane lane, int x, int y, int z, long index) {
+        long start = System.nanoTime();
+        Cube cube = provider.getCube(x, y, z, PregenConfig.requirement);
+        Metrics.GET_CUBE.recordSince(start);
+        Metrics.CUBES_GENERATED.increment();
+        lane.markComplete(index);
+        if (this.frontier != null) {
+            this.frontier.touch(x, y, z);
+        }
+        this.postGenerateCube(cube);
+        this.cubeComplete(x, z);
     }
 
-    private void generateCube(CubeProviderServer provider, CubePos pos) {
-        Cube cube = provider.getCube(pos.getX(), pos.getY(), pos.getZ(), PregenConfig.requirement);
-        this.postGenerateCube(provider, cube);
+    /**
+     * Called once for every cube in the volume which has been generated, skipped, or was already complete.
+     */
+    private void cubeComplete(int x, int z) {
+        this.completedThisRun++;
+        if (this.columns != null) {
+            this.columns.complete(x, z);
+        }
     }
 
-    private void postGenerateCube(CubeProviderServer provider, Cube cube) {
-        postGenerateCube(this.world, provider, cube, generated % PregenConfig.unloadCubesInterval == 0L);
+    private void postGenerateCube(Cube cube) {
+        //when using PERIODIC unloading, don't unload anything yet if there's still plenty of free memory
+        boolean unloadAll = this.frontier == null && this.job.generated % PregenConfig.unloadCubesInterval == 0L
+                            && !(PregenConfig.memoryPressureUnloading && this.heap.occupancy() < PregenConfig.heapTargetMinPercent / 100.0d);
+        postGenerateCube(this.cubes, cube, this.saves, unloadAll, this.bricks);
 
         this.gennedSinceLastNotification++;
 
-        if (++generated % PregenConfig.saveStateInterval == 0) {
-            persistState();
+        if (++this.job.generated % PregenConfig.saveStateInterval == 0) {
+            PregenState.persistState();
         }
     }
 }
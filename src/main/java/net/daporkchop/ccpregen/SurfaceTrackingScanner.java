@@ -0,0 +1,198 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
+import io.github.opencubicchunks.cubicchunks.api.world.storage.ICubicStorage;
+import net.daporkchop.ccpregen.util.CubePositionList;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraftforge.common.util.Constants;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the raw NBT data of cubes on background threads in order to find out which ones actually need to be surface tracked, so that only those
+ * have to be loaded on the server thread.
+ * <p>
+ * Positions are scanned in chunks, which are returned by {@link #poll()} in order.
+ * <p>
+ * Only the saved data is read, so the cube IO should be flushed before scanning starts. Cubes which are currently loaded may have changed since
+ * they were saved, so they have to be checked again on the server thread before being skipped.
+ *
+ * @author DaPorkchop_
+ */
+public final class SurfaceTrackingScanner implements AutoCloseable {
+    private static final int CHUNK_SIZE = 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ICubicStorage storage;
+    private final CubePositionList positions;
+    private final ExecutorService executor;
+    private final int maxChunks;
+
+    private final Queue<Chunk> chunks = new ArrayDeque<>();
+    private long nextStart;
+
+    /**
+     * @param storage   the storage to read cubes from
+     * @param positions the positions to scan. Must not be modified or closed until this scanner has been closed
+     * @param start     the index of the first position to scan
+     * @param threads   the number of threads to use
+     */
+    public SurfaceTrackingScanner(ICubicStorage storage, CubePositionList positions, long start, int threads) {
+        this.storage = storage;
+        this.positions = positions;
+        this.nextStart = start;
+        this.maxChunks = threads * CHUNKS_PER_THREAD;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "CCPregen surface tracking scanner #" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.submitChunks();
+    }
+
+    private void submitChunks() {
+        while (this.chunks.size() < this.maxChunks && this.nextStart < this.positions.size()) {
+            long start = this.nextStart;
+            long end = Math.min(start + CHUNK_SIZE, this.positions.size());
+            this.chunks.add(new Chunk(start, end, this.executor.submit(() -> this.scan(start, end))));
+            this.nextStart = end;
+        }
+    }
+
+    private long[] scan(long start, long end) throws Exception {
+        long[] candidates = new long[(int) (end - start)];
+        int count = 0;
+        for (long index = start; index < end; index++) {
+            long pos = this.positions.get(index);
+            NBTTagCompound nbt = this.storage.readCube(new CubePos(CubePositionList.unpackX(pos), CubePositionList.unpackY(pos), CubePositionList.unpackZ(pos)));
+            if (nbt == null) { //the cube no longer exists
+                continue;
+            }
+
+            NBTTagCompound level = nbt.getCompoundTag("Level");
+            if (!level.hasKey("fullyPopulated", Constants.NBT.TAG_BYTE) || !level.hasKey("isSurfaceTracked", Constants.NBT.TAG_BYTE)
+                || (level.getBoolean("fullyPopulated") && !level.getBoolean("isSurfaceTracked"))) {
+                //the cube needs to be surface tracked, or we can't tell from the nbt data alone
+                candidates[count++] = index;
+            }
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Gets the next scanned chunk of positions.
+     *
+     * @return the next chunk, or {@code null} if it hasn't been scanned yet or there are no more positions to scan
+     */
+    public Chunk poll() {
+        Chunk chunk = this.chunks.peek();
+        if (chunk == null || !chunk.future.isDone()) {
+            return null;
+        }
+
+        this.chunks.remove();
+        this.submitChunks();
+
+        try {
+            chunk.candidates = chunk.future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            //fall back to having the server thread check every position in the chunk
+            CCPregen.LOGGER.warn("Unable to scan cubes " + chunk.start + " to " + chunk.end + ", loading all of them instead", e);
+            chunk.candidates = new long[(int) (chunk.end - chunk.start)];
+            for (int i = 0; i < chunk.candidates.length; i++) {
+                chunk.candidates[i] = chunk.start + i;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Stops all scanning threads, waiting for any ongoing reads to complete.
+     */
+    @Override
+    public void close() {
+        //don't interrupt the threads, as interrupting a thread while it's reading from a FileChannel would close the channel
+        this.chunks.forEach(chunk -> chunk.future.cancel(false));
+        this.chunks.clear();
+        this.executor.shutdown();
+
+        //the threads may still be accessing the position list, so we have to wait for them even if we're interrupted
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (this.executor.awaitTermination(1L, TimeUnit.SECONDS)) {
+                    break;
+                }
+                CCPregen.LOGGER.info("Waiting for surface tracking scanner threads to stop...");
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A chunk of consecutive positions which have been scanned.
+     *
+     * @author DaPorkchop_
+     */
+    public static final class Chunk {
+        /**
+         * The index of the first position in this chunk.
+         */
+        public final long start;
+        /**
+         * The index of the last position in this chunk, exclusive.
+         */
+        public final long end;
+
+        private final Future<long[]> future;
+        private long[] candidates;
+
+        private Chunk(long start, long end, Future<long[]> future) {
+            this.start = start;
+            this.end = end;
+            this.future = future;
+        }
+
+        /**
+         * @return the indices of the positions in this chunk which need to be loaded, in ascending order
+         */
+        public long[] candidates() {
+            return this.candidates;
+        }
+    }
+}
@@ -20,12 +20,18 @@
 
 package net.daporkchop.ccpregen;
 
+import net.daporkchop.ccpregen.metrics.Metrics;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.util.text.TextComponentString;
+import net.minecraftforge.common.DimensionManager;
 import net.minecraftforge.common.WorldWorkerManager;
 import net.minecraftforge.common.config.Config;
 import net.minecraftforge.common.config.ConfigManager;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
 /**
  * @author DaPorkchop_
  */
@@ -40,6 +46,13 @@ public class SurfaceTrackingState {
 
     public static int dim;
 
+    //this field is a hack because forge doesn't support long fields for config
+    @Config.Name("checkpoint")
+    public static String _checkpoint_as_string = ""; //not to be used directly, this is the packed position of the next cube to be processed
+
+    @Config.Ignore
+    public static long checkpoint;
+
     public static boolean startSurfaceTracking(ICommandSender sender, int dimension) {
         if (active) {
             return false;
@@ -49,6 +62,8 @@ public class SurfaceTrackingState {
 
         paused = false;
         dim = dimension;
+        checkpoint = 0L;
+        deletePositionsFile();
 
         persistState();
         WorldWorkerManager.addWorker(new SurfaceTrackingWorker(sender));
@@ -58,11 +73,31 @@ public class SurfaceTrackingState {
     public static void loadState(ICommandSender sender) {
         if (active) {
             sender.sendMessage(new TextComponentString("Resuming surface tracking..."));
+            checkpoint = _checkpoint_as_string.isEmpty() ? 0L : Long.parseUnsignedLong(_checkpoint_as_string);
             WorldWorkerManager.addWorker(new SurfaceTrackingWorker(sender));
         }
     }
 
     public static void persistState() {
+        _checkpoint_as_string = Long.toUnsignedString(checkpoint);
+
+        long start = System.nanoTime();
         ConfigManager.sync(CCPregen.MODID, Config.Type.INSTANCE);
+        Metrics.PERSIST_STATE.recordSince(start);
+    }
+
+    /**
+     * @return the file which the sorted list of cube positions for the current task is stored in
+     */
+    public static File positionsFile() {
+        return new File(DimensionManager.getCurrentSaveRootDirectory(), "data/ccpregen_surfacetracking_" + dim + ".bin");
+    }
+
+    public static void deletePositionsFile() {
+        try {
+            Files.deleteIfExists(positionsFile().toPath());
+        } catch (IOException e) {
+            CCPregen.LOGGER.warn("Unable to delete " + positionsFile(), e);
+        }
     }
 }
@@ -20,14 +20,13 @@
 
 package net.daporkchop.ccpregen;
 
-import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
 import io.github.opencubicchunks.cubicchunks.api.world.ICube;
 import io.github.opencubicchunks.cubicchunks.api.world.ICubicWorldServer;
-import io.github.opencubicchunks.cubicchunks.api.world.storage.ICubicStorage;
 import io.github.opencubicchunks.cubicchunks.core.server.CubeProviderServer;
-import io.github.opencubicchunks.cubicchunks.core.server.chunkio.AsyncBatchingCubeIO;
 import io.github.opencubicchunks.cubicchunks.core.world.ICubeProviderInternal;
 import io.github.opencubicchunks.cubicchunks.core.world.cube.Cube;
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.daporkchop.ccpregen.util.CubePositionList;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.util.text.Style;
 import net.minecraft.util.text.TextComponentString;
@@ -36,9 +35,10 @@ import net.minecraft.world.WorldServer;
 import net.minecraftforge.common.DimensionManager;
 import net.minecraftforge.common.WorldWorkerManager;
 
-import java.lang.reflect.Field;
-import java.util.NavigableSet;
-import java.util.TreeSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.stream.DoubleStream;
 
 import static net.daporkchop.ccpregen.SurfaceTrackingState.*;
@@ -51,12 +51,22 @@ public class SurfaceTrackingWorker implements WorldWorkerManager.IWorker {
     private long lastMsg = System.currentTimeMillis();
     private final double[] speeds = new double[10];
     private int gennedSinceLastNotification = 0;
+    private int callsSinceLastNotification = 0;
+    private long workNanosSinceLastNotification = 0L;
+    private long maxWorkNanosSinceLastNotification = 0L;
     private WorldServer world;
+    private CubeUnloader cubes;
     private boolean keepingLoaded;
 
-    private NavigableSet<CubePos> allCubePositions;
-    private int skipped;
-    private int totalCount;
+    private CubePositionList allCubePositions;
+    private long nextPosition;
+    private long skipped;
+    private long loaded;
+    private long lastSavedPosition;
+
+    private SurfaceTrackingScanner scanner;
+    private long[] candidates = new long[0];
+    private int candidateIndex;
 
     public SurfaceTrackingWorker(ICommandSender sender) {
         this.sender = sender;
@@ -64,11 +74,13 @@ public class SurfaceTrackingWorker implements WorldWorkerManager.IWorker {
 
     @Override
     public boolean hasWork() {
-        return active && (this.allCubePositions == null || !this.allCubePositions.isEmpty());
+        return active && (this.allCubePositions == null || this.nextPosition < this.allCubePositions.size() || this.candidateIndex < this.candidates.length);
     }
 
     @Override
     public boolean doWork() {
+        boolean tracked = true;
+
         if (active) {
             if (this.world == null) {
                 WorldServer world = DimensionManager.getWorld(dim);
@@ -82,45 +94,42 @@ public class SurfaceTrackingWorker implements WorldWorkerManager.IWorker {
                     }
                 }
                 this.world = world;
+                this.cubes = new CubeUnloader(world);
                 this.keepingLoaded = DimensionManager.keepDimensionLoaded(dim, true);
             }
 
             CubeProviderServer provider = (CubeProviderServer) ((ICubicWorldServer) this.world).getCubeCache();
 
             if (this.allCubePositions == null) {
-                this.sender.sendMessage(new TextComponentString("Loading list of cubes to consider for surface tracking..."));
-                this.allCubePositions = new TreeSet<>((a, b) -> {
-                    int d = Integer.compare(a.getX(), b.getX());
-                    if (d == 0 && (d = Integer.compare(a.getZ(), b.getZ())) == 0) {
-                        d = -Integer.compare(a.getY(), b.getY());
-                    }
-                    return d;
-                });
-
-                try {
-                    Field field = AsyncBatchingCubeIO.class.getDeclaredField("storage");
-                    field.setAccessible(true);
-
-                    ((ICubicStorage) field.get(provider.getCubeIO())).forEachCube(this.allCubePositions::add);
-                    this.totalCount = this.allCubePositions.size();
-                } catch (Throwable t) {
-                    t.printStackTrace();
-                    this.sender.sendMessage(new TextComponentString("Unable to list all cubes in the world! You may have to update to the latest version of Cubic Chunks! See the log for more information.")
-                            .setStyle(new Style().setColor(TextFormatting.RED)));
-                }
+                this.loadPositions(provider);
             }
 
             int saveQueueSize = provider.getCubeIO().getPendingCubeCount();
+            Metrics.SAVE_QUEUE_SIZE.set(saveQueueSize);
+            Metrics.SAVE_QUEUE_SIZES.record(saveQueueSize);
+            Metrics.SURFACE_TRACKING_CUBES_TOTAL.set(this.allCubePositions.size());
+            Metrics.SURFACE_TRACKING_CUBES_COMPLETED.set(this.nextPosition);
+
             if (this.lastMsg + PregenConfig.notificationInterval < System.currentTimeMillis()) {
                 System.arraycopy(this.speeds, 0, this.speeds, 1, this.speeds.length - 1);
                 this.speeds[0] = this.gennedSinceLastNotification * 1000.0d / (double) (System.currentTimeMillis() - this.lastMsg);
 
+                double speed = DoubleStream.of(this.speeds).sum() / this.speeds.length;
+                Metrics.SURFACE_TRACKING_CUBES_PER_SECOND.set(Math.round(speed));
+                Metrics.SURFACE_TRACKING_ETA_SECONDS.set(speed > 0.0d ? (long) ((this.allCubePositions.size() - this.nextPosition) / speed) : -1L);
+
+                int calls = Math.max(this.callsSinceLastNotification, 1);
                 this.sender.sendMessage(new TextComponentString(String.format(
-                        "Surface tracked %d/%d cubes (%.1f cubes/s), skipped %d, save queue: %d",
-                        this.totalCount - this.allCubePositions.size(), this.totalCount, DoubleStream.of(this.speeds).sum() / this.speeds.length, this.skipped, saveQueueSize
+                        "Surface tracked %d/%d cubes (%.1f cubes/s), skipped %d, save queue: %d, %.1f cubes/call, %.2fms/call (max %.2fms)",
+                        this.nextPosition, this.allCubePositions.size(), speed, this.skipped, saveQueueSize,
+                        this.gennedSinceLastNotification / (double) calls,
+                        this.workNanosSinceLastNotification / (calls * 1000000.0d), this.maxWorkNanosSinceLastNotification / 1000000.0d
                 )));
 
                 this.gennedSinceLastNotification = 0;
+                this.callsSinceLastNotification = 0;
+                this.workNanosSinceLastNotification = 0L;
+                this.maxWorkNanosSinceLastNotification = 0L;
                 this.lastMsg = System.currentTimeMillis();
             }
             if (saveQueueSize > PregenConfig.maxSaveQueueSize) { //don't do anything until the save queue can be flushed a bit
@@ -128,16 +137,24 @@ public class SurfaceTrackingWorker implements WorldWorkerManager.IWorker {
             }
 
             if (!paused && this.hasWork()) {
-                CubePos pos = this.allCubePositions.pollFirst();
-                Cube cube = provider.getCube(pos);
-
-                if (cube.isFullyPopulated() && !cube.isSurfaceTracked()) { //force the cube to be surface tracked
-                    cube.trackSurface();
-                    PregenerationWorker.postGenerateCube(this.world, provider, cube, (this.totalCount - this.allCubePositions.size()) % PregenConfig.unloadCubesInterval == 0L);
-                } else {
-                    this.skipped++;
-                }
-                this.gennedSinceLastNotification++;
+                //process cubes until either the time budget or cube limit is exhausted
+                long start = System.nanoTime();
+                long deadline = start + PregenConfig.maxWorkNanosPerCall;
+                int limit = PregenConfig.maxCubesPerCall;
+
+                int count = 0;
+                do {
+                    if (!this.trackCube(provider)) { //the scanner hasn't gotten this far yet, try again later
+                        break;
+                    }
+                } while (++count < limit && active && this.hasWork() && System.nanoTime() - deadline < 0L);
+
+                long time = System.nanoTime() - start;
+                Metrics.WORK_CALL.record(time);
+                this.callsSinceLastNotification++;
+                this.workNanosSinceLastNotification += time;
+                this.maxWorkNanosSinceLastNotification = Math.max(this.maxWorkNanosSinceLastNotification, time);
+                tracked = count > 0;
             }
         }
 
@@ -151,9 +168,205 @@ public class SurfaceTrackingWorker implements WorldWorkerManager.IWorker {
                     DimensionManager.keepDimensionLoaded(dim, false);
                 }
             }
+            if (this.scanner != null) { //the scanner has to be stopped before the position list can be released
+                this.scanner.close();
+                this.scanner = null;
+            }
+            if (this.allCubePositions != null) {
+                this.allCubePositions.close();
+                this.allCubePositions = null;
+            }
             active = false;
+            checkpoint = 0L;
+            deletePositionsFile();
             persistState();
         }
-        return !paused && hasWork;
+        return !paused && hasWork && tracked;
+    }
+
+    private void loadPositions(CubeProviderServer provider) {
+        //both listing and scanning read the storage directly, so any cubes which are still waiting to be saved have to be written first
+        try {
+            provider.getCubeIO().flush();
+        } catch (IOException e) {
+            CCPregen.LOGGER.error("Unable to flush cube IO, cubes which haven't been saved yet may be missed", e);
+        }
+
+        File file = positionsFile();
+        if (checkpoint != 0L && file.exists()) { //resuming a previous task, the list of cubes has already been saved
+            this.sender.sendMessage(new TextComponentString("Loading saved list of cubes to consider for surface tracking..."));
+            try {
+                this.allCubePositions = CubePositionList.read(file.toPath());
+                this.nextPosition = this.allCubePositions.ceilingIndex(checkpoint);
+                this.startScanner(provider);
+                return;
+            } catch (IOException e) {
+                CCPregen.LOGGER.error("Unable to read " + file + ", listing all cubes again", e);
+            }
+        }
+
+        this.sender.sendMessage(new TextComponentString("Loading list of cubes to consider for surface tracking..."));
+        CubePositionList positions = this.allCubePositions = new CubePositionList();
+
+        boolean complete = true;
+        long[] outOfRange = new long[1];
+        try {
+            PregenerationWorker.getStorage(provider).forEachCube(pos -> {
+                if (CubePositionList.canPack(pos.getX(), pos.getY(), pos.getZ())) {
+                    positions.add(pos.getX(), pos.getY(), pos.getZ());
+                } else { //the cube is too far away from the origin to be stored in the list
+                    outOfRange[0]++;
+                }
+            });
+        } catch (Throwable t) {
+            complete = false;
+            CCPregen.LOGGER.error("Unable to list all cubes in the world, only the ones which were listed before the error will be surface tracked", t);
+            this.sender.sendMessage(new TextComponentString("Unable to list all cubes in the world! You may have to update to the latest version of Cubic Chunks! See the log for more information.")
+                    .setStyle(new Style().setColor(TextFormatting.RED)));
+        }
+
+        if (outOfRange[0] != 0L) {
+            CCPregen.LOGGER.warn("Skipping {} cubes which are too far away from the origin to be surface tracked", outOfRange[0]);
+            this.sender.sendMessage(new TextComponentString("Skipping " + outOfRange[0] + " cubes which are too far away from the origin to be surface tracked!")
+                    .setStyle(new Style().setColor(TextFormatting.YELLOW)));
+        }
+
+        //sort positions in (x, z, -y) order so that each column is processed from the top down
+        positions.sort();
+        this.nextPosition = positions.ceilingIndex(checkpoint);
+
+        if (complete) { //save the sorted list so that it doesn't have to be listed again if the task is resumed later
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                positions.write(file.toPath());
+            } catch (IOException e) {
+                CCPregen.LOGGER.error("Unable to write " + file + ", all cubes will have to be listed again if surface tracking is interrupted", e);
+            }
+        } else { //the list is incomplete, so it has to be listed again if the task is resumed later
+            deletePositionsFile();
+        }
+        this.startScanner(provider);
+    }
+
+    private void startScanner(CubeProviderServer provider) {
+        this.lastSavedPosition = this.nextPosition;
+        if (PregenConfig.surfaceTrackingScanThreads > 0 && this.nextPosition < this.allCubePositions.size()) {
+            try {
+                this.scanner = new SurfaceTrackingScanner(PregenerationWorker.getStorage(provider), this.allCubePositions, this.nextPosition, PregenConfig.surfaceTrackingScanThreads);
+            } catch (Throwable t) {
+                CCPregen.LOGGER.error("Unable to start surface tracking scanner, all cubes will be loaded on the server thread", t);
+            }
+        }
+    }
+
+    /**
+     * Takes the next scanned chunk of positions from the scanner, skipping any chunks which contain no positions that need to be loaded.
+     *
+     * @return whether or not there are any positions to load
+     */
+    private boolean pollScanner(CubeProviderServer provider) {
+        while (this.nextPosition < this.allCubePositions.size()) {
+            SurfaceTrackingScanner.Chunk chunk = this.scanner.poll();
+            if (chunk == null) {
+                return false;
+            }
+            long[] candidates = this.recheckLoaded(provider, chunk);
+
+            //every position in the chunk which isn't a candidate has been skipped without being loaded
+            long skipped = chunk.end - chunk.start - candidates.length;
+            this.skipped += skipped;
+            this.gennedSinceLastNotification += skipped;
+            Metrics.CUBES_SURFACE_TRACKING_SKIPPED.add(skipped);
+
+            this.nextPosition = chunk.end;
+            this.candidates = candidates;
+            this.candidateIndex = 0;
+            if (this.candidates.length > 0) {
+                return true;
+            }
+            this.checkpoint();
+        }
+        return false;
+    }
+
+    /**
+     * The scanner only sees what has been saved, which may be outdated for cubes which are currently loaded (for example, if a player caused them
+     * to be populated since the scan started). Every position which the scanner skipped is checked again here, and loaded cubes which need to be
+     * surface tracked are added to the candidates.
+     *
+     * @return the indices of the positions in the chunk which need to be loaded, in ascending order
+     */
+    private long[] recheckLoaded(CubeProviderServer provider, SurfaceTrackingScanner.Chunk chunk) {
+        long[] candidates = chunk.candidates();
+        long[] result = null;
+        int count = 0;
+        int candidateIndex = 0;
+        for (long index = chunk.start; index < chunk.end; index++) {
+            if (candidateIndex < candidates.length && candidates[candidateIndex] == index) { //already a candidate
+                candidateIndex++;
+            } else {
+                long pos = this.allCubePositions.get(index);
+                Cube cube = provider.getLoadedCube(CubePositionList.unpackX(pos), CubePositionList.unpackY(pos), CubePositionList.unpackZ(pos));
+                if (cube == null || !cube.isFullyPopulated() || cube.isSurfaceTracked()) { //the scanner was right to skip it
+                    continue;
+                } else if (result == null) { //this is the first loaded cube which was skipped wrongly, copy all of the candidates before it
+                    result = new long[(int) (chunk.end - chunk.start)];
+                    System.arraycopy(candidates, 0, result, 0, count = candidateIndex);
+                }
+            }
+            if (result != null) {
+                result[count++] = index;
+            }
+        }
+        return result != null ? Arrays.copyOf(result, count) : candidates;
+    }
+
+    /**
+     * Remembers the first position which hasn't been processed yet, so that we can resume from it later.
+     */
+    private void checkpoint() {
+        long next = this.candidateIndex < this.candidates.length ? this.candidates[this.candidateIndex] : this.nextPosition;
+        checkpoint = next < this.allCubePositions.size() ? this.allCubePositions.get(next) : -1L;
+        if (next - this.lastSavedPosition >= PregenConfig.saveStateInterval) {
+            this.lastSavedPosition = next;
+            persistState();
+        }
+    }
+
+    /**
+     * Loads the next cube and surface tracks it if necessary.
+     *
+     * @return whether or not a cube was loaded
+     */
+    private boolean trackCube(CubeProviderServer provider) {
+        long index;
+        if (this.scanner == null) {
+            index = this.nextPosition++;
+        } else if (this.candidateIndex < this.candidates.length || this.pollScanner(provider)) {
+            index = this.candidates[this.candidateIndex++];
+        } else {
+            return false;
+        }
+
+        long pos = this.allCubePositions.get(index);
+        long start = System.nanoTime();
+        Cube cube = provider.getCube(CubePositionList.unpackX(pos), CubePositionList.unpackY(pos), CubePositionList.unpackZ(pos));
+        Metrics.GET_CUBE.recordSince(start);
+        this.loaded++;
+
+        if (cube.isFullyPopulated() && !cube.isSurfaceTracked()) { //force the cube to be surface tracked
+            start = System.nanoTime();
+            cube.trackSurface();
+            Metrics.TRACK_SURFACE.recordSince(start);
+            Metrics.CUBES_SURFACE_TRACKED.increment();
+            PregenerationWorker.postGenerateCube(this.cubes, cube, null, this.loaded % PregenConfig.unloadCubesInterval == 0L, null);
+        } else {
+            this.skipped++;
+            Metrics.CUBES_SURFACE_TRACKING_SKIPPED.increment();
+        }
+        this.gennedSinceLastNotification++;
+
+        this.checkpoint();
+        return true;
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen;
+
+import net.minecraft.server.MinecraftServer;
+
+import static java.lang.Math.*;
+
+/**
+ * Limits the amount of server time and the generation rate available to pregeneration jobs, so that they don't cause lag for online players.
+ * <p>
+ * Each server tick, pregeneration may only run for a limited amount of time, and the number of cubes generated per second can be capped. Separate
+ * limits are used depending on whether or not any players are online. While players are online, the average tick time over the past second
+ * is also monitored: whenever it exceeds the target, the time budget is cut back by a constant factor, and it slowly grows back as long as the
+ * target is met. When the server is empty, the budget immediately returns to the full offline limits.
+ * <p>
+ * If {@link PregenConfig#adaptiveControl} is enabled, the {@link AdaptiveController} already backs off whenever the tick time is over its target.
+ * Both reducing the amount of work done at the same time would compound, so the time budget isn't scaled by the tick time in that case.
+ *
+ * @author DaPorkchop_
+ * @see PregenConfig#throttle
+ */
+public final class Throttle {
+    private static final double DECREASE_FACTOR = 0.75d;
+    private static final double SCALE_INCREMENT = 0.05d;
+    private static final double MIN_SCALE = 0.05d;
+
+    /**
+     * The number of ticks over which the tick time is averaged before adjusting the budget.
+     */
+    private static final int TICK_WINDOW = 20;
+
+    private double scale = 1.0d;
+    private boolean online;
+    private long mspt;
+
+    private int lastTick = -1;
+    private int lastUpdateTick;
+    private long nanosThisTick;
+
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * Checks whether pregeneration may run right now.
+     *
+     * @param server the server
+     * @return whether or not there is still budget left for pregeneration during the current tick
+     */
+    public boolean tryAcquire(MinecraftServer server) {
+        int tick = server.getTickCounter();
+        if (tick != this.lastTick) { //a new tick has started
+            this.lastTick = tick;
+            this.nanosThisTick = 0L;
+            this.online = server.getCurrentPlayerCount() > 0;
+
+            if (tick - this.lastUpdateTick >= TICK_WINDOW) {
+                this.lastUpdateTick = tick;
+                this.update(server);
+            }
+        }
+
+        long budget = this.budgetNanos();
+        if (budget > 0L && this.nanosThisTick >= budget) {
+            return false;
+        }
+
+        int rate = this.online ? PregenConfig.throttleOnlineCubesPerSecond : PregenConfig.throttleOfflineCubesPerSecond;
+        if (rate > 0) {
+            //refill the token bucket, allowing bursts of up to one second's worth of cubes
+            long now = System.nanoTime();
+            this.tokens = min(this.tokens + (now - this.lastRefill) * rate / 1000000000.0d, rate);
+            this.lastRefill = now;
+            return this.tokens >= 1.0d;
+        } else {
+            return true;
+        }
+    }
+
+    /**
+     * Records the work done by pregeneration after {@link #tryAcquire(MinecraftServer)} allowed it to run.
+     *
+     * @param nanos the time spent, in nanoseconds
+     * @param cubes the number of cubes which were generated
+     */
+    public void record(long nanos, long cubes) {
+        this.nanosThisTick += nanos;
+        this.tokens -= cubes;
+    }
+
+    /**
+     * @return the time which pregeneration may currently spend per tick, in nanoseconds, or {@code 0} if unlimited
+     */
+    public long budgetNanos() {
+        if (this.online) {
+            return max((long) (PregenConfig.throttleOnlineNanosPerTick * this.scale), 1L);
+        } else {
+            return PregenConfig.throttleOfflineNanosPerTick;
+        }
+    }
+
+    private void update(MinecraftServer server) {
+        //average the duration of the most recent ticks
+        long[] tickTimes = server.tickTimeArray;
+        long total = 0L;
+        for (int i = 1; i <= TICK_WINDOW; i++) {
+            total += tickTimes[(server.getTickCounter() + tickTimes.length - i) % tickTimes.length];
+        }
+        this.mspt = total / TICK_WINDOW / 1000000L;
+
+        if (!this.online || PregenConfig.adaptiveControl) { //the adaptive controller takes care of the tick time
+            this.scale = 1.0d;
+        } else if (this.mspt > PregenConfig.throttleTargetTickMillis) {
+            this.scale = max(this.scale * DECREASE_FACTOR, MIN_SCALE);
+        } else {
+            this.scale = min(this.scale + SCALE_INCREMENT, 1.0d);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long budget = this.budgetNanos();
+        return String.format("%s, %dms/tick, budget %s", this.online ? "players online" : "server empty", this.mspt,
+                budget > 0L ? String.format("%.2fms/tick", budget / 1000000.0d) : "unlimited");
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package net.daporkchop.ccpregen;
+
+import it.unimi.dsi.fastutil.longs.LongList;
+import net.daporkchop.ccpregen.util.CubePositionList;
+
+/**
+ * Unloads cubes and columns from a world on behalf of the {@link FrontierUnloader} and the {@link ColumnUnloader}.
+ * <p>
+ * {@link CubeUnloader} implements this for a real world. The unloading policies only ever go through this interface, so that they can also be run
+ * against a simulated world without starting a server.
+ *
+ * @author DaPorkchop_
+ */
+public interface WorldUnloader {
+    /**
+     * Unloads the cubes at the given positions. Positions which aren't loaded are ignored.
+     *
+     * @param positions the positions of the cubes to unload, packed using {@link CubePositionList#pack(int, int, int)} with their Y coordinates
+     *                  relative to {@code originY}
+     * @param originY   the Y coordinate which the packed Y coordinates are relative to
+     * @param columns   whether or not to also unload each cube's column, if it has no more loaded cubes
+     * @return the number of cubes which were unloaded
+     */
+    int unload(LongList positions, int originY, boolean columns);
+
+    /**
+     * Surface tracks all fully populated cubes in the column at the given position, then unloads all of its cubes and the column itself.
+     *
+     * @return whether or not the column was unloaded
+     */
+    boolean finishColumn(int x, int z);
+}
@@ -0,0 +1,127 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.command;
+
+import net.daporkchop.ccpregen.CCPregen;
+import net.daporkchop.ccpregen.PregenJob;
+import net.daporkchop.ccpregen.PregenState;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.text.TextComponentString;
+import net.minecraftforge.server.permission.PermissionAPI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author DaPorkchop_
+ */
+public class JobsCommand extends CommandBase {
+    /**
+     * Gets the jobs selected by an optional job ID argument.
+     *
+     * @param args  the command arguments
+     * @param index the index of the job ID argument
+     * @return the job with the given ID, or all jobs if no ID was given
+     */
+    public static List<PregenJob> parseJobs(String[] args, int index) throws CommandException {
+        if (args.length <= index) {
+            return new ArrayList<>(PregenState.jobs.values());
+        }
+
+        int id = parseInt(args[index]);
+        PregenJob job = PregenState.jobs.get(id);
+        if (job == null) {
+            throw new CommandException("There is no pregeneration job #" + id + '!');
+        }
+        return Collections.singletonList(job);
+    }
+
+    /**
+     * Gets the queued job selected by a job ID argument.
+     *
+     * @param args  the command arguments
+     * @param index the index of the job ID argument
+     * @return the queued job with the given ID, or {@code null} if no such job is queued
+     */
+    public static PregenJob findQueuedJob(String[] args, int index) throws CommandException {
+        int id = parseInt(args[index]);
+        for (PregenJob job : PregenState.queue) {
+            if (job.id == id) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return "ccpregen_jobs";
+    }
+
+    @Override
+    public String getUsage(ICommandSender sender) {
+        return "/ccpregen_jobs [weight <job> <weight>|priority <job> <priority>]";
+    }
+
+    @Override
+    public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+        if (args.length == 0) {
+            if (PregenState.jobs.isEmpty() && PregenState.queue.isEmpty()) {
+                sender.sendMessage(new TextComponentString("There are no pregeneration jobs."));
+            }
+            for (PregenJob job : PregenState.jobs.values()) {
+                sender.sendMessage(new TextComponentString(job.toString()));
+            }
+            for (PregenJob job : PregenState.queue) {
+                sender.sendMessage(new TextComponentString("Queued " + job + ", priority " + job.priority));
+            }
+        } else if ("weight".equals(args[0]) && args.length == 3) {
+            PregenJob job = parseJobs(args, 1).get(0);
+            job.weight = parseInt(args[2], 1, 1000);
+            PregenState.persistState();
+            sender.sendMessage(new TextComponentString("Set weight of pregeneration job #" + job.id + " to " + job.weight));
+        } else if ("priority".equals(args[0]) && args.length == 3) {
+            PregenJob job = findQueuedJob(args, 1);
+            if (job == null) {
+                throw new CommandException("Pregeneration job #" + args[1] + " isn't queued!");
+            }
+            PregenState.setPriority(job, parseInt(args[2]));
+            sender.sendMessage(new TextComponentString("Set priority of queued pregeneration job #" + job.id + " to " + job.priority));
+        } else {
+            throw new WrongUsageException(this.getUsage(sender));
+        }
+    }
+
+    @Override
+    public boolean checkPermission(MinecraftServer server, ICommandSender sender) {
+        if (sender instanceof EntityPlayer) {
+            return PermissionAPI.hasPermission((EntityPlayer) sender, CCPregen.MODID + ".command.ccpregen_jobs");
+        } else {
+            return super.checkPermission(server, sender);
+        }
+    }
+}
@@ -21,11 +21,13 @@
 package net.daporkchop.ccpregen.command;
 
 import net.daporkchop.ccpregen.CCPregen;
+import net.daporkchop.ccpregen.PregenJob;
 import net.daporkchop.ccpregen.PregenState;
 import net.minecraft.command.CommandBase;
 import net.minecraft.command.CommandException;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.command.NumberInvalidException;
+import net.minecraft.command.WrongUsageException;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.math.BlockPos;
@@ -53,7 +55,7 @@ public class PregenCommand extends CommandBase {
 
     @Override
     public String getUsage(ICommandSender sender) {
-        return "/ccpregen <minX> <minY> <minZ> <maxX> <maxY> <maxZ> [dimension]";
+        return "/ccpregen <minX> <minY> <minZ> <maxX> <maxY> <maxZ> [dimension] [queue [priority]]";
     }
 
     @Override
@@ -64,11 +66,30 @@ public class PregenCommand extends CommandBase {
         }
         BlockPos min = parseBlockPos(sender, args, 0);
         BlockPos max = parseBlockPos(sender, args, 3);
-        int dimension = args.length == 6 ? sender.getEntityWorld().provider.getDimension() : parseInt(args[7]);
+        int dimension = sender.getEntityWorld().provider.getDimension();
+        int index = 6;
+        if (args.length > index && !"queue".equals(args[index])) {
+            dimension = parseInt(args[index++]);
+        }
+        boolean queue = false;
+        int priority = 0;
+        if (args.length > index) {
+            if (!"queue".equals(args[index++])) {
+                throw new WrongUsageException(this.getUsage(sender));
+            }
+            queue = true;
+            if (args.length > index) {
+                priority = parseInt(args[index]);
+            }
+        }
         if (min.getX() > max.getX() || min.getY() > max.getY() || min.getZ() > max.getZ())  {
             sender.sendMessage(new TextComponentString("Min coordinates may not be greater than max coordinates!"));
-        } else if (!PregenState.startPregeneration(sender, min, max, dimension))   {
-            sender.sendMessage(new TextComponentString("A pregeneration task is already running!"));
+        } else if (queue) {
+            PregenJob job = PregenState.enqueuePregeneration(sender, min, max, dimension, priority);
+            sender.sendMessage(new TextComponentString("Queued pregeneration job #" + job.id + " with priority " + priority));
+        } else {
+            PregenJob job = PregenState.startPregeneration(sender, min, max, dimension);
+            sender.sendMessage(new TextComponentString("Started pregeneration job #" + job.id));
         }
     }
 
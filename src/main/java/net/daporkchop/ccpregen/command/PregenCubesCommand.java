@@ -22,11 +22,13 @@ package net.daporkchop.ccpregen.command;
 
 import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
 import net.daporkchop.ccpregen.CCPregen;
+import net.daporkchop.ccpregen.PregenJob;
 import net.daporkchop.ccpregen.PregenState;
 import net.minecraft.command.CommandBase;
 import net.minecraft.command.CommandException;
 import net.minecraft.command.ICommandSender;
 import net.minecraft.command.NumberInvalidException;
+import net.minecraft.command.WrongUsageException;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.math.BlockPos;
@@ -51,7 +53,7 @@ public class PregenCubesCommand extends CommandBase {
 
     @Override
     public String getUsage(ICommandSender sender) {
-        return "/ccpregen_cubes <minX> <minY> <minZ> <maxX> <maxY> <maxZ> [dimension]";
+        return "/ccpregen_cubes <minX> <minY> <minZ> <maxX> <maxY> <maxZ> [dimension] [queue [priority]]";
     }
 
     @Override
@@ -62,11 +64,30 @@ public class PregenCubesCommand extends CommandBase {
         }
         BlockPos min = parseBlockPos(args, 0);
         BlockPos max = parseBlockPos(args, 3);
-        int dimension = args.length == 6 ? sender.getEntityWorld().provider.getDimension() : parseInt(args[7]);
+        int dimension = sender.getEntityWorld().provider.getDimension();
+        int index = 6;
+        if (args.length > index && !"queue".equals(args[index])) {
+            dimension = parseInt(args[index++]);
+        }
+        boolean queue = false;
+        int priority = 0;
+        if (args.length > index) {
+            if (!"queue".equals(args[index++])) {
+                throw new WrongUsageException(this.getUsage(sender));
+            }
+            queue = true;
+            if (args.length > index) {
+                priority = parseInt(args[index]);
+            }
+        }
         if (min.getX() > max.getX() || min.getY() > max.getY() || min.getZ() > max.getZ())  {
             sender.sendMessage(new TextComponentString("Min cube coordinates may not be greater than max cube coordinates!"));
-        } else if (!PregenState.startPregenerationCubes(sender, new CubePos(min.getX(), min.getY(), min.getZ()), new CubePos(max.getX(), max.getY(), max.getZ()), dimension))   {
-            sender.sendMessage(new TextComponentString("A pregeneration task is already running!"));
+        } else if (queue) {
+            PregenJob job = PregenState.enqueuePregenerationCubes(sender, new CubePos(min.getX(), min.getY(), min.getZ()), new CubePos(max.getX(), max.getY(), max.getZ()), dimension, priority);
+            sender.sendMessage(new TextComponentString("Queued pregeneration job #" + job.id + " with priority " + priority));
+        } else {
+            PregenJob job = PregenState.startPregenerationCubes(sender, new CubePos(min.getX(), min.getY(), min.getZ()), new CubePos(max.getX(), max.getY(), max.getZ()), dimension);
+            sender.sendMessage(new TextComponentString("Started pregeneration job #" + job.id));
         }
     }
 
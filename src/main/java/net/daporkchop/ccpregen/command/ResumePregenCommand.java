@@ -21,6 +21,7 @@
 package net.daporkchop.ccpregen.command;
 
 import net.daporkchop.ccpregen.CCPregen;
+import net.daporkchop.ccpregen.PregenJob;
 import net.daporkchop.ccpregen.PregenState;
 import net.minecraft.command.CommandBase;
 import net.minecraft.command.CommandException;
@@ -30,6 +31,8 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraftforge.server.permission.PermissionAPI;
 
+import java.util.List;
+
 /**
  * @author DaPorkchop_
  */
@@ -41,18 +44,26 @@ public class ResumePregenCommand extends CommandBase {
 
     @Override
     public String getUsage(ICommandSender sender) {
-        return "/ccpregen_resume";
+        return "/ccpregen_resume [job]";
     }
 
     @Override
     public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
-        if (PregenState.paused) {
-            PregenState.paused = false;
-            PregenState.persistState();
-            sender.sendMessage(new TextComponentString("Pregeneration resumed!"));
-        } else {
-            sender.sendMessage(new TextComponentString("Pregeneration isn't paused..."));
+        List<PregenJob> jobs = JobsCommand.parseJobs(args, 0);
+        if (jobs.isEmpty()) {
+            sender.sendMessage(new TextComponentString("Pregeneration isn't active!"));
+            return;
+        }
+
+        for (PregenJob job : jobs) {
+            if (job.paused == false) {
+                sender.sendMessage(new TextComponentString("Pregeneration job #" + job.id + " isn't paused..."));
+            } else {
+                job.paused = false;
+                sender.sendMessage(new TextComponentString("Pregeneration job #" + job.id + " resumed!"));
+            }
         }
+        PregenState.persistState();
     }
 
     @Override
@@ -0,0 +1,86 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.command;
+
+import net.daporkchop.ccpregen.CCPregen;
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.command.WrongUsageException;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.text.TextComponentString;
+import net.minecraftforge.server.permission.PermissionAPI;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * @author DaPorkchop_
+ */
+public class StatsCommand extends CommandBase {
+    @Override
+    public String getName() {
+        return "ccpregen_stats";
+    }
+
+    @Override
+    public String getUsage(ICommandSender sender) {
+        return "/ccpregen_stats [dump|reset]";
+    }
+
+    @Override
+    public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+        if (args.length == 0) {
+            for (String line : Metrics.describeAll().split("\n")) {
+                sender.sendMessage(new TextComponentString(line));
+            }
+        } else if ("dump".equals(args[0])) {
+            File file = server.getFile("ccpregen-stats-" + new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(new Date()) + ".txt");
+            try {
+                Files.write(file.toPath(), Metrics.describeAll().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                CCPregen.LOGGER.error("Unable to write stats to " + file, e);
+                throw new CommandException("Unable to write stats to " + file + ": " + e);
+            }
+            sender.sendMessage(new TextComponentString("Wrote stats to " + file));
+        } else if ("reset".equals(args[0])) {
+            Metrics.resetAll();
+            sender.sendMessage(new TextComponentString("Stats reset!"));
+        } else {
+            throw new WrongUsageException(this.getUsage(sender));
+        }
+    }
+
+    @Override
+    public boolean checkPermission(MinecraftServer server, ICommandSender sender) {
+        if (sender instanceof EntityPlayer) {
+            return PermissionAPI.hasPermission((EntityPlayer) sender, CCPregen.MODID + ".command.ccpregen_stats");
+        } else {
+            return super.checkPermission(server, sender);
+        }
+    }
+}
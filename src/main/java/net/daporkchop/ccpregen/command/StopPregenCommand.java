@@ -21,6 +21,7 @@
 package net.daporkchop.ccpregen.command;
 
 import net.daporkchop.ccpregen.CCPregen;
+import net.daporkchop.ccpregen.PregenJob;
 import net.daporkchop.ccpregen.PregenState;
 import net.daporkchop.ccpregen.SurfaceTrackingState;
 import net.minecraft.command.CommandBase;
@@ -31,6 +32,8 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraftforge.server.permission.PermissionAPI;
 
+import java.util.List;
+
 /**
  * @author DaPorkchop_
  */
@@ -42,20 +45,40 @@ public class StopPregenCommand extends CommandBase {
 
     @Override
     public String getUsage(ICommandSender sender) {
-        return "/ccpregen_stop";
+        return "/ccpregen_stop [job]";
     }
 
     @Override
     public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
-        if (PregenState.active || SurfaceTrackingState.active) {
-            sender.sendMessage(new TextComponentString("Stopping pregeneration..."));
-            PregenState.active = false;
+        if (args.length > 0) { //the job might not have been started yet
+            PregenJob queued = JobsCommand.findQueuedJob(args, 0);
+            if (queued != null && PregenState.dequeue(queued)) {
+                sender.sendMessage(new TextComponentString("Removed pregeneration job #" + queued.id + " from the queue."));
+                return;
+            }
+        } else if (!PregenState.queue.isEmpty()) {
+            sender.sendMessage(new TextComponentString("Clearing the pregeneration queue..."));
+            PregenState.queue.clear();
+        }
+
+        List<PregenJob> jobs = JobsCommand.parseJobs(args, 0);
+        boolean surfaceTracking = args.length == 0 && SurfaceTrackingState.active;
+        if (jobs.isEmpty() && !surfaceTracking) {
             PregenState.persistState();
+            sender.sendMessage(new TextComponentString("Pregeneration isn't active!"));
+            return;
+        }
 
+        for (PregenJob job : jobs) {
+            sender.sendMessage(new TextComponentString("Stopping pregeneration job #" + job.id + "..."));
+            job.active = false;
+        }
+        PregenState.persistState();
+
+        if (surfaceTracking) {
+            sender.sendMessage(new TextComponentString("Stopping surface tracking..."));
             SurfaceTrackingState.active = false;
             SurfaceTrackingState.persistState();
-        } else {
-            sender.sendMessage(new TextComponentString("Pregeneration isn't active!"));
         }
     }
 
@@ -0,0 +1,79 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.metrics;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A {@link Metric} which holds a single {@code long} value.
+ * <p>
+ * Depending on how it is used, this can either be a monotonically increasing counter (using {@link #increment()}/{@link #add(long)}) or a gauge
+ * which always contains the most recent measurement (using {@link #set(long)}).
+ *
+ * @author DaPorkchop_
+ */
+public final class Counter extends Metric {
+    private static final AtomicLongFieldUpdater<Counter> VALUE = AtomicLongFieldUpdater.newUpdater(Counter.class, "value");
+
+    private final boolean gauge;
+    private volatile long value;
+
+    public Counter(String name, String help, boolean gauge) {
+        super(name, help);
+        this.gauge = gauge;
+    }
+
+    /**
+     * @return whether or not this is a gauge (as opposed to a monotonically increasing counter)
+     */
+    public boolean gauge() {
+        return this.gauge;
+    }
+
+    /**
+     * @return the current value
+     */
+    public long get() {
+        return this.value;
+    }
+
+    public void increment() {
+        VALUE.lazySet(this, this.value + 1L);
+    }
+
+    public void add(long delta) {
+        VALUE.lazySet(this, this.value + delta);
+    }
+
+    public void set(long value) {
+        VALUE.lazySet(this, value);
+    }
+
+    @Override
+    public void describe(StringBuilder builder) {
+        builder.append(this.name).append(": ").append(this.value);
+    }
+
+    @Override
+    public void reset() {
+        VALUE.lazySet(this, 0L);
+    }
+}
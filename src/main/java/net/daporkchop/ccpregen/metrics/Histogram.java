@@ -0,0 +1,203 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link Metric} which records the distribution of a non-negative {@code long} value, such as the duration of an operation in nanoseconds.
+ * <p>
+ * Values are counted in logarithmic buckets: every power of two is split into {@link #SUB_BUCKETS} linear sub-buckets, so any recorded value can
+ * be reconstructed with a relative error of at most 12.5% regardless of its magnitude. Recording a value never allocates.
+ *
+ * @author DaPorkchop_
+ */
+public final class Histogram extends Metric {
+    private static final int SUB_BUCKET_BITS = 3;
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * Gets the index of the bucket which the given value belongs in.
+     *
+     * @param value the value. Must be non-negative
+     * @return the bucket index
+     */
+    public static int bucket(long value) {
+        if (value < SUB_BUCKETS) { //small values get one bucket each
+            return (int) value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exp - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) | sub;
+    }
+
+    /**
+     * @param bucket the bucket index
+     * @return the smallest value which belongs in the given bucket
+     */
+    public static long bucketMin(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exp = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS | (bucket & (SUB_BUCKETS - 1))) << (exp - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param bucket the bucket index
+     * @return the largest value which belongs in the given bucket
+     */
+    public static long bucketMax(int bucket) {
+        return bucket + 1 < BUCKETS ? bucketMin(bucket + 1) - 1L : Long.MAX_VALUE;
+    }
+
+    private final boolean nanos;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final Counter count;
+    private final Counter sum;
+    private final Counter max;
+
+    /**
+     * @param name  the name of the histogram
+     * @param help  a short description of the histogram
+     * @param nanos whether or not the recorded values are durations in nanoseconds
+     */
+    public Histogram(String name, String help, boolean nanos) {
+        super(name, help);
+        this.nanos = nanos;
+        this.count = new Counter(name + "_count", help, false);
+        this.sum = new Counter(name + "_sum", help, false);
+        this.max = new Counter(name + "_max", help, true);
+    }
+
+    /**
+     * @return whether or not the recorded values are durations in nanoseconds
+     */
+    public boolean nanos() {
+        return this.nanos;
+    }
+
+    /**
+     * Records a single value.
+     *
+     * @param value the value to record. Negative values are treated as {@code 0}
+     */
+    public void record(long value) {
+        value = Math.max(value, 0L);
+
+        int bucket = bucket(value);
+        this.buckets.lazySet(bucket, this.buckets.get(bucket) + 1L);
+        this.count.increment();
+        this.sum.add(value);
+        if (value > this.max.get()) {
+            this.max.set(value);
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given start time.
+     *
+     * @param startNanos the start time, as returned by {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        this.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long count() {
+        return this.count.get();
+    }
+
+    /**
+     * @return the sum of all recorded values
+     */
+    public long sum() {
+        return this.sum.get();
+    }
+
+    /**
+     * @return the largest recorded value
+     */
+    public long max() {
+        return this.max.get();
+    }
+
+    /**
+     * @param bucket the bucket index
+     * @return the number of recorded values in the given bucket
+     */
+    public long bucketCount(int bucket) {
+        return this.buckets.get(bucket);
+    }
+
+    /**
+     * Estimates the value at the given quantile.
+     *
+     * @param quantile the quantile, between {@code 0.0} and {@code 1.0}
+     * @return the estimated value, or {@code 0} if no values have been recorded
+     */
+    public long quantile(double quantile) {
+        long count = this.count();
+        if (count == 0L) {
+            return 0L;
+        }
+
+        long target = Math.max((long) Math.ceil(quantile * count), 1L);
+        long cumulative = 0L;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if ((cumulative += this.buckets.get(bucket)) >= target) {
+                return Math.min(bucketMax(bucket), this.max());
+            }
+        }
+        return this.max(); //a concurrent update happened while we were reading
+    }
+
+    @Override
+    public void describe(StringBuilder builder) {
+        long count = this.count();
+        builder.append(this.name).append(": count=").append(count);
+        if (count > 0L) {
+            builder.append(", mean=").append(this.format(this.sum() / (double) count))
+                    .append(", p50=").append(this.format(this.quantile(0.5d)))
+                    .append(", p90=").append(this.format(this.quantile(0.9d)))
+                    .append(", p99=").append(this.format(this.quantile(0.99d)))
+                    .append(", max=").append(this.format(this.max()));
+        }
+    }
+
+    private String format(double value) {
+        return this.nanos ? String.format("%.3fms", value / 1000000.0d) : String.format("%.1f", value);
+    }
+
+    @Override
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            this.buckets.lazySet(bucket, 0L);
+        }
+        this.count.reset();
+        this.sum.reset();
+        this.max.reset();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.metrics;
+
+/**
+ * A named value which is updated by the server thread and may be read from any thread.
+ * <p>
+ * Metrics are single-writer: all updates must happen on the same thread, which allows them to be updated using plain reads and ordered writes
+ * instead of atomic read-modify-write operations or locks. Readers on other threads may observe a slightly stale value.
+ *
+ * @author DaPorkchop_
+ */
+public abstract class Metric {
+    protected final String name;
+    protected final String help;
+
+    protected Metric(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    /**
+     * @return the name of this metric
+     */
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * @return a short description of this metric
+     */
+    public String help() {
+        return this.help;
+    }
+
+    /**
+     * Appends a human-readable summary of this metric's current value to the given {@link StringBuilder}.
+     *
+     * @param builder the {@link StringBuilder} to append to
+     */
+    public abstract void describe(StringBuilder builder);
+
+    /**
+     * Resets this metric to its initial state.
+     * <p>
+     * Must only be called from the thread which updates this metric.
+     */
+    public abstract void reset();
+}
@@ -0,0 +1,116 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.metrics;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * All of the metrics collected by CCPregen.
+ *
+ * @author DaPorkchop_
+ */
+@UtilityClass
+public class Metrics {
+    private static final List<Metric> ALL = new ArrayList<>();
+
+    //task progress
+    public static final Counter PREGEN_CUBES_TOTAL = register(new Counter("ccpregen_pregen_volume_cubes", "Total number of cubes in the current pregeneration task", true));
+    public static final Counter PREGEN_CUBES_COMPLETED = register(new Counter("ccpregen_pregen_cubes_completed", "Number of cubes completed in the current pregeneration task", true));
+    public static final Counter PREGEN_CUBES_PER_SECOND = register(new Counter("ccpregen_pregen_cubes_per_second", "Recent pregeneration rate in cubes per second", true));
+    public static final Counter PREGEN_ETA_SECONDS = register(new Counter("ccpregen_pregen_eta_seconds", "Estimated time until the current pregeneration task is complete", true));
+    public static final Counter PREFETCH_WINDOW_SIZE = register(new Counter("ccpregen_prefetch_window_size", "Number of cubes currently being prefetched", true));
+    public static final Counter SURFACE_TRACKING_CUBES_TOTAL = register(new Counter("ccpregen_surface_tracking_volume_cubes", "Total number of cubes in the current surface tracking task", true));
+    public static final Counter SURFACE_TRACKING_CUBES_COMPLETED = register(new Counter("ccpregen_surface_tracking_cubes_completed", "Number of cubes completed in the current surface tracking task", true));
+    public static final Counter SURFACE_TRACKING_CUBES_PER_SECOND = register(new Counter("ccpregen_surface_tracking_cubes_per_second", "Recent surface tracking rate in cubes per second", true));
+    public static final Counter SURFACE_TRACKING_ETA_SECONDS = register(new Counter("ccpregen_surface_tracking_eta_seconds", "Estimated time until the current surface tracking task is complete", true));
+
+    //per-stage latencies
+    public static final Histogram GET_CUBE = register(new Histogram("ccpregen_get_cube_nanos", "Time spent loading or generating a single cube", true));
+    public static final Histogram SAVE_CUBE = register(new Histogram("ccpregen_save_cube_nanos", "Time spent serializing and queueing a single cube for saving", true));
+    public static final Histogram UNLOAD_CUBE = register(new Histogram("ccpregen_unload_cube_nanos", "Time spent unloading a single cube", true));
+    public static final Histogram UNLOAD_OLD_CUBES = register(new Histogram("ccpregen_unload_old_cubes_nanos", "Time spent in a full unload cycle", true));
+    public static final Histogram TRACK_SURFACE = register(new Histogram("ccpregen_track_surface_nanos", "Time spent surface tracking a single cube", true));
+    public static final Histogram PERSIST_STATE = register(new Histogram("ccpregen_persist_state_nanos", "Time spent on the server thread taking a checkpoint of the job state", true));
+    public static final Histogram WORK_CALL = register(new Histogram("ccpregen_work_call_nanos", "Time spent in a single call from the world worker manager", true));
+
+    //throughput
+    public static final Counter CUBES_GENERATED = register(new Counter("ccpregen_cubes_generated", "Number of cubes generated by the pregenerator", false));
+    public static final Counter CUBES_SKIPPED_EXISTING = register(new Counter("ccpregen_cubes_skipped_existing", "Number of cubes skipped by the pregenerator because they already existed", false));
+    public static final Counter CUBES_SURFACE_TRACKED = register(new Counter("ccpregen_cubes_surface_tracked", "Number of cubes surface tracked by the surface tracker", false));
+    public static final Counter CUBES_SURFACE_TRACKING_SKIPPED = register(new Counter("ccpregen_cubes_surface_tracking_skipped", "Number of cubes skipped by the surface tracker", false));
+    public static final Counter CUBES_UNLOADED = register(new Counter("ccpregen_cubes_unloaded", "Number of cubes unloaded individually by the pregenerator", false));
+    public static final Counter COLUMNS_UNLOADED = register(new Counter("ccpregen_columns_unloaded", "Number of columns unloaded individually by the pregenerator", false));
+    public static final Counter COLUMNS_FINISHED = register(new Counter("ccpregen_columns_finished", "Number of columns unloaded by the pregenerator as soon as they and their neighbors were complete", false));
+
+    //async prefetching
+    public static final Counter POLL_READY = register(new Counter("ccpregen_poll_ready", "Number of async generator polls which returned READY", false));
+    public static final Counter POLL_WAITING = register(new Counter("ccpregen_poll_waiting", "Number of async generator polls which returned WAITING", false));
+    public static final Counter POLL_FAIL = register(new Counter("ccpregen_poll_fail", "Number of async generator polls which returned FAIL", false));
+    public static final Counter POLL_GROUP_CACHED = register(new Counter("ccpregen_poll_group_cached", "Number of async generator polls which were skipped because the cube's group had already been polled", false));
+
+    //save queue and memory
+    public static final Counter SAVE_QUEUE_SIZE = register(new Counter("ccpregen_save_queue_size", "Number of cubes currently waiting to be saved", true));
+    public static final Counter SAVE_BATCH_PENDING = register(new Counter("ccpregen_save_batch_pending", "Number of generated cubes waiting to be saved in a batch", true));
+    public static final Histogram SAVE_QUEUE_SIZES = register(new Histogram("ccpregen_save_queue_sizes", "Distribution of the save queue size, sampled once per call", false));
+    public static final Counter THROTTLE_BUDGET_NANOS = register(new Counter("ccpregen_throttle_budget_nanos", "Time which pregeneration may currently spend per tick, 0 if unlimited", true));
+    public static final Counter WORKING_SET_SIZE = register(new Counter("ccpregen_working_set_size", "Number of cube positions which the frontier unloader is keeping loaded", true));
+    public static final Counter WORKING_SET_LIMIT = register(new Counter("ccpregen_working_set_limit", "Number of cube positions which the frontier unloader may currently keep loaded", true));
+    public static final Counter WORKING_SET_UNTRACKED = register(new Counter("ccpregen_working_set_untracked", "Number of cube positions which were too far from the middle of their job to be tracked by the frontier unloader", false));
+    public static final Counter HEAP_OCCUPANCY_PERCENT = register(new Counter("ccpregen_heap_occupancy_percent", "Heap usage after the most recent garbage collection, in percent of the maximum heap size", true));
+    public static final Counter HEAP_USED_AFTER_UNLOAD = register(new Counter("ccpregen_heap_used_after_unload_bytes", "Used heap memory after the most recent unload cycle", true));
+
+    private static <M extends Metric> M register(M metric) {
+        ALL.add(metric);
+        return metric;
+    }
+
+    /**
+     * @return all registered metrics
+     */
+    public static List<Metric> all() {
+        return Collections.unmodifiableList(ALL);
+    }
+
+    /**
+     * @return a human-readable summary of all metrics, one per line
+     */
+    public static String describeAll() {
+        StringBuilder builder = new StringBuilder();
+        for (Metric metric : ALL) {
+            metric.describe(builder);
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Resets all metrics.
+     * <p>
+     * Must only be called from the server thread.
+     */
+    public static void resetAll() {
+        ALL.forEach(Metric::reset);
+    }
+}
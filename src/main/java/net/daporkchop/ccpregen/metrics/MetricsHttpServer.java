@@ -0,0 +1,143 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A tiny embedded HTTP server which serves all {@link Metrics} in the OpenMetrics text format.
+ * <p>
+ * Requests are handled on a dedicated background thread. Since metrics are only ever read, serving a request never blocks the server thread.
+ *
+ * @author DaPorkchop_
+ */
+public final class MetricsHttpServer {
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    /**
+     * Formats the given metrics in the OpenMetrics text format.
+     *
+     * @param metrics the metrics to format
+     * @return the formatted metrics
+     */
+    public static String format(List<Metric> metrics) {
+        StringBuilder builder = new StringBuilder();
+        for (Metric metric : metrics) {
+            if (metric instanceof Counter) {
+                Counter counter = (Counter) metric;
+                String type = counter.gauge() ? "gauge" : "counter";
+                header(builder, metric, type);
+                builder.append(metric.name()).append(counter.gauge() ? "" : "_total").append(' ').append(counter.get()).append('\n');
+            } else if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                header(builder, metric, "histogram");
+
+                //read the count first: if any values are recorded concurrently, the buckets will only ever be ahead of it, which keeps them monotonic
+                long count = histogram.count();
+                long sum = histogram.sum();
+
+                //only emit bucket boundaries at powers of two, up to the largest one which contains any values
+                int last = Histogram.bucket(histogram.max()) | (Histogram.SUB_BUCKETS - 1);
+                long cumulative = 0L;
+                for (int bucket = 0; bucket <= last; bucket++) {
+                    cumulative += histogram.bucketCount(bucket);
+                    if ((bucket & (Histogram.SUB_BUCKETS - 1)) == Histogram.SUB_BUCKETS - 1) {
+                        builder.append(metric.name()).append("_bucket{le=\"").append(Histogram.bucketMax(bucket)).append(".0\"} ")
+                                .append(Math.min(cumulative, count)).append('\n');
+                    }
+                }
+                builder.append(metric.name()).append("_bucket{le=\"+Inf\"} ").append(count).append('\n');
+                builder.append(metric.name()).append("_count ").append(count).append('\n');
+                builder.append(metric.name()).append("_sum ").append(sum).append('\n');
+            }
+        }
+        return builder.append("# EOF\n").toString();
+    }
+
+    private static void header(StringBuilder builder, Metric metric, String type) {
+        builder.append("# TYPE ").append(metric.name()).append(' ').append(type).append('\n');
+        builder.append("# HELP ").append(metric.name()).append(' ').append(metric.help()).append('\n');
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts a new metrics server.
+     *
+     * @param host the host to bind to
+     * @param port the port to bind to, or {@code 0} to use any free port
+     */
+    public MetricsHttpServer(String host, int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.server.createContext("/metrics", this::handle);
+
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "CCPregen metrics server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(this.executor);
+        this.server.start();
+    }
+
+    /**
+     * @return the port which this server is bound to
+     */
+    public int port() {
+        return this.server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1L);
+                return;
+            }
+
+            byte[] body = format(Metrics.all()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Stops this server.
+     */
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.util;
+
+import net.daporkchop.ccpregen.CCPregen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * A file containing a small binary checkpoint, which is replaced atomically every time a new checkpoint is written.
+ * <p>
+ * Checkpoints are written asynchronously by a background thread, so taking a checkpoint only costs as much as serializing it. Each checkpoint is
+ * written to a temporary file and flushed to disk, which then atomically replaces the previous checkpoint. A crash can therefore never leave behind
+ * a partially written checkpoint. If checkpoints are taken faster than they can be written, intermediate ones are skipped and only the most recent
+ * one is written.
+ *
+ * @author DaPorkchop_
+ */
+public final class CheckpointFile implements AutoCloseable {
+    private static final int HEADER_SIZE = 16; //magic, length, crc32
+
+    private final Path path;
+    private final int magic;
+
+    private final AtomicReference<byte[]> pending = new AtomicReference<>();
+    private final ExecutorService executor;
+
+    /**
+     * @param path  the file to store checkpoints in
+     * @param magic a value identifying the type of checkpoint stored in the file
+     */
+    public CheckpointFile(Path path, int magic) {
+        this.path = path;
+        this.magic = magic;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "CCPregen checkpoint writer (" + path.getFileName() + ')');
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the most recently written checkpoint.
+     *
+     * @return the checkpoint's data, or {@code null} if no checkpoint has been written yet
+     * @throws IOException if the checkpoint is damaged
+     */
+    public byte[] read() throws IOException {
+        byte[] file;
+        try {
+            file = Files.readAllBytes(this.path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        ByteBuffer buf = ByteBuffer.wrap(file);
+        if (file.length < HEADER_SIZE || buf.getInt() != this.magic) {
+            throw new IOException("invalid checkpoint file: " + this.path);
+        }
+        int length = buf.getInt();
+        long crc = buf.getLong();
+        if (length != file.length - HEADER_SIZE) {
+            throw new IOException("checkpoint file has been truncated: " + this.path);
+        }
+
+        byte[] data = Arrays.copyOfRange(file, HEADER_SIZE, file.length);
+        if (crc(data) != crc) {
+            throw new IOException("checkpoint file is corrupted: " + this.path);
+        }
+        return data;
+    }
+
+    /**
+     * Asynchronously writes a new checkpoint.
+     *
+     * @param data the checkpoint's data. Must not be modified afterwards
+     */
+    public void write(byte[] data) {
+        if (this.pending.getAndSet(data) == null) { //no write is queued yet
+            this.executor.execute(this::writePending);
+        }
+    }
+
+    private void writePending() {
+        byte[] data = this.pending.getAndSet(null);
+        if (data == null) {
+            return;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + data.length);
+        buf.putInt(this.magic).putInt(data.length).putLong(crc(data)).put(data).flip();
+
+        Path tmp = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+                channel.force(true);
+            }
+            Files.move(tmp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            //the previous checkpoint is still intact, the next one will probably succeed
+            CCPregen.LOGGER.error("Unable to write checkpoint to " + this.path, e);
+        }
+    }
+
+    /**
+     * Waits until all checkpoints which have already been taken have been written.
+     */
+    public void flush() {
+        try {
+            this.executor.submit(this::writePending).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes any remaining checkpoints and stops the background thread.
+     */
+    @Override
+    public void close() {
+        this.flush();
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(1L, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+}
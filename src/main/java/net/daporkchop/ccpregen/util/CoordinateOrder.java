@@ -24,6 +24,7 @@ import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
 
 import java.util.Iterator;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 /**
  * @author DaPorkchop_
@@ -31,73 +32,435 @@ import java.util.stream.IntStream;
 public enum CoordinateOrder {
     SLICES_TOP_TO_BOTTOM {
         @Override
-        public Iterator<CubePos> iterator(Volume volume) {
-            return IntStream.rangeClosed(volume.minY, volume.maxY)
-                    .map(y -> volume.maxY - y + volume.minY) //reverse order
-                    .boxed()
-                    .flatMap(y -> IntStream.rangeClosed(volume.minX, volume.maxX).boxed()
-                            .flatMap(x -> IntStream.rangeClosed(volume.minZ, volume.maxZ)
-                                    .mapToObj(z -> new CubePos(x, y, z))))
+        public Iterator<CubePos> iterator(Volume volume, long startIndex) {
+            long sliceSize = (long) volume.sizeX() * volume.sizeZ();
+            return LongStream.range(startIndex, volume.total)
+                    .mapToObj(i -> {
+                        long j = i % sliceSize;
+                        return new CubePos(
+                                volume.minX + (int) (j / volume.sizeZ()),
+                                volume.maxY - (int) (i / sliceSize), //reverse order
+                                volume.minZ + (int) (j % volume.sizeZ()));
+                    })
                     .iterator();
         }
+
+        @Override
+        public CubeCursor cursor(Volume volume, long startIndex) {
+            return new SliceCursor(volume, startIndex, true);
+        }
     },
     SLICES_BOTTOM_TO_TOP {
         @Override
-        public Iterator<CubePos> iterator(Volume volume) {
-            return IntStream.rangeClosed(volume.minY, volume.maxY).boxed()
-                    .flatMap(y -> IntStream.rangeClosed(volume.minX, volume.maxX).boxed()
-                            .flatMap(x -> IntStream.rangeClosed(volume.minZ, volume.maxZ)
-                                    .mapToObj(z -> new CubePos(x, y, z))))
+        public Iterator<CubePos> iterator(Volume volume, long startIndex) {
+            long sliceSize = (long) volume.sizeX() * volume.sizeZ();
+            return LongStream.range(startIndex, volume.total)
+                    .mapToObj(i -> {
+                        long j = i % sliceSize;
+                        return new CubePos(
+                                volume.minX + (int) (j / volume.sizeZ()),
+                                volume.minY + (int) (i / sliceSize),
+                                volume.minZ + (int) (j % volume.sizeZ()));
+                    })
                     .iterator();
         }
+
+        @Override
+        public CubeCursor cursor(Volume volume, long startIndex) {
+            return new SliceCursor(volume, startIndex, false);
+        }
     },
     COLUMNS_TOP_TO_BOTTOM {
         @Override
-        public Iterator<CubePos> iterator(Volume volume) {
-            return IntStream.rangeClosed(volume.minX, volume.maxX).boxed()
-                    .flatMap(x -> IntStream.rangeClosed(volume.minZ, volume.maxZ).boxed()
-                            .flatMap(z -> IntStream.rangeClosed(volume.minY, volume.maxY)
-                                    .map(y -> volume.maxY - y + volume.minY) //reverse order
-                                    .mapToObj(y -> new CubePos(x, y, z))))
+        public Iterator<CubePos> iterator(Volume volume, long startIndex) {
+            long columnSize = volume.sizeY();
+            return LongStream.range(startIndex, volume.total)
+                    .mapToObj(i -> {
+                        long j = i / columnSize;
+                        return new CubePos(
+                                volume.minX + (int) (j / volume.sizeZ()),
+                                volume.maxY - (int) (i % columnSize), //reverse order
+                                volume.minZ + (int) (j % volume.sizeZ()));
+                    })
                     .iterator();
         }
+
+        @Override
+        public CubeCursor cursor(Volume volume, long startIndex) {
+            return new ColumnCursor(volume, startIndex, true);
+        }
     },
     COLUMNS_BOTTOM_TO_TOP {
         @Override
-        public Iterator<CubePos> iterator(Volume volume) {
-            return IntStream.rangeClosed(volume.minX, volume.maxX).boxed()
-                    .flatMap(x -> IntStream.rangeClosed(volume.minZ, volume.maxZ).boxed()
-                            .flatMap(z -> IntStream.rangeClosed(volume.minY, volume.maxY)
-                                    .mapToObj(y -> new CubePos(x, y, z))))
+        public Iterator<CubePos> iterator(Volume volume, long startIndex) {
+            long columnSize = volume.sizeY();
+            return LongStream.range(startIndex, volume.total)
+                    .mapToObj(i -> {
+                        long j = i / columnSize;
+                        return new CubePos(
+                                volume.minX + (int) (j / volume.sizeZ()),
+                                volume.minY + (int) (i % columnSize),
+                                volume.minZ + (int) (j % volume.sizeZ()));
+                    })
                     .iterator();
         }
+
+        @Override
+        public CubeCursor cursor(Volume volume, long startIndex) {
+            return new ColumnCursor(volume, startIndex, false);
+        }
     },
     HILBERT_3D {
         @Override
-        public Iterator<CubePos> iterator(Volume volume) {
-            return Hilbert.hilbert3d(volume.minX, volume.minY, volume.minZ, volume.sizeX(), volume.sizeY(), volume.sizeZ())
+        public Iterator<CubePos> iterator(Volume volume, long startIndex) {
+            return Hilbert.hilbert3d(volume.minX, volume.minY, volume.minZ, volume.sizeX(), volume.sizeY(), volume.sizeZ(), startIndex)
                     .iterator();
         }
+
+        @Override
+        public CubeCursor cursor(Volume volume, long startIndex) {
+            return Hilbert.cursor3d(volume.minX, volume.minY, volume.minZ, volume.sizeX(), volume.sizeY(), volume.sizeZ(), startIndex);
+        }
     },
     HILBERT_2D_TOP_TO_BOTTOM {
         @Override
-        public Iterator<CubePos> iterator(Volume volume) {
-            return Hilbert.hilbert2d(volume.minX, volume.minZ, volume.sizeX(), volume.sizeZ())
+        public Iterator<CubePos> iterator(Volume volume, long startIndex) {
+            //seek to the column containing the starting index, then skip the part of that column which comes before it
+            return Hilbert.hilbert2d(volume.minX, volume.minZ, volume.sizeX(), volume.sizeZ(), startIndex / volume.sizeY())
                     .flatMap(pos -> IntStream.rangeClosed(volume.minY, volume.maxY)
                             .map(y -> volume.maxY - y + volume.minY) //reverse order
                             .mapToObj(y -> new CubePos(pos.x, y, pos.z)))
+                    .skip(startIndex % volume.sizeY())
                     .iterator();
         }
+
+        @Override
+        public CubeCursor cursor(Volume volume, long startIndex) {
+            return new HilbertColumnCursor(volume, startIndex, true);
+        }
     },
     HILBERT_2D_BOTTOM_TO_TOP {
         @Override
-        public Iterator<CubePos> iterator(Volume volume) {
-            return Hilbert.hilbert2d(volume.minX, volume.minZ, volume.sizeX(), volume.sizeZ())
+        public Iterator<CubePos> iterator(Volume volume, long startIndex) {
+            //seek to the column containing the starting index, then skip the part of that column which comes before it
+            return Hilbert.hilbert2d(volume.minX, volume.minZ, volume.sizeX(), volume.sizeZ(), startIndex / volume.sizeY())
                     .flatMap(pos -> IntStream.rangeClosed(volume.minY, volume.maxY)
                             .mapToObj(y -> new CubePos(pos.x, y, pos.z)))
+                    .skip(startIndex % volume.sizeY())
                     .iterator();
         }
+
+        @Override
+        public CubeCursor cursor(Volume volume, long startIndex) {
+            return new HilbertColumnCursor(volume, startIndex, false);
+        }
+    },
+    BRICKS {
+        @Override
+        public Iterator<CubePos> iterator(Volume volume, long startIndex) {
+            CubeCursor cursor = this.cursor(volume, startIndex);
+            return new Iterator<CubePos>() {
+                @Override
+                public boolean hasNext() {
+                    return cursor.hasNext();
+                }
+
+                @Override
+                public CubePos next() {
+                    cursor.advance();
+                    return new CubePos(cursor.x(), cursor.y(), cursor.z());
+                }
+            };
+        }
+
+        @Override
+        public CubeCursor cursor(Volume volume, long startIndex) {
+            return new BrickCursor(volume, startIndex);
+        }
     };
 
-    public abstract Iterator<CubePos> iterator(Volume volume);
+    /**
+     * The number of cubes along each side of a brick, see {@link #BRICKS}.
+     */
+    public static final int BRICK_SIZE = 4;
+
+    public Iterator<CubePos> iterator(Volume volume) {
+        return this.iterator(volume, 0L);
+    }
+
+    /**
+     * @return whether or not this order visits all positions in a column one after the other before moving on to the next column
+     */
+    public boolean columnMajor() {
+        switch (this) {
+            case COLUMNS_TOP_TO_BOTTOM:
+            case COLUMNS_BOTTOM_TO_TOP:
+            case HILBERT_2D_TOP_TO_BOTTOM:
+            case HILBERT_2D_BOTTOM_TO_TOP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Gets the index of the given column among all columns in the given {@link Volume}, for orders which are {@link #columnMajor()}.
+     * <p>
+     * The column's cubes have the indices {@code [columnIndex * volume.sizeY(), (columnIndex + 1) * volume.sizeY())}.
+     *
+     * @throws UnsupportedOperationException if this order isn't column-major
+     */
+    public long columnIndex(Volume volume, int x, int z) {
+        switch (this) {
+            case COLUMNS_TOP_TO_BOTTOM:
+            case COLUMNS_BOTTOM_TO_TOP:
+                return (long) (x - volume.minX) * volume.sizeZ() + (z - volume.minZ);
+            case HILBERT_2D_TOP_TO_BOTTOM:
+            case HILBERT_2D_BOTTOM_TO_TOP:
+                return Hilbert.index2d(volume.minX, volume.minZ, volume.sizeX(), volume.sizeZ(), x, z);
+            default:
+                throw new UnsupportedOperationException(this.name());
+        }
+    }
+
+    /**
+     * Gets the index of the first cube in the brick containing the given position, for {@link #BRICKS}.
+     * <p>
+     * Bricks are aligned to the volume's minimum corner, and the ones along its maximum edges are smaller if the volume's size isn't a multiple of
+     * {@link #BRICK_SIZE}. Every cube in a brick is visited before moving on to the next brick, so the brick's cubes have the indices
+     * {@code [brickIndex, brickIndex + cubes in the brick)}.
+     *
+     * @throws UnsupportedOperationException if this order isn't {@link #BRICKS}
+     * @throws IndexOutOfBoundsException    if the position isn't inside the volume
+     */
+    public long brickIndex(Volume volume, int x, int y, int z) {
+        if (this != BRICKS) {
+            throw new UnsupportedOperationException(this.name());
+        }
+        return Hilbert.brickIndex3d(volume.sizeX(), volume.sizeY(), volume.sizeZ(), BRICK_SIZE,
+                Math.floorDiv(x - volume.minX, BRICK_SIZE), Math.floorDiv(y - volume.minY, BRICK_SIZE), Math.floorDiv(z - volume.minZ, BRICK_SIZE));
+    }
+
+    /**
+     * Gets an {@link Iterator} over the positions in the given {@link Volume}, starting at the position with the given index.
+     * <p>
+     * This is equivalent to calling {@link Iterator#next()} {@code startIndex} times on the result of {@link #iterator(Volume)}, but doesn't
+     * need to visit any of the skipped positions.
+     *
+     * @param volume     the volume to iterate over
+     * @param startIndex the index of the first position to return. Must be in range {@code [0, volume.total]}
+     */
+    public abstract Iterator<CubePos> iterator(Volume volume, long startIndex);
+
+    /**
+     * Gets a {@link CubeCursor} over the positions in the given {@link Volume}, starting at the position with the given index.
+     * <p>
+     * The cursor visits exactly the same positions in exactly the same order as {@link #iterator(Volume, long)}, but without allocating anything
+     * per position.
+     *
+     * @param volume     the volume to iterate over
+     * @param startIndex the index of the first position to return. Must be in range {@code [0, volume.total]}
+     */
+    public abstract CubeCursor cursor(Volume volume, long startIndex);
+
+    /**
+     * Iterates over 1-cube-tall horizontal slices, X-major and Z-minor within each slice.
+     *
+     * @author DaPorkchop_
+     */
+    private static final class SliceCursor extends CubeCursor {
+        private final Volume volume;
+        private final int dy;
+
+        private int nextX;
+        private int nextY;
+        private int nextZ;
+
+        SliceCursor(Volume volume, long startIndex, boolean topToBottom) {
+            super(volume.total, startIndex);
+            this.volume = volume;
+            this.dy = topToBottom ? -1 : 1;
+
+            long sliceSize = (long) volume.sizeX() * volume.sizeZ();
+            long j = startIndex % sliceSize;
+            this.nextX = volume.minX + (int) (j / volume.sizeZ());
+            this.nextY = topToBottom ? volume.maxY - (int) (startIndex / sliceSize) : volume.minY + (int) (startIndex / sliceSize);
+            this.nextZ = volume.minZ + (int) (j % volume.sizeZ());
+        }
+
+        @Override
+        protected void advance0() {
+            this.x = this.nextX;
+            this.y = this.nextY;
+            this.z = this.nextZ;
+
+            if (++this.nextZ > this.volume.maxZ) {
+                this.nextZ = this.volume.minZ;
+                if (++this.nextX > this.volume.maxX) {
+                    this.nextX = this.volume.minX;
+                    this.nextY += this.dy;
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates over vertical columns, X-major and Z-minor.
+     *
+     * @author DaPorkchop_
+     */
+    private static final class ColumnCursor extends CubeCursor {
+        private final Volume volume;
+        private final boolean topToBottom;
+
+        private int nextX;
+        private int nextY;
+        private int nextZ;
+
+        ColumnCursor(Volume volume, long startIndex, boolean topToBottom) {
+            super(volume.total, startIndex);
+            this.volume = volume;
+            this.topToBottom = topToBottom;
+
+            long j = startIndex / volume.sizeY();
+            this.nextX = volume.minX + (int) (j / volume.sizeZ());
+            this.nextY = topToBottom ? volume.maxY - (int) (startIndex % volume.sizeY()) : volume.minY + (int) (startIndex % volume.sizeY());
+            this.nextZ = volume.minZ + (int) (j % volume.sizeZ());
+        }
+
+        @Override
+        protected void advance0() {
+            this.x = this.nextX;
+            this.y = this.nextY;
+            this.z = this.nextZ;
+
+            if (this.topToBottom ? --this.nextY < this.volume.minY : ++this.nextY > this.volume.maxY) {
+                this.nextY = this.topToBottom ? this.volume.maxY : this.volume.minY;
+                if (++this.nextZ > this.volume.maxZ) {
+                    this.nextZ = this.volume.minZ;
+                    this.nextX++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates over vertical columns, visiting the columns along a 2D hilbert curve.
+     *
+     * @author DaPorkchop_
+     */
+    private static final class HilbertColumnCursor extends CubeCursor {
+        private final Volume volume;
+        private final boolean topToBottom;
+        private final Hilbert.Cursor2d columns;
+
+        private int nextY;
+
+        HilbertColumnCursor(Volume volume, long startIndex, boolean topToBottom) {
+            super(volume.total, startIndex);
+            this.volume = volume;
+            this.topToBottom = topToBottom;
+
+            //seek to the column containing the starting index, then skip the part of that column which comes before it
+            this.columns = Hilbert.cursor2d(volume.minX, volume.minZ, volume.sizeX(), volume.sizeZ(), startIndex / volume.sizeY());
+            int skip = (int) (startIndex % volume.sizeY());
+            if (startIndex < volume.total) {
+                this.columns.advance();
+            }
+            this.nextY = topToBottom ? volume.maxY - skip : volume.minY + skip;
+        }
+
+        @Override
+        protected void advance0() {
+            if (this.topToBottom ? this.nextY < this.volume.minY : this.nextY > this.volume.maxY) { //move on to the next column
+                this.columns.advance();
+                this.nextY = this.topToBottom ? this.volume.maxY : this.volume.minY;
+            }
+
+            this.x = this.columns.x();
+            this.y = this.nextY;
+            this.z = this.columns.z();
+            this.nextY += this.topToBottom ? -1 : 1;
+        }
+    }
+
+    /**
+     * Iterates over cubic bricks of {@link #BRICK_SIZE} cubes per side, visiting the bricks along a 3D hilbert curve. Each brick is finished completely before
+     * moving on to the next one, going from top to bottom and X-major and Z-minor within each layer.
+     * <p>
+     * Populating a cube requires its neighbors in the positive directions, and lighting it requires all of its neighbors. A brick is twice as
+     * wide as the area a cube depends on, so most of the cubes which are loaded as dependencies of a brick are in the brick itself, and the rest
+     * are in neighboring bricks, which the hilbert curve visits soon afterwards while they're still loaded.
+     *
+     * @author DaPorkchop_
+     */
+    private static final class BrickCursor extends CubeCursor {
+        private final Volume volume;
+        private final Hilbert.Cursor3d bricks;
+
+        //the bounds of the current brick
+        private int minX;
+        private int maxX;
+        private int minZ;
+        private int maxZ;
+        private int minY;
+
+        private int nextX;
+        private int nextY;
+        private int nextZ;
+
+        BrickCursor(Volume volume, long startIndex) {
+            super(volume.total, startIndex);
+            this.volume = volume;
+            this.bricks = Hilbert.bricks3d(volume.sizeX(), volume.sizeY(), volume.sizeZ(), BRICK_SIZE, startIndex);
+
+            if (startIndex < volume.total) {
+                this.nextBrick();
+
+                //skip the part of the brick which comes before the starting index
+                long skip = this.bricks.startOffset();
+                int layerSize = (this.maxX - this.minX + 1) * (this.maxZ - this.minZ + 1);
+                this.nextY -= (int) (skip / layerSize);
+                this.nextX = this.minX + (int) (skip % layerSize) / (this.maxZ - this.minZ + 1);
+                this.nextZ = this.minZ + (int) (skip % layerSize) % (this.maxZ - this.minZ + 1);
+            }
+        }
+
+        /**
+         * Moves on to the next brick.
+         */
+        private void nextBrick() {
+            this.bricks.advance();
+            Volume volume = this.volume;
+            this.minX = volume.minX + this.bricks.x() * BRICK_SIZE;
+            this.maxX = Math.min(this.minX + BRICK_SIZE - 1, volume.maxX);
+            this.minY = volume.minY + this.bricks.y() * BRICK_SIZE;
+            int maxY = Math.min(this.minY + BRICK_SIZE - 1, volume.maxY);
+            this.minZ = volume.minZ + this.bricks.z() * BRICK_SIZE;
+            this.maxZ = Math.min(this.minZ + BRICK_SIZE - 1, volume.maxZ);
+
+            this.nextX = this.minX;
+            this.nextY = maxY;
+            this.nextZ = this.minZ;
+        }
+
+        @Override
+        protected void advance0() {
+            if (this.nextY < this.minY) { //the current brick is finished
+                this.nextBrick();
+            }
+
+            this.x = this.nextX;
+            this.y = this.nextY;
+            this.z = this.nextZ;
+
+            if (++this.nextZ > this.maxZ) {
+                this.nextZ = this.minZ;
+                if (++this.nextX > this.maxX) {
+                    this.nextX = this.minX;
+                    this.nextY--;
+                }
+            }
+        }
+    }
 }
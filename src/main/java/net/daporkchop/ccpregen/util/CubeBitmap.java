@@ -0,0 +1,143 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package net.daporkchop.ccpregen.util;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/**
+ * A compact set of cube positions inside a {@link Volume}, stored as one bit per position.
+ * <p>
+ * The volume is divided into regions of {@link #REGION_SIZE}^3 cubes, and only regions which contain at least one position use any memory. The
+ * memory usage is therefore proportional to the number of positions in the set (at most 512 bytes per region), rather than to the size of the
+ * volume, which may be far larger.
+ * <p>
+ * The bitmap also covers a margin of cubes around the volume, so that the neighborhood of every position in the volume can be queried. Not
+ * thread-safe.
+ *
+ * @author DaPorkchop_
+ */
+public final class CubeBitmap implements AutoCloseable {
+    private static final int REGION_SHIFT = 4;
+    private static final int REGION_SIZE = 1 << REGION_SHIFT;
+    private static final int REGION_MASK = REGION_SIZE - 1;
+
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final int regionsY;
+    private final int regionsZ;
+
+    //the bits of each region which contains any positions, indexed by the region's position relative to the minimum corner
+    private final Long2ObjectOpenHashMap<long[]> regions = new Long2ObjectOpenHashMap<>();
+    private long count;
+
+    /**
+     * @param volume the volume to cover
+     * @param margin the number of additional cubes to cover on each side of the volume
+     */
+    public CubeBitmap(Volume volume, int margin) {
+        this.minX = volume.minX - margin;
+        this.minY = volume.minY - margin;
+        this.minZ = volume.minZ - margin;
+        this.sizeX = volume.sizeX() + (margin << 1);
+        this.sizeY = volume.sizeY() + (margin << 1);
+        this.sizeZ = volume.sizeZ() + (margin << 1);
+        this.regionsY = (this.sizeY + REGION_MASK) >>> REGION_SHIFT;
+        this.regionsZ = (this.sizeZ + REGION_MASK) >>> REGION_SHIFT;
+    }
+
+    /**
+     * @return the number of positions in this set
+     */
+    public long count() {
+        return this.count;
+    }
+
+    /**
+     * Adds the given position to this set. Positions outside of the covered area are silently ignored.
+     */
+    public void add(int x, int y, int z) {
+        long region = this.region(x, y, z);
+        if (region >= 0L) {
+            long[] bits = this.regions.get(region);
+            if (bits == null) {
+                this.regions.put(region, bits = new long[(REGION_SIZE * REGION_SIZE * REGION_SIZE) >>> 6]);
+            }
+
+            int bit = this.bit(x, y, z);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0L) {
+                bits[bit >>> 6] |= 1L << bit;
+                this.count++;
+            }
+        }
+    }
+
+    /**
+     * @return whether or not this set contains the given position. Always {@code false} for positions outside of the covered area
+     */
+    public boolean contains(int x, int y, int z) {
+        long region = this.region(x, y, z);
+        if (region < 0L) {
+            return false;
+        }
+
+        long[] bits = this.regions.get(region);
+        int bit = this.bit(x, y, z);
+        return bits != null && (bits[bit >>> 6] & (1L << bit)) != 0L;
+    }
+
+    /**
+     * @return whether or not this set contains the given position and all 26 positions surrounding it
+     */
+    public boolean containsNeighborhood(int x, int y, int z) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dz = -1; dz <= 1; dz++) {
+                    if (!this.contains(x + dx, y + dy, z + dz)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private long region(int x, int y, int z) {
+        int dx = x - this.minX;
+        int dy = y - this.minY;
+        int dz = z - this.minZ;
+        if ((dx | dy | dz) < 0 || dx >= this.sizeX || dy >= this.sizeY || dz >= this.sizeZ) {
+            return -1L;
+        }
+        return ((long) (dx >>> REGION_SHIFT) * this.regionsZ + (dz >>> REGION_SHIFT)) * this.regionsY + (dy >>> REGION_SHIFT);
+    }
+
+    private int bit(int x, int y, int z) {
+        return (((x - this.minX) & REGION_MASK) << (REGION_SHIFT << 1)) | (((z - this.minZ) & REGION_MASK) << REGION_SHIFT) | ((y - this.minY) & REGION_MASK);
+    }
+
+    @Override
+    public void close() {
+        this.regions.clear();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A cursor over a sequence of cube positions, such as the positions in a {@link Volume} in the order defined by a {@link CoordinateOrder}.
+ * <p>
+ * Unlike an {@link java.util.Iterator}, a cursor doesn't allocate anything per position. Calling {@link #advance()} moves it to the next position,
+ * whose coordinates may then be read using {@link #x()}, {@link #y()} and {@link #z()} until the next call to {@link #advance()}.
+ * <p>
+ * Cursors are not thread-safe.
+ *
+ * @author DaPorkchop_
+ */
+public abstract class CubeCursor {
+    protected final long total;
+    protected long nextIndex;
+
+    protected int x;
+    protected int y;
+    protected int z;
+
+    protected CubeCursor(long total, long startIndex) {
+        if (startIndex < 0L || startIndex > total) {
+            throw new IndexOutOfBoundsException("startIndex (" + startIndex + ") must be in range [0," + total + ']');
+        }
+
+        this.total = total;
+        this.nextIndex = startIndex;
+    }
+
+    /**
+     * @return whether or not there are any positions remaining
+     */
+    public boolean hasNext() {
+        return this.nextIndex < this.total;
+    }
+
+    /**
+     * Moves this cursor to the next position.
+     *
+     * @throws NoSuchElementException if there are no positions remaining
+     */
+    public void advance() {
+        if (this.nextIndex >= this.total) {
+            throw new NoSuchElementException();
+        }
+
+        this.advance0();
+        this.nextIndex++;
+    }
+
+    /**
+     * Actually moves this cursor to the next position, storing its coordinates into {@link #x}, {@link #y} and {@link #z}.
+     * <p>
+     * Will only be called if there are positions remaining.
+     */
+    protected abstract void advance0();
+
+    /**
+     * @return the X coordinate of the current position
+     */
+    public int x() {
+        return this.x;
+    }
+
+    /**
+     * @return the Y coordinate of the current position
+     */
+    public int y() {
+        return this.y;
+    }
+
+    /**
+     * @return the Z coordinate of the current position
+     */
+    public int z() {
+        return this.z;
+    }
+
+    /**
+     * @return the index of the current position
+     */
+    public long index() {
+        return this.nextIndex - 1L;
+    }
+
+    /**
+     * @return the index of the position which will be returned by the next call to {@link #advance()}
+     */
+    public long nextIndex() {
+        return this.nextIndex;
+    }
+
+    /**
+     * @return the total number of positions in the sequence, including ones which have already been visited
+     */
+    public long total() {
+        return this.total;
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A compact off-heap list of cube positions, which can be sorted in (x, z, -y) order.
+ * <p>
+ * Each position is packed into a single {@code long} (22 bits for X and Z, 20 bits for Y), so the list needs only 8 bytes per position. Packed
+ * positions sort in (x, z, -y) order when compared as unsigned integers, which allows sorting them with a radix sort.
+ *
+ * @author DaPorkchop_
+ */
+public final class CubePositionList implements AutoCloseable {
+    private static final int XZ_BITS = 22;
+    private static final int Y_BITS = 20;
+
+    private static final int MIN_XZ = -(1 << (XZ_BITS - 1));
+    private static final int MAX_XZ = (1 << (XZ_BITS - 1)) - 1;
+    private static final int MIN_Y = -(1 << (Y_BITS - 1));
+    private static final int MAX_Y = (1 << (Y_BITS - 1)) - 1;
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int INSERTION_SORT_THRESHOLD = 64;
+
+    private static final long FILE_MAGIC = 0x4343507265506F73L; //"CCPrePos"
+    private static final int IO_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Packs the given cube position into a {@code long}.
+     *
+     * @throws IllegalArgumentException if the position is out of the supported range
+     */
+    public static long pack(int x, int y, int z) {
+        if (!canPack(x, y, z)) {
+            throw new IllegalArgumentException("cube position out of range: (" + x + ", " + y + ", " + z + ')');
+        }
+        return ((long) (x - MIN_XZ) << (XZ_BITS + Y_BITS)) | ((long) (z - MIN_XZ) << Y_BITS) | (MAX_Y - y); //y is inverted to sort it in descending order
+    }
+
+    /**
+     * @return whether or not the given cube position is in the range supported by {@link #pack(int, int, int)}
+     */
+    public static boolean canPack(int x, int y, int z) {
+        return x >= MIN_XZ && x <= MAX_XZ && z >= MIN_XZ && z <= MAX_XZ && y >= MIN_Y && y <= MAX_Y;
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >>> (XZ_BITS + Y_BITS)) + MIN_XZ;
+    }
+
+    public static int unpackY(long packed) {
+        return MAX_Y - (int) (packed & ((1L << Y_BITS) - 1L));
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) ((packed >>> Y_BITS) & ((1L << XZ_BITS) - 1L)) + MIN_XZ;
+    }
+
+    /**
+     * Reads a list which was previously written using {@link #write(Path)}.
+     *
+     * @param path the file to read from
+     * @return the list
+     */
+    public static CubePositionList read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+            readFully(channel, buf, 16);
+            if (buf.getLong() != FILE_MAGIC) {
+                throw new IOException("invalid file: " + path);
+            }
+
+            long size = buf.getLong();
+            CubePositionList list = new CubePositionList(size);
+            try {
+                for (long i = 0L; i < size; ) {
+                    readFully(channel, buf, (int) Math.min(size - i, IO_BUFFER_SIZE >> 3) << 3);
+                    while (buf.hasRemaining()) {
+                        list.data.set(i++, buf.getLong());
+                    }
+                }
+                list.size = size;
+            } catch (Throwable t) {
+                list.close();
+                throw t;
+            }
+            return list;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, int count) throws IOException {
+        buf.clear().limit(count);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        buf.flip();
+    }
+
+    private final OffHeapLongArray data;
+    private long size;
+
+    public CubePositionList() {
+        this(1024L);
+    }
+
+    private CubePositionList(long initialCapacity) {
+        this.data = new OffHeapLongArray(Math.max(initialCapacity, 1L));
+    }
+
+    /**
+     * @return the number of positions in this list
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Adds a position to the end of this list.
+     *
+     * @throws IllegalArgumentException if the position is out of the supported range
+     */
+    public void add(int x, int y, int z) {
+        long packed = pack(x, y, z);
+        if (this.size == this.data.length()) {
+            this.data.resize(this.data.length() << 1L);
+        }
+        this.data.set(this.size++, packed);
+    }
+
+    /**
+     * @param index the index
+     * @return the packed position at the given index
+     */
+    public long get(long index) {
+        if (index >= this.size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return this.data.get(index);
+    }
+
+    /**
+     * Finds the index of the first position in this list which is greater than or equal to the given packed position. The list must be sorted.
+     *
+     * @param packed the packed position
+     * @return the index of the first position which is greater than or equal to the given one, or {@link #size()} if there is none
+     */
+    public long ceilingIndex(long packed) {
+        long low = 0L;
+        long high = this.size;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(this.data.get(mid), packed) < 0) {
+                low = mid + 1L;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes the contents of this list to the given file, replacing it atomically.
+     *
+     * @param path the file to write to
+     */
+    public void write(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+            buf.putLong(FILE_MAGIC).putLong(this.size);
+            for (long i = 0L; i < this.size; i++) {
+                if (!buf.hasRemaining()) {
+                    writeFully(channel, buf);
+                }
+                buf.putLong(this.data.get(i));
+            }
+            writeFully(channel, buf);
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * Sorts this list in (x, z, -y) order and removes any duplicate positions.
+     * <p>
+     * This uses an in-place MSD radix sort, so no additional memory is needed. Once the positions have been distributed by their most significant
+     * byte, the resulting buckets are sorted in parallel.
+     */
+    public void sort() {
+        if (this.size <= 1L) {
+            return;
+        }
+
+        long[] bounds = new long[RADIX + 1];
+        this.partition(0L, this.size, Long.SIZE - RADIX_BITS, new long[RADIX], bounds);
+        IntStream.range(0, RADIX).parallel().forEach(bucket -> {
+            long[][] scratch = new long[Long.SIZE / RADIX_BITS][RADIX];
+            long[] subBounds = new long[RADIX + 1];
+            this.sort(bounds[bucket], bounds[bucket + 1], Long.SIZE - (RADIX_BITS << 1), scratch, subBounds, 1);
+        });
+
+        //remove duplicates
+        long size = 1L;
+        for (long i = 1L; i < this.size; i++) {
+            long value = this.data.get(i);
+            if (value != this.data.get(size - 1L)) {
+                this.data.set(size++, value);
+            }
+        }
+        this.size = size;
+    }
+
+    private void sort(long from, long to, int shift, long[][] scratch, long[] bounds, int depth) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            this.insertionSort(from, to);
+            return;
+        }
+
+        this.partition(from, to, shift, scratch[depth], bounds);
+        if (shift > 0) {
+            //the bounds array is reused by the recursive calls, so we have to remember the bucket boundaries somewhere else
+            long[] ends = scratch[depth];
+            System.arraycopy(bounds, 1, ends, 0, RADIX);
+
+            long start = from;
+            for (int bucket = 0; bucket < RADIX; bucket++) {
+                long end = ends[bucket];
+                if (end - start > 1L) {
+                    this.sort(start, end, shift - RADIX_BITS, scratch, bounds, depth + 1);
+                }
+                start = end;
+            }
+        }
+    }
+
+    /**
+     * Distributes all values in the given range into buckets according to the byte at the given shift.
+     *
+     * @param heads  a scratch array with length {@link #RADIX}
+     * @param bounds an array with length {@link #RADIX} + 1, which will be set to the start index of each bucket followed by the end index of the
+     *               last bucket
+     */
+    private void partition(long from, long to, int shift, long[] heads, long[] bounds) {
+        OffHeapLongArray data = this.data;
+
+        //count the number of values in each bucket
+        long[] counts = bounds;
+        Arrays.fill(counts, 0L);
+        for (long i = from; i < to; i++) {
+            counts[(int) (data.get(i) >>> shift) & (RADIX - 1)]++;
+        }
+
+        //compute bucket boundaries
+        long pos = from;
+        for (int bucket = 0; bucket < RADIX; bucket++) {
+            long count = counts[bucket];
+            heads[bucket] = bounds[bucket] = pos;
+            pos += count;
+        }
+        bounds[RADIX] = to;
+
+        //move every value into its bucket by following cycles of displaced values
+        for (int bucket = 0; bucket < RADIX; bucket++) {
+            long end = bounds[bucket + 1];
+            while (heads[bucket] < end) {
+                long value = data.get(heads[bucket]);
+                int digit = (int) (value >>> shift) & (RADIX - 1);
+                while (digit != bucket) {
+                    long displaced = data.get(heads[digit]);
+                    data.set(heads[digit]++, value);
+                    value = displaced;
+                    digit = (int) (value >>> shift) & (RADIX - 1);
+                }
+                data.set(heads[bucket]++, value);
+            }
+        }
+    }
+
+    private void insertionSort(long from, long to) {
+        OffHeapLongArray data = this.data;
+        for (long i = from + 1L; i < to; i++) {
+            long value = data.get(i);
+            long j = i - 1L;
+            for (; j >= from && Long.compareUnsigned(data.get(j), value) > 0; j--) {
+                data.set(j + 1L, data.get(j));
+            }
+            data.set(j + 1L, value);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.data.close();
+    }
+}
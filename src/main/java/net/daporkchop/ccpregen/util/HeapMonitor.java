@@ -0,0 +1,169 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.util;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how full the heap is after garbage collection.
+ * <p>
+ * The amount of used heap memory at an arbitrary point in time is mostly garbage which will be freed by the next collection, so it can't be used
+ * to decide whether memory is running out. Instead, the usage of every heap pool except for the young generation's eden space (which is refilled
+ * with new allocations immediately after every collection) is taken as of the end of the most recent collection of any kind. It is reported by
+ * the JVM's garbage collection notifications ({@link GarbageCollectionNotificationInfo}), which are registered once and shared by all instances.
+ * <p>
+ * If the JVM doesn't send those notifications, {@link MemoryPoolMXBean#getCollectionUsage()} is used instead. It isn't reliable on its own:
+ * on Java 8, G1 only updates it for the old generation after a full collection (JDK-8195115), so it would stay at whatever it was after the
+ * last full collection (if there ever was one) while young and mixed collections happen. Whenever it hasn't changed since the previous sample,
+ * the pool's current usage is used instead. Old generation pools are only filled up by collections, so this is very close to their usage after
+ * the most recent one.
+ * <p>
+ * Either way, old generation pools may still contain garbage which was promoted and hasn't been found by a mixed or full collection yet. This
+ * only makes the measurement err on the side of the heap being fuller than it actually is.
+ * <p>
+ * Tests may override {@link #poll()} and {@link #occupancy()} to simulate a heap.
+ *
+ * @author DaPorkchop_
+ */
+public class HeapMonitor {
+    private static final List<GarbageCollectorMXBean> COLLECTORS = ManagementFactory.getGarbageCollectorMXBeans();
+    private static final List<MemoryPoolMXBean> POOLS = new ArrayList<>();
+    private static final long MAX_HEAP;
+
+    //the number of garbage collection notifications which have been received so far, or -1 if they aren't supported by the JVM
+    private static volatile long notifications = -1L;
+    //the heap usage reported by the most recent garbage collection notification
+    private static volatile long notifiedUsed;
+
+    static {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && !pool.getName().contains("Eden")) {
+                POOLS.add(pool);
+            }
+        }
+
+        long maxHeap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+        MAX_HEAP = maxHeap > 0L ? maxHeap : Runtime.getRuntime().maxMemory();
+
+        if (supportsNotifications()) {
+            for (GarbageCollectorMXBean collector : COLLECTORS) {
+                if (collector instanceof NotificationEmitter) {
+                    ((NotificationEmitter) collector).addNotificationListener(HeapMonitor::collected, null, null);
+                    notifications = 0L;
+                }
+            }
+        }
+    }
+
+    private static boolean supportsNotifications() {
+        try {
+            Class.forName("com.sun.management.GarbageCollectionNotificationInfo");
+            return true;
+        } catch (ClassNotFoundException e) { //not a HotSpot-based JVM
+            return false;
+        }
+    }
+
+    private static synchronized void collected(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+
+        Map<String, MemoryUsage> after = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo().getMemoryUsageAfterGc();
+        long used = 0L;
+        for (MemoryPoolMXBean pool : POOLS) {
+            MemoryUsage usage = after.get(pool.getName());
+            used += (usage != null ? usage : pool.getUsage()).getUsed();
+        }
+        notifiedUsed = used;
+        notifications++; //written last, so that a reader which sees the new count also sees the new usage
+    }
+
+    private final long[] lastCollectionUsed = new long[POOLS.size()];
+    private long lastCollections = -1L;
+    private double occupancy;
+
+    public HeapMonitor() {
+        for (int i = 0; i < this.lastCollectionUsed.length; i++) {
+            MemoryUsage usage = POOLS.get(i).getCollectionUsage();
+            this.lastCollectionUsed[i] = usage != null ? usage.getUsed() : -1L;
+        }
+    }
+
+    /**
+     * Checks whether a garbage collection has happened since the previous call, and if so, updates {@link #occupancy()}.
+     *
+     * @return whether or not a new sample was taken
+     */
+    public boolean poll() {
+        long notifications = HeapMonitor.notifications;
+        if (notifications >= 0L) {
+            if (notifications == this.lastCollections) {
+                return false;
+            }
+            this.lastCollections = notifications;
+            this.occupancy = notifiedUsed / (double) MAX_HEAP;
+            return true;
+        }
+
+        long collections = 0L;
+        for (GarbageCollectorMXBean collector : COLLECTORS) {
+            collections += Math.max(collector.getCollectionCount(), 0L);
+        }
+        if (collections == this.lastCollections) {
+            return false;
+        }
+        this.lastCollections = collections;
+
+        long used = 0L;
+        for (int i = 0; i < this.lastCollectionUsed.length; i++) {
+            MemoryPoolMXBean pool = POOLS.get(i);
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getUsed() != this.lastCollectionUsed[i]) { //the pool was actually collected since the previous sample
+                this.lastCollectionUsed[i] = usage.getUsed();
+                used += usage.getUsed();
+            } else { //the usage after collection is stale or not supported
+                used += pool.getUsage().getUsed();
+            }
+        }
+        this.occupancy = used / (double) MAX_HEAP;
+        return true;
+    }
+
+    /**
+     * @return the fraction of the maximum heap size which was in use after the most recent garbage collection, as of the last call to {@link #poll()}
+     */
+    public double occupancy() {
+        return this.occupancy;
+    }
+}
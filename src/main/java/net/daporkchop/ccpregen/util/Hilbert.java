@@ -24,6 +24,8 @@ import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
 import lombok.experimental.UtilityClass;
 import net.minecraft.util.math.ChunkPos;
 
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 import java.util.function.Supplier;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -38,17 +40,30 @@ import static java.lang.Math.*;
 @UtilityClass
 public class Hilbert {
     public static Stream<ChunkPos> hilbert2d(int x, int z, int sizeX, int sizeZ) {
+        return hilbert2d(x, z, sizeX, sizeZ, 0L);
+    }
+
+    /**
+     * Gets a {@link Stream} over the positions of a 2D hilbert curve, starting at the given index along the curve.
+     * <p>
+     * Sub-curves which lie entirely before the starting index are never generated, so seeking is logarithmic in the size of the area.
+     */
+    public static Stream<ChunkPos> hilbert2d(int x, int z, int sizeX, int sizeZ, long startIndex) {
         if (sizeX >= sizeZ) {
-            return generate2d(x, z, sizeX, 0, 0, sizeZ).get();
+            return generate2d(x, z, sizeX, 0, 0, sizeZ, startIndex).get();
         } else {
-            return generate2d(x, z, 0, sizeZ, sizeX, 0).get();
+            return generate2d(x, z, 0, sizeZ, sizeX, 0, startIndex).get();
         }
     }
 
-    private static Supplier<Stream<ChunkPos>> generate2d(int x, int y, int ax, int ay, int bx, int by) {
+    private static Supplier<Stream<ChunkPos>> generate2d(int x, int y, int ax, int ay, int bx, int by, long skip) {
         int w = abs(ax + ay);
         int h = abs(bx + by);
 
+        if (skip >= (long) w * h) { //the whole curve is before the starting index
+            return Stream::empty;
+        }
+
         int dax = sgn(ax);
         int day = sgn(ay);
         int dbx = sgn(bx);
@@ -56,9 +71,9 @@ public class Hilbert {
 
         //trivial row/column fills
         if (h == 1) {
-            return () -> IntStream.range(0, w).mapToObj(i -> new ChunkPos(x + i * dax, y + i * day));
+            return () -> IntStream.range((int) skip, w).mapToObj(i -> new ChunkPos(x + i * dax, y + i * day));
         } else if (w == 1) {
-            return () -> IntStream.range(0, h).mapToObj(i -> new ChunkPos(x + i * dbx, y + i * dby));
+            return () -> IntStream.range((int) skip, h).mapToObj(i -> new ChunkPos(x + i * dbx, y + i * dby));
         }
 
         int ax2 = ax >> 1;
@@ -87,43 +102,158 @@ public class Hilbert {
         int f_bx2 = bx2;
         int f_by2 = by2;
 
+        //each sub-curve skips whatever part of the starting index wasn't already consumed by the ones before it
         if (w * 2 > h * 3) {
+            long skip1 = max(skip - count2d(f_ax2, f_ay2, bx, by), 0L);
             return () -> concat(
-                    generate2d(x, y, f_ax2, f_ay2, bx, by),
-                    generate2d(x + f_ax2, y + f_ay2, ax - f_ax2, ay - f_ay2, bx, by));
+                    generate2d(x, y, f_ax2, f_ay2, bx, by, skip),
+                    generate2d(x + f_ax2, y + f_ay2, ax - f_ax2, ay - f_ay2, bx, by, skip1));
         } else {
+            long skip1 = max(skip - count2d(f_bx2, f_by2, f_ax2, f_ay2), 0L);
+            long skip2 = max(skip1 - count2d(ax, ay, bx - f_bx2, by - f_by2), 0L);
             return () -> concat(
-                    generate2d(x, y, f_bx2, f_by2, f_ax2, f_ay2),
-                    generate2d(x + f_bx2, y + f_by2, ax, ay, bx - f_bx2, by - f_by2),
+                    generate2d(x, y, f_bx2, f_by2, f_ax2, f_ay2, skip),
+                    generate2d(x + f_bx2, y + f_by2, ax, ay, bx - f_bx2, by - f_by2, skip1),
                     generate2d(x + (ax - dax) + (f_bx2 - dbx), y + (ay - day) + (f_by2 - dby),
-                            -f_bx2, -f_by2, -(ax - f_ax2), -(ay - f_ay2)));
+                            -f_bx2, -f_by2, -(ax - f_ax2), -(ay - f_ay2), skip2));
+        }
+    }
+
+    /**
+     * Gets the index of the given position along the 2D hilbert curve returned by {@link #hilbert2d(int, int, int, int, long)}.
+     * <p>
+     * Only the sub-curves containing the position are visited, so this is logarithmic in the size of the area.
+     *
+     * @throws IndexOutOfBoundsException if the position isn't inside the area
+     */
+    public static long index2d(int x, int z, int sizeX, int sizeZ, int posX, int posZ) {
+        if (posX < x || posX - x >= sizeX || posZ < z || posZ - z >= sizeZ) {
+            throw new IndexOutOfBoundsException("(" + posX + ", " + posZ + ") is outside of the area");
+        } else if (sizeX >= sizeZ) {
+            return index2d(x, z, sizeX, 0, 0, sizeZ, posX, posZ);
+        } else {
+            return index2d(x, z, 0, sizeZ, sizeX, 0, posX, posZ);
+        }
+    }
+
+    private static long index2d(int x, int y, int ax, int ay, int bx, int by, int px, int py) {
+        //this follows the same subdivisions as generate2d, but only descends into the sub-curve containing the position and adds up the sizes
+        // of the sub-curves before it
+        long index = 0L;
+        while (true) {
+            int w = abs(ax + ay);
+            int h = abs(bx + by);
+
+            int dax = sgn(ax);
+            int day = sgn(ay);
+            int dbx = sgn(bx);
+            int dby = sgn(by);
+
+            //trivial row/column fills
+            if (h == 1) {
+                return index + (px - x) * dax + (py - y) * day;
+            } else if (w == 1) {
+                return index + (px - x) * dbx + (py - y) * dby;
+            }
+
+            int ax2 = ax >> 1;
+            int ay2 = ay >> 1;
+            int bx2 = bx >> 1;
+            int by2 = by >> 1;
+
+            int w2 = abs(ax2 + ay2);
+            int h2 = abs(bx2 + by2);
+
+            //prefer even steps
+            if ((w2 & 1) != 0 && w > 2) {
+                ax2 += dax;
+                ay2 += day;
+            }
+            if ((h2 & 1) != 0 && h > 2) {
+                bx2 += dbx;
+                by2 += dby;
+            }
+
+            if (w * 2 > h * 3) {
+                if (contains2d(x, y, ax2, ay2, bx, by, px, py)) {
+                    ax = ax2;
+                    ay = ay2;
+                } else {
+                    index += count2d(ax2, ay2, bx, by);
+                    x += ax2;
+                    y += ay2;
+                    ax -= ax2;
+                    ay -= ay2;
+                }
+            } else if (contains2d(x, y, bx2, by2, ax2, ay2, px, py)) {
+                bx = ax2;
+                by = ay2;
+                ax = bx2;
+                ay = by2;
+            } else if (contains2d(x + bx2, y + by2, ax, ay, bx - bx2, by - by2, px, py)) {
+                index += count2d(bx2, by2, ax2, ay2);
+                x += bx2;
+                y += by2;
+                bx -= bx2;
+                by -= by2;
+            } else {
+                index += count2d(bx2, by2, ax2, ay2) + count2d(ax, ay, bx - bx2, by - by2);
+                x += (ax - dax) + (bx2 - dbx);
+                y += (ay - day) + (by2 - dby);
+                int nbx = -(ax - ax2);
+                int nby = -(ay - ay2);
+                ax = -bx2;
+                ay = -by2;
+                bx = nbx;
+                by = nby;
+            }
         }
     }
 
+    private static boolean contains2d(int x, int y, int ax, int ay, int bx, int by, int px, int py) {
+        //the curve's axes are both axis-aligned, so the position's coordinates along each of them are enough
+        long i = (long) (px - x) * sgn(ax) + (long) (py - y) * sgn(ay);
+        long j = (long) (px - x) * sgn(bx) + (long) (py - y) * sgn(by);
+        return i >= 0L && i < abs(ax + ay) && j >= 0L && j < abs(bx + by);
+    }
+
     public static Stream<CubePos> hilbert3d(int x, int y, int z, int sizeX, int sizeY, int sizeZ) {
+        return hilbert3d(x, y, z, sizeX, sizeY, sizeZ, 0L);
+    }
+
+    /**
+     * Gets a {@link Stream} over the positions of a 3D hilbert curve, starting at the given index along the curve.
+     * <p>
+     * Sub-curves which lie entirely before the starting index are never generated, so seeking is logarithmic in the size of the volume.
+     */
+    public static Stream<CubePos> hilbert3d(int x, int y, int z, int sizeX, int sizeY, int sizeZ, long startIndex) {
         if (sizeX >= max(sizeY, sizeZ)) {
             return generate3d(x, y, z,
                     sizeX, 0, 0,
                     0, sizeY, 0,
-                    0, 0, sizeZ).get();
+                    0, 0, sizeZ, startIndex).get();
         } else if (sizeY >= max(sizeX, sizeZ)) {
             return generate3d(x, y, z,
                     0, sizeY, 0,
                     sizeX, 0, 0,
-                    0, 0, sizeZ).get();
+                    0, 0, sizeZ, startIndex).get();
         } else {
             return generate3d(x, y, z,
                     0, 0, sizeZ,
                     sizeX, 0, 0,
-                    0, sizeY, 0).get();
+                    0, sizeY, 0, startIndex).get();
         }
     }
 
-    private static Supplier<Stream<CubePos>> generate3d(int x, int y, int z, int ax, int ay, int az, int bx, int by, int bz, int cx, int cy, int cz) {
+    private static Supplier<Stream<CubePos>> generate3d(int x, int y, int z, int ax, int ay, int az, int bx, int by, int bz, int cx, int cy, int cz, long skip) {
         int w = abs(ax + ay + az);
         int h = abs(bx + by + bz);
         int d = abs(cx + cy + cz);
 
+        if (skip >= (long) w * h * d) { //the whole curve is before the starting index
+            return Stream::empty;
+        }
+
         int dax = sgn(ax);
         int day = sgn(ay);
         int daz = sgn(az);
@@ -136,11 +266,11 @@ public class Hilbert {
 
         //trivial row/column fills
         if (h == 1 && d == 1) {
-            return () -> IntStream.range(0, w).mapToObj(i -> new CubePos(x + i * dax, y + i * day, z + i * daz));
+            return () -> IntStream.range((int) skip, w).mapToObj(i -> new CubePos(x + i * dax, y + i * day, z + i * daz));
         } else if (w == 1 && d == 1) {
-            return () -> IntStream.range(0, h).mapToObj(i -> new CubePos(x + i * dbx, y + i * dby, z + i * dbz));
+            return () -> IntStream.range((int) skip, h).mapToObj(i -> new CubePos(x + i * dbx, y + i * dby, z + i * dbz));
         } else if (w == 1 && h == 1) {
-            return () -> IntStream.range(0, d).mapToObj(i -> new CubePos(x + i * dcx, y + i * dcy, z + i * dcz));
+            return () -> IntStream.range((int) skip, d).mapToObj(i -> new CubePos(x + i * dcx, y + i * dcy, z + i * dcz));
         }
 
         int ax2 = ax >> 1;
@@ -186,79 +316,140 @@ public class Hilbert {
         int f_cy2 = cy2;
         int f_cz2 = cz2;
 
+        //each sub-curve skips whatever part of the starting index wasn't already consumed by the ones before it
         if (w * 2 > h * 3 && w * 2 > d * 3) { //wide case, split in w only
+            long skip1 = max(skip - count3d(f_ax2, f_ay2, f_az2, bx, by, bz, cx, cy, cz), 0L);
             return () -> concat(
                     generate3d(x, y, z,
                             f_ax2, f_ay2, f_az2,
                             bx, by, bz,
-                            cx, cy, cz),
+                            cx, cy, cz, skip),
                     generate3d(x + f_ax2, y + f_ay2, z + f_az2,
                             ax - f_ax2, ay - f_ay2, az - f_az2,
                             bx, by, bz,
-                            cx, cy, cz));
+                            cx, cy, cz, skip1));
         } else if (h * 3 > d * 4) { //do not split in d
+            long skip1 = max(skip - count3d(f_bx2, f_by2, f_bz2, cx, cy, cz, f_ax2, f_ay2, f_az2), 0L);
+            long skip2 = max(skip1 - count3d(ax, ay, az, bx - f_bx2, by - f_by2, bz - f_bz2, cx, cy, cz), 0L);
             return () -> concat(
                     generate3d(x, y, z,
                             f_bx2, f_by2, f_bz2,
                             cx, cy, cz,
-                            f_ax2, f_ay2, f_az2),
+                            f_ax2, f_ay2, f_az2, skip),
                     generate3d(x + f_bx2, y + f_by2, z + f_bz2,
                             ax, ay, az,
                             bx - f_bx2, by - f_by2, bz - f_bz2,
-                            cx, cy, cz),
+                            cx, cy, cz, skip1),
                     generate3d(x + (ax - dax) + (f_bx2 - dbx),
                             y + (ay - day) + (f_by2 - dby),
                             z + (az - daz) + (f_bz2 - dbz),
                             -f_bx2, -f_by2, -f_bz2,
                             cx, cy, cz,
-                            -(ax - f_ax2), -(ay - f_ay2), -(az - f_az2)));
+                            -(ax - f_ax2), -(ay - f_ay2), -(az - f_az2), skip2));
         } else if (d * 3 > h * 4) { //do not split in h
+            long skip1 = max(skip - count3d(f_cx2, f_cy2, f_cz2, f_ax2, f_ay2, f_az2, bx, by, bz), 0L);
+            long skip2 = max(skip1 - count3d(ax, ay, az, bx, by, bz, cx - f_cx2, cy - f_cy2, cz - f_cz2), 0L);
             return () -> concat(
                     generate3d(x, y, z,
                             f_cx2, f_cy2, f_cz2,
                             f_ax2, f_ay2, f_az2,
-                            bx, by, bz),
+                            bx, by, bz, skip),
                     generate3d(x + f_cx2, y + f_cy2, z + f_cz2,
                             ax, ay, az,
                             bx, by, bz,
-                            cx - f_cx2, cy - f_cy2, cz - f_cz2),
+                            cx - f_cx2, cy - f_cy2, cz - f_cz2, skip1),
                     generate3d(x + (ax - dax) + (f_cx2 - dcx),
                             y + (ay - day) + (f_cy2 - dcy),
                             z + (az - daz) + (f_cz2 - dcz),
                             -f_cx2, -f_cy2, -f_cz2,
                             -(ax - f_ax2), -(ay - f_ay2), -(az - f_az2),
-                            bx, by, bz));
+                            bx, by, bz, skip2));
         } else { //regular case, split in all w/h/d
+            long skip1 = max(skip - count3d(f_bx2, f_by2, f_bz2, f_cx2, f_cy2, f_cz2, f_ax2, f_ay2, f_az2), 0L);
+            long skip2 = max(skip1 - count3d(cx, cy, cz, f_ax2, f_ay2, f_az2, bx - f_bx2, by - f_by2, bz - f_bz2), 0L);
+            long skip3 = max(skip2 - count3d(ax, ay, az, -f_bx2, -f_by2, -f_bz2, -(cx - f_cx2), -(cy - f_cy2), -(cz - f_cz2)), 0L);
+            long skip4 = max(skip3 - count3d(-cx, -cy, -cz, -(ax - f_ax2), -(ay - f_ay2), -(az - f_az2), bx - f_bx2, by - f_by2, bz - f_bz2), 0L);
             return () -> concat(
                     generate3d(x, y, z,
                             f_bx2, f_by2, f_bz2,
                             f_cx2, f_cy2, f_cz2,
-                            f_ax2, f_ay2, f_az2),
+                            f_ax2, f_ay2, f_az2, skip),
                     generate3d(x + f_bx2, y + f_by2, z + f_bz2,
                             cx, cy, cz,
                             f_ax2, f_ay2, f_az2,
-                            bx - f_bx2, by - f_by2, bz - f_bz2),
+                            bx - f_bx2, by - f_by2, bz - f_bz2, skip1),
                     generate3d(x + (f_bx2 - dbx) + (cx - dcx),
                             y + (f_by2 - dby) + (cy - dcy),
                             z + (f_bz2 - dbz) + (cz - dcz),
                             ax, ay, az,
                             -f_bx2, -f_by2, -f_bz2,
-                            -(cx - f_cx2), -(cy - f_cy2), -(cz - f_cz2)),
+                            -(cx - f_cx2), -(cy - f_cy2), -(cz - f_cz2), skip2),
                     generate3d(x + (ax - dax) + f_bx2 + (cx - dcx),
                             y + (ay - day) + f_by2 + (cy - dcy),
                             z + (az - daz) + f_bz2 + (cz - dcz),
                             -cx, -cy, -cz,
                             -(ax - f_ax2), -(ay - f_ay2), -(az - f_az2),
-                            bx - f_bx2, by - f_by2, bz - f_bz2),
+                            bx - f_bx2, by - f_by2, bz - f_bz2, skip3),
                     generate3d(x + (ax - dax) + (f_bx2 - dbx),
                             y + (ay - day) + (f_by2 - dby),
                             z + (az - daz) + (f_bz2 - dbz),
                             -f_bx2, -f_by2, -f_bz2,
                             f_cx2, f_cy2, f_cz2,
-                            -(ax - f_ax2), -(ay - f_ay2), -(az - f_az2)));
+                            -(ax - f_ax2), -(ay - f_ay2), -(az - f_az2), skip4));
         }
     }
 
+    /**
+     * Gets a {@link Cursor2d} over the positions of a 2D hilbert curve, starting at the given index along the curve.
+     * <p>
+     * The positions are returned in exactly the same order as by {@link #hilbert2d(int, int, int, int, long)}.
+     */
+    public static Cursor2d cursor2d(int x, int z, int sizeX, int sizeZ, long startIndex) {
+        return new Cursor2d(x, z, sizeX, sizeZ, startIndex);
+    }
+
+    /**
+     * Gets a {@link CubeCursor} over the positions of a 3D hilbert curve, starting at the given index along the curve.
+     * <p>
+     * The positions are returned in exactly the same order as by {@link #hilbert3d(int, int, int, int, int, int, long)}.
+     */
+    public static CubeCursor cursor3d(int x, int y, int z, int sizeX, int sizeY, int sizeZ, long startIndex) {
+        return new Cursor3d(x, y, z, sizeX, sizeY, sizeZ, startIndex);
+    }
+
+    /**
+     * Gets a cursor over the bricks of a 3D hilbert curve over a volume of the given size (in cubes), which is divided into bricks of
+     * {@code brickSize}^3 cubes, starting at the brick containing the cube with the given index when all cubes in a brick are visited before moving on
+     * to the next one.
+     * <p>
+     * The bricks along the upper edge of each axis are smaller if the volume's size isn't a multiple of the brick size. Seeking takes this into
+     * account without visiting the bricks before the starting index, so it is still logarithmic in the size of the volume. The number of cubes in the
+     * first brick which come before the starting index is given by {@link Cursor3d#startOffset()}.
+     */
+    static Cursor3d bricks3d(int sizeX, int sizeY, int sizeZ, int brickSize, long startIndex) {
+        return new Cursor3d(sizeX, sizeY, sizeZ, brickSize, startIndex);
+    }
+
+    /**
+     * Gets the index of the first cube in the given brick when visiting the bricks in the order returned by
+     * {@link #bricks3d(int, int, int, int, long)}, which is the total number of cubes in all of the bricks before it.
+     * <p>
+     * Only the sub-curves containing the brick are visited, so this is logarithmic in the size of the volume.
+     *
+     * @throws IndexOutOfBoundsException if the brick isn't inside the volume
+     */
+    static long brickIndex3d(int sizeX, int sizeY, int sizeZ, int brickSize, int brickX, int brickY, int brickZ) {
+        return new Cursor3d(sizeX, sizeY, sizeZ, brickSize, (long) sizeX * sizeY * sizeZ).brickIndex(brickX, brickY, brickZ);
+    }
+
+    private static long count2d(int ax, int ay, int bx, int by) {
+        return (long) abs(ax + ay) * abs(bx + by);
+    }
+
+    private static long count3d(int ax, int ay, int az, int bx, int by, int bz, int cx, int cy, int cz) {
+        return (long) abs(ax + ay + az) * abs(bx + by + bz) * abs(cx + cy + cz);
+    }
+
     private static int sgn(int i) {
         return min(max(i, -1), 1);
     }
@@ -267,4 +458,647 @@ public class Hilbert {
     private static <T> Stream<T> concat(Supplier<Stream<T>>... args) {
         return Stream.of(args).flatMap(Supplier::get);
     }
+
+    /**
+     * Allocation-free equivalent of {@link #hilbert2d(int, int, int, int, long)}.
+     * <p>
+     * Rather than recursing, sub-curves which haven't been visited yet are kept on an explicit stack. Only the first position of each sub-curve
+     * requires any real work, all others simply step along a straight line.
+     *
+     * @author DaPorkchop_
+     */
+    public static final class Cursor2d {
+        private static final int FRAME = 6; //x, y, ax, ay, bx, by
+
+        private final long total;
+        private long nextIndex;
+
+        private int x;
+        private int z;
+
+        private int[] stack = new int[FRAME * 16];
+        private int stackSize;
+        private final int[] children = new int[FRAME * 3];
+
+        //the straight line currently being followed
+        private int lineX;
+        private int lineZ;
+        private int lineDx;
+        private int lineDz;
+        private int lineRemaining;
+
+        private Cursor2d(int x, int z, int sizeX, int sizeZ, long startIndex) {
+            this.total = (long) sizeX * sizeZ;
+            if (startIndex < 0L || startIndex > this.total) {
+                throw new IndexOutOfBoundsException("startIndex (" + startIndex + ") must be in range [0," + this.total + ']');
+            }
+            this.nextIndex = startIndex;
+
+            if (startIndex < this.total) {
+                if (sizeX >= sizeZ) {
+                    this.descend(x, z, sizeX, 0, 0, sizeZ, startIndex);
+                } else {
+                    this.descend(x, z, 0, sizeZ, sizeX, 0, startIndex);
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return this.nextIndex < this.total;
+        }
+
+        public void advance() {
+            if (this.nextIndex >= this.total) {
+                throw new NoSuchElementException();
+            }
+
+            if (this.lineRemaining == 0) { //the current line is finished, begin the next sub-curve
+                int[] stack = this.stack;
+                int p = this.stackSize -= FRAME;
+                this.descend(stack[p], stack[p + 1], stack[p + 2], stack[p + 3], stack[p + 4], stack[p + 5], 0L);
+            }
+
+            this.x = this.lineX;
+            this.z = this.lineZ;
+            this.lineX += this.lineDx;
+            this.lineZ += this.lineDz;
+            this.lineRemaining--;
+            this.nextIndex++;
+        }
+
+        public int x() {
+            return this.x;
+        }
+
+        public int z() {
+            return this.z;
+        }
+
+        public long nextIndex() {
+            return this.nextIndex;
+        }
+
+        /**
+         * Splits the given curve until reaching the straight line containing the position at the given index, pushing all sub-curves which come after
+         * it onto the stack.
+         */
+        private void descend(int x, int y, int ax, int ay, int bx, int by, long skip) {
+            int[] c = this.children;
+            while (true) {
+                int w = abs(ax + ay);
+                int h = abs(bx + by);
+
+                int dax = sgn(ax);
+                int day = sgn(ay);
+                int dbx = sgn(bx);
+                int dby = sgn(by);
+
+                //trivial row/column fills
+                if (h == 1) {
+                    this.line(x, y, dax, day, w, (int) skip);
+                    return;
+                } else if (w == 1) {
+                    this.line(x, y, dbx, dby, h, (int) skip);
+                    return;
+                }
+
+                int ax2 = ax >> 1;
+                int ay2 = ay >> 1;
+                int bx2 = bx >> 1;
+                int by2 = by >> 1;
+
+                int w2 = abs(ax2 + ay2);
+                int h2 = abs(bx2 + by2);
+
+                //prefer even steps
+                if ((w2 & 1) != 0 && w > 2) {
+                    ax2 += dax;
+                    ay2 += day;
+                }
+                if ((h2 & 1) != 0 && h > 2) {
+                    bx2 += dbx;
+                    by2 += dby;
+                }
+
+                int n;
+                if (w * 2 > h * 3) {
+                    frame(c, 0, x, y, ax2, ay2, bx, by);
+                    frame(c, 1, x + ax2, y + ay2, ax - ax2, ay - ay2, bx, by);
+                    n = 2;
+                } else {
+                    frame(c, 0, x, y, bx2, by2, ax2, ay2);
+                    frame(c, 1, x + bx2, y + by2, ax, ay, bx - bx2, by - by2);
+                    frame(c, 2, x + (ax - dax) + (bx2 - dbx), y + (ay - day) + (by2 - dby),
+                            -bx2, -by2, -(ax - ax2), -(ay - ay2));
+                    n = 3;
+                }
+
+                //find the sub-curve containing the starting index
+                int i = 0;
+                for (long count; skip >= (count = count2d(c[i * FRAME + 2], c[i * FRAME + 3], c[i * FRAME + 4], c[i * FRAME + 5])); i++) {
+                    skip -= count;
+                }
+
+                //push all the sub-curves after it in reverse order, so that they'll be popped in the correct order
+                for (int j = n - 1; j > i; j--) {
+                    if (count2d(c[j * FRAME + 2], c[j * FRAME + 3], c[j * FRAME + 4], c[j * FRAME + 5]) != 0L) {
+                        this.push(c, j);
+                    }
+                }
+
+                int o = i * FRAME;
+                x = c[o];
+                y = c[o + 1];
+                ax = c[o + 2];
+                ay = c[o + 3];
+                bx = c[o + 4];
+                by = c[o + 5];
+            }
+        }
+
+        private void line(int x, int z, int dx, int dz, int length, int skip) {
+            this.lineX = x + skip * dx;
+            this.lineZ = z + skip * dz;
+            this.lineDx = dx;
+            this.lineDz = dz;
+            this.lineRemaining = length - skip;
+        }
+
+        private void push(int[] src, int i) {
+            if (this.stackSize + FRAME > this.stack.length) {
+                this.stack = Arrays.copyOf(this.stack, this.stack.length << 1);
+            }
+            System.arraycopy(src, i * FRAME, this.stack, this.stackSize, FRAME);
+            this.stackSize += FRAME;
+        }
+
+        private static void frame(int[] dst, int i, int x, int y, int ax, int ay, int bx, int by) {
+            int o = i * FRAME;
+            dst[o] = x;
+            dst[o + 1] = y;
+            dst[o + 2] = ax;
+            dst[o + 3] = ay;
+            dst[o + 4] = bx;
+            dst[o + 5] = by;
+        }
+    }
+
+    /**
+     * Allocation-free equivalent of {@link #hilbert3d(int, int, int, int, int, int, long)}.
+     *
+     * @author DaPorkchop_
+     * @see Cursor2d
+     */
+    static final class Cursor3d extends CubeCursor {
+        private static final int FRAME = 12; //x, y, z, ax, ay, az, bx, by, bz, cx, cy, cz
+
+        //only set for cursors over bricks, see bricks3d()
+        private final int brickSize;
+        private final int cubesX;
+        private final int cubesY;
+        private final int cubesZ;
+        private long startOffset;
+
+        private int[] stack = new int[FRAME * 16];
+        private int stackSize;
+        private final int[] children = new int[FRAME * 5];
+
+        //the straight line currently being followed
+        private int lineX;
+        private int lineY;
+        private int lineZ;
+        private int lineDx;
+        private int lineDy;
+        private int lineDz;
+        private int lineRemaining;
+
+        private Cursor3d(int x, int y, int z, int sizeX, int sizeY, int sizeZ, long startIndex) {
+            super((long) sizeX * sizeY * sizeZ, startIndex);
+            this.brickSize = 0;
+            this.cubesX = this.cubesY = this.cubesZ = 0;
+
+            if (startIndex < this.total) {
+                this.begin(x, y, z, sizeX, sizeY, sizeZ, startIndex);
+            }
+        }
+
+        private Cursor3d(int cubesX, int cubesY, int cubesZ, int brickSize, long startIndex) {
+            super((long) bricks(cubesX, brickSize) * bricks(cubesY, brickSize) * bricks(cubesZ, brickSize), 0L);
+            this.brickSize = brickSize;
+            this.cubesX = cubesX;
+            this.cubesY = cubesY;
+            this.cubesZ = cubesZ;
+
+            long totalCubes = (long) cubesX * cubesY * cubesZ;
+            if (startIndex < 0L || startIndex > totalCubes) {
+                throw new IndexOutOfBoundsException("startIndex (" + startIndex + ") must be in range [0," + totalCubes + ']');
+            } else if (startIndex < totalCubes) { //the index of the starting brick is accumulated into nextIndex while descending
+                this.begin(0, 0, 0, bricks(cubesX, brickSize), bricks(cubesY, brickSize), bricks(cubesZ, brickSize), startIndex);
+            } else {
+                this.nextIndex = this.total;
+            }
+        }
+
+        private static int bricks(int cubes, int brickSize) {
+            return (cubes + brickSize - 1) / brickSize;
+        }
+
+        /**
+         * @return the number of cubes in the first brick which come before the starting index, only meaningful for cursors over bricks
+         */
+        long startOffset() {
+            return this.startOffset;
+        }
+
+        private void begin(int x, int y, int z, int sizeX, int sizeY, int sizeZ, long startIndex) {
+            int[] c = this.children;
+            root(c, x, y, z, sizeX, sizeY, sizeZ);
+            this.descend(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], c[8], c[9], c[10], c[11], startIndex);
+        }
+
+        /**
+         * Stores the whole curve over a volume of the given size as the first frame in the given array.
+         */
+        private static void root(int[] dst, int x, int y, int z, int sizeX, int sizeY, int sizeZ) {
+            if (sizeX >= max(sizeY, sizeZ)) {
+                frame(dst, 0, x, y, z,
+                        sizeX, 0, 0,
+                        0, sizeY, 0,
+                        0, 0, sizeZ);
+            } else if (sizeY >= max(sizeX, sizeZ)) {
+                frame(dst, 0, x, y, z,
+                        0, sizeY, 0,
+                        sizeX, 0, 0,
+                        0, 0, sizeZ);
+            } else {
+                frame(dst, 0, x, y, z,
+                        0, 0, sizeZ,
+                        sizeX, 0, 0,
+                        0, sizeY, 0);
+            }
+        }
+
+        /**
+         * @see Hilbert#brickIndex3d(int, int, int, int, int, int, int)
+         */
+        private long brickIndex(int px, int py, int pz) {
+            int[] c = this.children;
+            root(c, 0, 0, 0, bricks(this.cubesX, this.brickSize), bricks(this.cubesY, this.brickSize), bricks(this.cubesZ, this.brickSize));
+            if (!contains3d(c, 0, px, py, pz)) {
+                throw new IndexOutOfBoundsException("brick (" + px + ", " + py + ", " + pz + ") is outside of the volume");
+            }
+
+            //this follows the same subdivisions as descend(), but only descends into the sub-curve containing the brick and adds up the number of
+            // cubes in the sub-curves before it
+            long index = 0L;
+            for (int o = 0; ; ) {
+                int x = c[o];
+                int y = c[o + 1];
+                int z = c[o + 2];
+                int w = abs(c[o + 3] + c[o + 4] + c[o + 5]);
+                int h = abs(c[o + 6] + c[o + 7] + c[o + 8]);
+                int d = abs(c[o + 9] + c[o + 10] + c[o + 11]);
+
+                //trivial row/column fills
+                int line = h == 1 && d == 1 ? 3 : w == 1 && d == 1 ? 6 : w == 1 && h == 1 ? 9 : -1;
+                if (line >= 0) {
+                    int dx = sgn(c[o + line]);
+                    int dy = sgn(c[o + line + 1]);
+                    int dz = sgn(c[o + line + 2]);
+                    int offset = (px - x) * dx + (py - y) * dy + (pz - z) * dz;
+
+                    //only the first brick along the line can be smaller than the ones between it and the given brick
+                    if (offset > 0) {
+                        index += this.brickCubes(x, y, z) + (offset - 1) * this.brickCubes(x + dx, y + dy, z + dz);
+                    }
+                    return index;
+                }
+
+                split(c, x, y, z, c[o + 3], c[o + 4], c[o + 5], c[o + 6], c[o + 7], c[o + 8], c[o + 9], c[o + 10], c[o + 11]);
+                int i = 0;
+                for (; !contains3d(c, i, px, py, pz); i++) {
+                    index += this.cubes(c, i);
+                }
+                o = i * FRAME;
+            }
+        }
+
+        private static boolean contains3d(int[] c, int i, int px, int py, int pz) {
+            //the curve's axes are all axis-aligned, so the position's coordinates along each of them are enough
+            int o = i * FRAME;
+            int dx = px - c[o];
+            int dy = py - c[o + 1];
+            int dz = pz - c[o + 2];
+            for (int v = o + 3; v < o + FRAME; v += 3) {
+                long j = (long) dx * sgn(c[v]) + (long) dy * sgn(c[v + 1]) + (long) dz * sgn(c[v + 2]);
+                if (j < 0L || j >= abs(c[v] + c[v + 1] + c[v + 2])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        protected void advance0() {
+            if (this.lineRemaining == 0) { //the current line is finished, begin the next sub-curve
+                int[] s = this.stack;
+                int p = this.stackSize -= FRAME;
+                this.descend(s[p], s[p + 1], s[p + 2], s[p + 3], s[p + 4], s[p + 5], s[p + 6], s[p + 7], s[p + 8], s[p + 9], s[p + 10], s[p + 11], 0L);
+            }
+
+            this.x = this.lineX;
+            this.y = this.lineY;
+            this.z = this.lineZ;
+            this.lineX += this.lineDx;
+            this.lineY += this.lineDy;
+            this.lineZ += this.lineDz;
+            this.lineRemaining--;
+        }
+
+        /**
+         * Splits the given curve until reaching the straight line containing the position at the given index, pushing all sub-curves which come after
+         * it onto the stack.
+         */
+        private void descend(int x, int y, int z, int ax, int ay, int az, int bx, int by, int bz, int cx, int cy, int cz, long skip) {
+            int[] c = this.children;
+            while (true) {
+                int w = abs(ax + ay + az);
+                int h = abs(bx + by + bz);
+                int d = abs(cx + cy + cz);
+
+                int dax = sgn(ax);
+                int day = sgn(ay);
+                int daz = sgn(az);
+                int dbx = sgn(bx);
+                int dby = sgn(by);
+                int dbz = sgn(bz);
+                int dcx = sgn(cx);
+                int dcy = sgn(cy);
+                int dcz = sgn(cz);
+
+                //trivial row/column fills
+                if (h == 1 && d == 1) {
+                    this.line(x, y, z, dax, day, daz, w, skip);
+                    return;
+                } else if (w == 1 && d == 1) {
+                    this.line(x, y, z, dbx, dby, dbz, h, skip);
+                    return;
+                } else if (w == 1 && h == 1) {
+                    this.line(x, y, z, dcx, dcy, dcz, d, skip);
+                    return;
+                }
+
+                int n = split(c, x, y, z, ax, ay, az, bx, by, bz, cx, cy, cz);
+
+                //find the sub-curve containing the starting index
+                int i = 0;
+                for (long count; skip >= (count = this.cubes(c, i)); i++) {
+                    skip -= count;
+                    if (this.brickSize != 0) {
+                        this.nextIndex += count3d(c, i);
+                    }
+                }
+
+                //push all the sub-curves after it in reverse order, so that they'll be popped in the correct order
+                for (int j = n - 1; j > i; j--) {
+                    if (count3d(c, j) != 0L) {
+                        this.push(c, j);
+                    }
+                }
+
+                int o = i * FRAME;
+                x = c[o];
+                y = c[o + 1];
+                z = c[o + 2];
+                ax = c[o + 3];
+                ay = c[o + 4];
+                az = c[o + 5];
+                bx = c[o + 6];
+                by = c[o + 7];
+                bz = c[o + 8];
+                cx = c[o + 9];
+                cy = c[o + 10];
+                cz = c[o + 11];
+            }
+        }
+
+        /**
+         * Splits the given curve into its sub-curves, storing their frames into the given array in order.
+         *
+         * @return the number of sub-curves
+         */
+        private static int split(int[] c, int x, int y, int z, int ax, int ay, int az, int bx, int by, int bz, int cx, int cy, int cz) {
+            int w = abs(ax + ay + az);
+            int h = abs(bx + by + bz);
+            int d = abs(cx + cy + cz);
+
+            int dax = sgn(ax);
+            int day = sgn(ay);
+            int daz = sgn(az);
+            int dbx = sgn(bx);
+            int dby = sgn(by);
+            int dbz = sgn(bz);
+            int dcx = sgn(cx);
+            int dcy = sgn(cy);
+            int dcz = sgn(cz);
+
+            int ax2 = ax >> 1;
+            int ay2 = ay >> 1;
+            int az2 = az >> 1;
+            int bx2 = bx >> 1;
+            int by2 = by >> 1;
+            int bz2 = bz >> 1;
+            int cx2 = cx >> 1;
+            int cy2 = cy >> 1;
+            int cz2 = cz >> 1;
+
+            int w2 = abs(ax2 + ay2 + az2);
+            int h2 = abs(bx2 + by2 + bz2);
+            int d2 = abs(cx2 + cy2 + cz2);
+
+            //prefer even steps
+            if ((w2 & 1) != 0 && w > 2) {
+                ax2 += dax;
+                ay2 += day;
+                az2 += daz;
+            }
+            if ((h2 & 1) != 0 && h > 2) {
+                bx2 += dbx;
+                by2 += dby;
+                bz2 += dbz;
+            }
+            if ((d2 & 1) != 0 && d > 2) {
+                cx2 += dcx;
+                cy2 += dcy;
+                cz2 += dcz;
+            }
+
+            if (w * 2 > h * 3 && w * 2 > d * 3) { //wide case, split in w only
+                frame(c, 0, x, y, z,
+                        ax2, ay2, az2,
+                        bx, by, bz,
+                        cx, cy, cz);
+                frame(c, 1, x + ax2, y + ay2, z + az2,
+                        ax - ax2, ay - ay2, az - az2,
+                        bx, by, bz,
+                        cx, cy, cz);
+                return 2;
+            } else if (h * 3 > d * 4) { //do not split in d
+                frame(c, 0, x, y, z,
+                        bx2, by2, bz2,
+                        cx, cy, cz,
+                        ax2, ay2, az2);
+                frame(c, 1, x + bx2, y + by2, z + bz2,
+                        ax, ay, az,
+                        bx - bx2, by - by2, bz - bz2,
+                        cx, cy, cz);
+                frame(c, 2, x + (ax - dax) + (bx2 - dbx),
+                        y + (ay - day) + (by2 - dby),
+                        z + (az - daz) + (bz2 - dbz),
+                        -bx2, -by2, -bz2,
+                        cx, cy, cz,
+                        -(ax - ax2), -(ay - ay2), -(az - az2));
+                return 3;
+            } else if (d * 3 > h * 4) { //do not split in h
+                frame(c, 0, x, y, z,
+                        cx2, cy2, cz2,
+                        ax2, ay2, az2,
+                        bx, by, bz);
+                frame(c, 1, x + cx2, y + cy2, z + cz2,
+                        ax, ay, az,
+                        bx, by, bz,
+                        cx - cx2, cy - cy2, cz - cz2);
+                frame(c, 2, x + (ax - dax) + (cx2 - dcx),
+                        y + (ay - day) + (cy2 - dcy),
+                        z + (az - daz) + (cz2 - dcz),
+                        -cx2, -cy2, -cz2,
+                        -(ax - ax2), -(ay - ay2), -(az - az2),
+                        bx, by, bz);
+                return 3;
+            } else { //regular case, split in all w/h/d
+                frame(c, 0, x, y, z,
+                        bx2, by2, bz2,
+                        cx2, cy2, cz2,
+                        ax2, ay2, az2);
+                frame(c, 1, x + bx2, y + by2, z + bz2,
+                        cx, cy, cz,
+                        ax2, ay2, az2,
+                        bx - bx2, by - by2, bz - bz2);
+                frame(c, 2, x + (bx2 - dbx) + (cx - dcx),
+                        y + (by2 - dby) + (cy - dcy),
+                        z + (bz2 - dbz) + (cz - dcz),
+                        ax, ay, az,
+                        -bx2, -by2, -bz2,
+                        -(cx - cx2), -(cy - cy2), -(cz - cz2));
+                frame(c, 3, x + (ax - dax) + bx2 + (cx - dcx),
+                        y + (ay - day) + by2 + (cy - dcy),
+                        z + (az - daz) + bz2 + (cz - dcz),
+                        -cx, -cy, -cz,
+                        -(ax - ax2), -(ay - ay2), -(az - az2),
+                        bx - bx2, by - by2, bz - bz2);
+                frame(c, 4, x + (ax - dax) + (bx2 - dbx),
+                        y + (ay - day) + (by2 - dby),
+                        z + (az - daz) + (bz2 - dbz),
+                        -bx2, -by2, -bz2,
+                        cx2, cy2, cz2,
+                        -(ax - ax2), -(ay - ay2), -(az - az2));
+                return 5;
+            }
+        }
+
+        private void line(int x, int y, int z, int dx, int dy, int dz, int length, long skip) {
+            if (this.brickSize != 0 && skip != 0L) { //convert the number of cubes to skip into a number of bricks
+                //only the bricks at either end of the line can be smaller than the others
+                long first = this.brickCubes(x, y, z);
+                long middle = length > 2 ? this.brickCubes(x + dx, y + dy, z + dz) : 0L;
+                long bricks;
+                if (skip < first) {
+                    bricks = 0L;
+                } else if (skip - first < (length - 2) * middle) {
+                    bricks = 1L + (skip - first) / middle;
+                    skip = (skip - first) % middle;
+                } else {
+                    bricks = length - 1;
+                    skip -= first + max(length - 2, 0) * middle;
+                }
+                this.startOffset = skip;
+                this.nextIndex += bricks;
+                skip = bricks;
+            }
+
+            this.lineX = x + (int) skip * dx;
+            this.lineY = y + (int) skip * dy;
+            this.lineZ = z + (int) skip * dz;
+            this.lineDx = dx;
+            this.lineDy = dy;
+            this.lineDz = dz;
+            this.lineRemaining = length - (int) skip;
+        }
+
+        /**
+         * @return the number of positions in the given sub-curve, or the number of cubes in its bricks for cursors over bricks
+         */
+        private long cubes(int[] c, int i) {
+            if (this.brickSize == 0) {
+                return count3d(c, i);
+            }
+
+            //each vector points along a different axis, so summing them gives the size of the sub-curve along each axis
+            int o = i * FRAME;
+            return this.axisCubes(c[o], c[o + 3] + c[o + 6] + c[o + 9], this.cubesX)
+                   * this.axisCubes(c[o + 1], c[o + 4] + c[o + 7] + c[o + 10], this.cubesY)
+                   * this.axisCubes(c[o + 2], c[o + 5] + c[o + 8] + c[o + 11], this.cubesZ);
+        }
+
+        /**
+         * @return the number of cubes in the brick at the given position
+         */
+        private long brickCubes(int x, int y, int z) {
+            return this.axisCubes(x, 1, this.cubesX) * this.axisCubes(y, 1, this.cubesY) * this.axisCubes(z, 1, this.cubesZ);
+        }
+
+        /**
+         * @param from   the first brick along the axis
+         * @param length the number of bricks along the axis, negative if they're in descending order
+         * @param cubes  the size of the volume along the axis
+         * @return the number of cubes along the axis in the given range of bricks
+         */
+        private long axisCubes(int from, int length, int cubes) {
+            int last = length > 0 ? from + length - 1 : from;
+            long count = (long) abs(length) * this.brickSize;
+            if (last == bricks(cubes, this.brickSize) - 1) { //the range includes the brick at the edge of the volume, which may be smaller
+                count -= (long) (last + 1) * this.brickSize - cubes;
+            }
+            return count;
+        }
+
+        private void push(int[] src, int i) {
+            if (this.stackSize + FRAME > this.stack.length) {
+                this.stack = Arrays.copyOf(this.stack, this.stack.length << 1);
+            }
+            System.arraycopy(src, i * FRAME, this.stack, this.stackSize, FRAME);
+            this.stackSize += FRAME;
+        }
+
+        private static long count3d(int[] c, int i) {
+            int o = i * FRAME;
+            return Hilbert.count3d(c[o + 3], c[o + 4], c[o + 5], c[o + 6], c[o + 7], c[o + 8], c[o + 9], c[o + 10], c[o + 11]);
+        }
+
+        private static void frame(int[] dst, int i, int x, int y, int z, int ax, int ay, int az, int bx, int by, int bz, int cx, int cy, int cz) {
+            int o = i * FRAME;
+            dst[o] = x;
+            dst[o + 1] = y;
+            dst[o + 2] = z;
+            dst[o + 3] = ax;
+            dst[o + 4] = ay;
+            dst[o + 5] = az;
+            dst[o + 6] = bx;
+            dst[o + 7] = by;
+            dst[o + 8] = bz;
+            dst[o + 9] = cx;
+            dst[o + 10] = cy;
+            dst[o + 11] = cz;
+        }
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package net.daporkchop.ccpregen.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+
+/**
+ * An array of {@code long}s which is stored outside of the Java heap.
+ * <p>
+ * This allows storing very large amounts of data (more than {@link Integer#MAX_VALUE} elements) without putting any pressure on the garbage
+ * collector. The elements are stored in pages of direct buffers, so growing the array never has to copy more than a single page. Once the array
+ * is no longer needed, {@link #close()} should be called so that the memory can be released as soon as possible. Not thread-safe.
+ *
+ * @author DaPorkchop_
+ */
+public final class OffHeapLongArray implements AutoCloseable {
+    private static final int PAGE_SHIFT = 20; //8 MiB per page
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private static LongBuffer allocatePage(int size) {
+        return ByteBuffer.allocateDirect(size << 3).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    private long length;
+    private LongBuffer[] pages = new LongBuffer[0];
+
+    /**
+     * Allocates a new array. All elements are initially {@code 0}.
+     *
+     * @param length the number of elements
+     */
+    public OffHeapLongArray(long length) {
+        this.resize(length);
+    }
+
+    /**
+     * @return the number of elements in this array
+     */
+    public long length() {
+        return this.length;
+    }
+
+    public long get(long index) {
+        return this.page(index).get((int) index & PAGE_MASK);
+    }
+
+    public void set(long index, long value) {
+        this.page(index).put((int) index & PAGE_MASK, value);
+    }
+
+    /**
+     * Changes the length of this array. If the array grows, the new elements are initially {@code 0}.
+     *
+     * @param length the new number of elements
+     */
+    public void resize(long length) {
+        if (length < 0L || (length + PAGE_MASK) >>> PAGE_SHIFT > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("length: " + length);
+        } else if (this.pages == null) {
+            throw new IllegalStateException("already closed");
+        }
+
+        //pages are only as large as they need to be, so the last page may have to be replaced with a larger one
+        LongBuffer[] pages = Arrays.copyOf(this.pages, (int) ((length + PAGE_MASK) >>> PAGE_SHIFT));
+        for (int i = max(this.pages.length - 1, 0); i < pages.length; i++) {
+            int size = (int) min(length - ((long) i << PAGE_SHIFT), PAGE_SIZE);
+            LongBuffer page = pages[i];
+            if (page == null || page.capacity() < size) {
+                pages[i] = allocatePage(size);
+                if (page != null) {
+                    page.clear();
+                    pages[i].put(page).clear();
+                }
+            }
+        }
+        this.pages = pages;
+
+        //elements which were cut off by previously shrinking the array may still be in the page containing the old end of the array
+        if ((this.length & PAGE_MASK) != 0L) {
+            for (long i = this.length, end = min(length, (this.length | PAGE_MASK) + 1L); i < end; i++) {
+                pages[(int) (i >>> PAGE_SHIFT)].put((int) i & PAGE_MASK, 0L);
+            }
+        }
+        this.length = length;
+    }
+
+    private LongBuffer page(long index) {
+        if (index < 0L || index >= this.length) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        } else if (this.pages == null) {
+            throw new IllegalStateException("already closed");
+        }
+        return this.pages[(int) (index >>> PAGE_SHIFT)];
+    }
+
+    /**
+     * Releases the memory used by this array. Once closed, the array may no longer be used.
+     */
+    @Override
+    public void close() {
+        this.pages = null;
+    }
+}
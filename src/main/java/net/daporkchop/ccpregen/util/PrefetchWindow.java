@@ -0,0 +1,125 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.util;
+
+import java.util.Arrays;
+
+/**
+ * The set of positions which have been handed to the generator for async prefetching, but haven't been generated yet.
+ * <p>
+ * Positions are kept in the order they were added (i.e. in increasing index order), but may be removed in any order. Each position also has
+ * a failure counter and a retry time, which are used for backing off from positions for which prefetching failed.
+ * <p>
+ * All state is kept in primitive arrays, so once the window has reached its maximum size, no further allocations are made.
+ *
+ * @author DaPorkchop_
+ */
+public final class PrefetchWindow {
+    private int[] coords = new int[3 * 16];
+    private long[] indices = new long[16];
+    private int[] failures = new int[16];
+    private long[] retryTimes = new long[16];
+    private int size;
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public void add(int x, int y, int z, long index) {
+        if (this.size == this.indices.length) {
+            int capacity = this.size << 1;
+            this.coords = Arrays.copyOf(this.coords, capacity * 3);
+            this.indices = Arrays.copyOf(this.indices, capacity);
+            this.failures = Arrays.copyOf(this.failures, capacity);
+            this.retryTimes = Arrays.copyOf(this.retryTimes, capacity);
+        }
+
+        int slot = this.size++;
+        this.coords[slot * 3] = x;
+        this.coords[slot * 3 + 1] = y;
+        this.coords[slot * 3 + 2] = z;
+        this.indices[slot] = index;
+        this.failures[slot] = 0;
+        this.retryTimes[slot] = 0L;
+    }
+
+    public int x(int slot) {
+        return this.coords[slot * 3];
+    }
+
+    public int y(int slot) {
+        return this.coords[slot * 3 + 1];
+    }
+
+    public int z(int slot) {
+        return this.coords[slot * 3 + 2];
+    }
+
+    public long index(int slot) {
+        return this.indices[slot];
+    }
+
+    /**
+     * @return the number of times prefetching of the position in the given slot has failed
+     */
+    public int failures(int slot) {
+        return this.failures[slot];
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} before which the position in the given slot shouldn't be polled again
+     */
+    public long retryTime(int slot) {
+        return this.retryTimes[slot];
+    }
+
+    /**
+     * Records a failure for the position in the given slot.
+     *
+     * @param retryTime the {@link System#nanoTime()} before which the position shouldn't be polled again
+     * @return the number of times prefetching of the position has failed, including this time
+     */
+    public int fail(int slot, long retryTime) {
+        this.retryTimes[slot] = retryTime;
+        return ++this.failures[slot];
+    }
+
+    /**
+     * Removes the position in the given slot, shifting all following positions down by one slot.
+     */
+    public void remove(int slot) {
+        int tail = --this.size - slot;
+        if (tail > 0) {
+            System.arraycopy(this.coords, (slot + 1) * 3, this.coords, slot * 3, tail * 3);
+            System.arraycopy(this.indices, slot + 1, this.indices, slot, tail);
+            System.arraycopy(this.failures, slot + 1, this.failures, slot, tail);
+            System.arraycopy(this.retryTimes, slot + 1, this.retryTimes, slot, tail);
+        }
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+}
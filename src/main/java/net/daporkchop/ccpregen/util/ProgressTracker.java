@@ -0,0 +1,183 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+package net.daporkchop.ccpregen.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Keeps track of which indices in a sequence of positions have been completed, when positions may be completed out of order.
+ * <p>
+ * Progress is represented as a low watermark, below which every index is known to be complete, plus a small bitmap of completed indices above the
+ * watermark. As long as the positions are completed roughly in order, the bitmap stays tiny.
+ *
+ * @author DaPorkchop_
+ */
+public final class ProgressTracker {
+    private long watermark;
+    private long completed;
+
+    //bit i of word w is set if index (base + w * 64 + i) is complete. base is always the watermark rounded down to a multiple of 64
+    private long base;
+    private long[] words = new long[16];
+    private int usedWords;
+
+    public ProgressTracker() {
+        this(0L, "");
+    }
+
+    /**
+     * @param watermark     the low watermark
+     * @param encodedBitmap the completed bitmap, as returned by {@link #encodeBitmap()}
+     */
+    public ProgressTracker(long watermark, String encodedBitmap) {
+        this(watermark, Base64.getDecoder().decode(encodedBitmap));
+    }
+
+    /**
+     * @param watermark the low watermark
+     * @param bitmap    the completed bitmap, as returned by {@link #bitmap()}
+     */
+    public ProgressTracker(long watermark, byte[] bitmap) {
+        this.watermark = this.completed = watermark;
+        this.base = watermark & ~63L;
+
+        if (bitmap.length != 0) {
+            ByteBuffer buf = ByteBuffer.wrap(bitmap);
+            this.usedWords = buf.remaining() >> 3;
+            this.words = new long[Math.max(this.usedWords, 16)];
+            for (int i = 0; i < this.usedWords; i++) {
+                this.words[i] = buf.getLong();
+            }
+            this.words[0] &= -1L << (watermark & 63L); //ignore any bits below the watermark
+
+            for (int i = 0; i < this.usedWords; i++) {
+                this.completed += Long.bitCount(this.words[i]);
+            }
+            this.advanceWatermark();
+        }
+    }
+
+    /**
+     * @return the low watermark. All indices below this are complete
+     */
+    public long watermark() {
+        return this.watermark;
+    }
+
+    /**
+     * @return the total number of completed indices
+     */
+    public long completed() {
+        return this.completed;
+    }
+
+    public boolean isComplete(long index) {
+        if (index < this.watermark) {
+            return true;
+        }
+
+        long word = (index - this.base) >>> 6L;
+        return word < this.usedWords && (this.words[(int) word] & (1L << index)) != 0L;
+    }
+
+    /**
+     * Marks the given index as complete.
+     *
+     * @return whether or not the index was previously incomplete
+     */
+    public boolean markComplete(long index) {
+        if (index < this.watermark) {
+            return false;
+        }
+
+        long word = (index - this.base) >>> 6L;
+        if (word >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("index " + index + " is too far ahead of the watermark " + this.watermark);
+        }
+        if (word >= this.words.length) {
+            this.words = Arrays.copyOf(this.words, Math.max(this.words.length << 1, (int) word + 1));
+        }
+        this.usedWords = Math.max(this.usedWords, (int) word + 1);
+
+        long mask = 1L << index;
+        if ((this.words[(int) word] & mask) != 0L) {
+            return false;
+        }
+        this.words[(int) word] |= mask;
+        this.completed++;
+
+        if (index == this.watermark) {
+            this.advanceWatermark();
+        }
+        return true;
+    }
+
+    private void advanceWatermark() {
+        //move the watermark forwards over all consecutive completed indices
+        long[] words = this.words;
+        int word;
+        while ((word = (int) ((this.watermark - this.base) >>> 6L)) < this.usedWords) {
+            long inverted = ~words[word] & (-1L << (this.watermark & 63L));
+            if (inverted != 0L) {
+                this.watermark = this.base + ((long) word << 6L) + Long.numberOfTrailingZeros(inverted);
+                break;
+            }
+            this.watermark = this.base + ((long) (word + 1) << 6L);
+        }
+
+        //drop all words which are entirely below the watermark
+        int shift = (int) ((this.watermark - this.base) >>> 6L);
+        if (shift > 0) {
+            int remaining = Math.max(this.usedWords - shift, 0);
+            System.arraycopy(words, shift, words, 0, remaining);
+            Arrays.fill(words, remaining, this.usedWords, 0L);
+            this.usedWords = remaining;
+            this.base += (long) shift << 6L;
+        }
+    }
+
+    /**
+     * @return the bitmap of completed indices above the watermark, encoded as a string. Empty if no indices above the watermark are complete
+     */
+    public String encodeBitmap() {
+        return Base64.getEncoder().encodeToString(this.bitmap());
+    }
+
+    /**
+     * @return the bitmap of completed indices above the watermark. Empty if no indices above the watermark are complete
+     */
+    public byte[] bitmap() {
+        //the first word may contain bits below the watermark, which aren't needed
+        long firstWord = this.usedWords == 0 ? 0L : this.words[0] & (-1L << (this.watermark & 63L));
+        if (this.usedWords <= 1 && firstWord == 0L) {
+            return new byte[0];
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(this.usedWords << 3);
+        buf.putLong(firstWord);
+        for (int i = 1; i < this.usedWords; i++) {
+            buf.putLong(this.words[i]);
+        }
+        return buf.array();
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.daporkchop.ccpregen.BrickTracker;
+import net.daporkchop.ccpregen.ColumnUnloader;
+import net.daporkchop.ccpregen.FrontierUnloader;
+import net.daporkchop.ccpregen.PregenConfig;
+import net.daporkchop.ccpregen.PregenJob;
+import net.daporkchop.ccpregen.PregenLane;
+import net.daporkchop.ccpregen.WorldUnloader;
+import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.CubeCursor;
+import net.daporkchop.ccpregen.util.CubePositionList;
+import net.daporkchop.ccpregen.util.HeapMonitor;
+import net.daporkchop.ccpregen.util.ProgressTracker;
+import net.daporkchop.ccpregen.util.Volume;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.Math.*;
+
+/**
+ * Replays a pregeneration job against a simulated cube provider in order to compare {@link CoordinateOrder}s and unloading policies without
+ * having to start a server.
+ * <p>
+ * The simulated provider only keeps track of which cubes and columns are loaded and which of them have unsaved changes:
+ * <ul>
+ *     <li>generating a cube loads it and all cubes within {@code radius} of it (at {@code Requirement.LIGHT} that's the 3x3x3 neighborhood),
+ *     and marks all of them and their columns as modified, since populating a cube writes into its neighbors</li>
+ *     <li>if {@code immediateCubeSave} is set, generated cubes are saved in batches of {@code saveBatchSize}, together with their columns.
+ *     Otherwise, cubes and columns are only saved when they're unloaded</li>
+ *     <li>cubes are unloaded by the real {@link FrontierUnloader} and {@link ColumnUnloader}, which are given this simulation as their
+ *     {@link WorldUnloader}, or every {@code unloadCubesInterval} generated cubes when using {@link PregenConfig.UnloadMode#PERIODIC}.
+ *     Columns are only unloaded once they have no more loaded cubes, and only if {@code unloadColumns} is set (or when a column is finished).
+ *     Unloading a modified cube or column queues it to be saved</li>
+ *     <li>if {@code heapCubes} is set, memory pressure unloading is simulated: a garbage collection happens every {@code gcInterval} generated
+ *     cubes, and the heap's occupancy is the number of loaded cubes divided by {@code heapCubes}</li>
+ *     <li>the save queue is drained by {@code savesPerCube} entries for every generated cube, modelling an IO thread which is a bit faster
+ *     than generation on average</li>
+ *     <li>if {@code resumeIndex} is set, the job is resumed from that index, as if everything before it had been generated before the server was
+ *     restarted. Nothing is loaded when the job is resumed</li>
+ * </ul>
+ * The unloading policies read the rest of their settings (such as {@code requirement} and {@code maxWorkingSetCubes}) from {@link PregenConfig},
+ * so {@code radius} should match {@link PregenConfig#requirement}.
+ * <p>
+ * Can also be run from the command line, see {@link #main(String[])}.
+ *
+ * @author DaPorkchop_
+ */
+public final class PregenSimulation implements WorldUnloader {
+    /**
+     * Runs the simulation for every combination of the given settings and prints the results as a table.
+     * <p>
+     * Arguments: {@code <sizeX> <sizeY> <sizeZ> [unloadCubesInterval...]}, with the size given in cubes.
+     */
+    public static void main(String... args) {
+        Volume volume = args.length >= 3
+                ? new Volume(0, 0, 0, Integer.parseInt(args[0]) - 1, Integer.parseInt(args[1]) - 1, Integer.parseInt(args[2]) - 1)
+                : new Volume(0, 0, 0, 63, 15, 63);
+        int[] intervals = args.length > 3 ? new int[args.length - 3] : new int[]{ 1000, 8000, 32000 };
+        for (int i = 3; i < args.length; i++) {
+            intervals[i - 3] = Integer.parseInt(args[i]);
+        }
+
+        List<PregenSimulation> simulations = new ArrayList<>();
+        for (CoordinateOrder order : CoordinateOrder.values()) {
+            for (boolean immediateCubeSave : new boolean[]{ false, true }) {
+                for (int interval : intervals) {
+                    simulations.add(new PregenSimulation(volume, order, interval, true).immediateCubeSave(immediateCubeSave));
+                    simulations.add(new PregenSimulation(volume, order, interval, false).immediateCubeSave(immediateCubeSave));
+                }
+                simulations.add(new PregenSimulation(volume, order, PregenConfig.UnloadMode.FRONTIER).immediateCubeSave(immediateCubeSave));
+                simulations.add(new PregenSimulation(volume, order, PregenConfig.UnloadMode.COLUMNS).immediateCubeSave(immediateCubeSave));
+            }
+        }
+        simulations.parallelStream().forEach(PregenSimulation::run);
+
+        System.out.println(header());
+        simulations.forEach(System.out::println);
+    }
+
+    /**
+     * @return the header line for the table printed by {@link #toString()}
+     */
+    public static String header() {
+        return String.format("%-26s %-8s %9s %7s %9s | %11s %11s %12s %14s %13s %10s %10s %9s",
+                "order", "mode", "interval", "columns", "immediate",
+                "peak cubes", "peak cols", "cube reloads", "column reloads", "peak save q", "saves", "col saves", "leftover");
+    }
+
+    //settings
+    public final Volume volume;
+    public final CoordinateOrder order;
+    public final PregenConfig.UnloadMode unloadMode;
+    public final int unloadCubesInterval;
+    public final boolean unloadColumns;
+    public boolean immediateCubeSave = false;
+    public int radius = 1;
+    public int saveBatchSize = 256;
+    public double savesPerCube = 1.5d;
+    public int cubesPerCall = 64; //the number of cubes generated between each time the unloader gets to run
+    public int heapCubes = 0; //the number of loaded cubes which would fill up the heap, or 0 to not simulate memory pressure
+    public int gcInterval = 1024;
+    public long resumeIndex = 0L;
+
+    //results
+    public int peakCubes;
+    public int peakColumns;
+    public long cubeReloads;
+    public long columnReloads;
+    public long peakSaveQueue;
+    public long saves;
+    public long columnSaves;
+    public int leftoverCubes; //cubes which were still loaded when the job finished, before unloading everything
+
+    //simulated provider state
+    private final LongOpenHashSet loadedCubes = new LongOpenHashSet();
+    private final LongOpenHashSet everLoadedCubes = new LongOpenHashSet();
+    private final LongOpenHashSet dirtyCubes = new LongOpenHashSet();
+    private final Long2IntOpenHashMap loadedColumns = new Long2IntOpenHashMap(); //number of loaded cubes in each loaded column, which may be 0
+    private final LongOpenHashSet everLoadedColumns = new LongOpenHashSet();
+    private final LongOpenHashSet dirtyColumns = new LongOpenHashSet();
+    private final LongArrayList batch = new LongArrayList();
+    private double saveQueue;
+    private long generated;
+
+    /**
+     * Creates a simulation which uses {@link PregenConfig.UnloadMode#PERIODIC} unloading.
+     */
+    public PregenSimulation(Volume volume, CoordinateOrder order, int unloadCubesInterval, boolean unloadColumns) {
+        this(volume, order, PregenConfig.UnloadMode.PERIODIC, unloadCubesInterval, unloadColumns);
+    }
+
+    /**
+     * Creates a simulation which uses the given unloading policy, and unloads columns as soon as they have no more loaded cubes.
+     */
+    public PregenSimulation(Volume volume, CoordinateOrder order, PregenConfig.UnloadMode unloadMode) {
+        this(volume, order, unloadMode, Integer.MAX_VALUE, true);
+    }
+
+    public PregenSimulation(Volume volume, CoordinateOrder order, PregenConfig.UnloadMode unloadMode, int unloadCubesInterval, boolean unloadColumns) {
+        this.volume = volume;
+        this.order = order;
+        this.unloadMode = unloadMode;
+        this.unloadCubesInterval = unloadCubesInterval;
+        this.unloadColumns = unloadColumns;
+    }
+
+    public PregenSimulation immediateCubeSave(boolean immediateCubeSave) {
+        this.immediateCubeSave = immediateCubeSave;
+        return this;
+    }
+
+    public PregenSimulation heapCubes(int heapCubes) {
+        this.heapCubes = heapCubes;
+        return this;
+    }
+
+    public PregenSimulation resumeAt(long resumeIndex) {
+        this.resumeIndex = resumeIndex;
+        return this;
+    }
+
+    /**
+     * Generates every cube in the volume, then unloads everything like a finished job does.
+     */
+    public PregenSimulation run() {
+        //set up the unloaders the same way as the pregeneration worker does
+        PregenLane lane = new PregenLane(this.order, this.volume, 0L, this.volume.total, new ProgressTracker(this.resumeIndex, new byte[0]));
+        PregenJob job = new PregenJob(0, 0, this.volume, this.order, new PregenLane[]{ lane });
+        SimulatedHeap heap = new SimulatedHeap();
+        ColumnUnloader columns = this.unloadMode == PregenConfig.UnloadMode.COLUMNS && ColumnUnloader.supports(job) ? new ColumnUnloader(this, job) : null;
+        FrontierUnloader frontier = this.unloadMode != PregenConfig.UnloadMode.PERIODIC ? new FrontierUnloader(this, job, columns, heap) : null;
+        BrickTracker bricks = frontier == null && BrickTracker.supports(job) ? new BrickTracker(job) : null;
+
+        for (CubeCursor cursor = lane.cursor; lane.hasNext(); ) {
+            cursor.advance();
+            this.generated++;
+            this.generate(cursor.x(), cursor.y(), cursor.z());
+            lane.markComplete(cursor.index());
+            if (frontier != null) {
+                frontier.touch(cursor.x(), cursor.y(), cursor.z());
+            }
+            if (columns != null) {
+                columns.complete(cursor.x(), cursor.z());
+            }
+            this.peakCubes = max(this.peakCubes, this.loadedCubes.size());
+            this.peakColumns = max(this.peakColumns, this.loadedColumns.size());
+
+            if (this.immediateCubeSave && this.batch.size() >= this.saveBatchSize) {
+                this.flushBatch();
+            }
+
+            //when using PERIODIC unloading, don't unload anything yet if there's still plenty of free memory
+            if (frontier == null && this.generated % this.unloadCubesInterval == 0L
+                && !(this.heapCubes > 0 && heap.occupancy() < PregenConfig.heapTargetMinPercent / 100.0d)) {
+                this.unloadAll(this.unloadColumns, bricks);
+            }
+
+            if (this.generated % this.cubesPerCall == 0L) { //end of a call from the world worker manager
+                if (frontier != null) {
+                    frontier.unload();
+                } else if (heap.poll() && heap.occupancy() > PregenConfig.heapTargetMaxPercent / 100.0d) {
+                    this.unloadAll(true);
+                }
+            }
+            this.saveQueue = max(this.saveQueue - this.savesPerCube, 0.0d);
+        }
+
+        this.leftoverCubes = this.loadedCubes.size();
+        this.flushBatch();
+        this.unloadAll(true);
+        return this;
+    }
+
+    private void generate(int x, int y, int z) {
+        int r = this.radius;
+        for (int dx = -r; dx <= r; dx++) {
+            for (int dy = -r; dy <= r; dy++) {
+                for (int dz = -r; dz <= r; dz++) {
+                    this.load(x + dx, y + dy, z + dz);
+                }
+            }
+        }
+        if (this.immediateCubeSave) {
+            this.batch.add(CubePositionList.pack(x, y, z));
+        }
+    }
+
+    private void load(int x, int y, int z) {
+        long pos = CubePositionList.pack(x, y, z);
+        long column = CubePositionList.pack(x, 0, z);
+        this.dirtyCubes.add(pos); //either it was just generated, or it's being populated into
+        this.dirtyColumns.add(column); //either way, the column's heightmap changes
+        if (!this.loadedCubes.add(pos)) { //already loaded
+            return;
+        } else if (!this.everLoadedCubes.add(pos)) {
+            this.cubeReloads++;
+        }
+
+        if (!this.loadedColumns.containsKey(column) && !this.everLoadedColumns.add(column)) { //the column was loaded before
+            this.columnReloads++;
+        }
+        this.loadedColumns.addTo(column, 1);
+    }
+
+    private void flushBatch() {
+        for (LongIterator itr = this.batch.iterator(); itr.hasNext(); ) {
+            long pos = itr.nextLong();
+            if (this.loadedCubes.contains(pos) && this.dirtyCubes.remove(pos)) {
+                this.save();
+            }
+            long column = CubePositionList.pack(CubePositionList.unpackX(pos), 0, CubePositionList.unpackZ(pos));
+            if (this.loadedColumns.containsKey(column) && this.dirtyColumns.remove(column)) {
+                this.saveColumn();
+            }
+        }
+        this.batch.clear();
+    }
+
+    @Override
+    public int unload(LongList positions, int originY, boolean columns) {
+        int unloaded = 0;
+        for (int i = 0, size = positions.size(); i < size; i++) {
+            long pos = positions.getLong(i);
+            int x = CubePositionList.unpackX(pos);
+            int z = CubePositionList.unpackZ(pos);
+            if (this.unloadCube(x, CubePositionList.unpackY(pos) + originY, z)) {
+                unloaded++;
+                long column = CubePositionList.pack(x, 0, z);
+                if (columns && this.unloadColumns && this.loadedColumns.get(column) == 0) {
+                    this.unloadColumn(column);
+                }
+            }
+        }
+        return unloaded;
+    }
+
+    @Override
+    public boolean finishColumn(int x, int z) {
+        long column = CubePositionList.pack(x, 0, z);
+        if (!this.loadedColumns.containsKey(column)) {
+            return false;
+        }
+
+        for (int y = this.volume.minY - this.radius; y <= this.volume.maxY + this.radius; y++) {
+            this.unloadCube(x, y, z);
+        }
+        this.unloadColumn(column);
+        return true;
+    }
+
+    private boolean unloadCube(int x, int y, int z) {
+        long pos = CubePositionList.pack(x, y, z);
+        if (!this.loadedCubes.remove(pos)) {
+            return false;
+        }
+
+        if (this.dirtyCubes.remove(pos)) {
+            this.save();
+        }
+        this.loadedColumns.addTo(CubePositionList.pack(x, 0, z), -1);
+        return true;
+    }
+
+    private void unloadColumn(long column) {
+        if (this.dirtyColumns.remove(column)) {
+            this.saveColumn();
+        }
+        this.loadedColumns.remove(column);
+    }
+
+    private void unloadAll(boolean columns, BrickTracker keep) {
+        if (keep == null) {
+            this.unloadAll(columns);
+            return;
+        }
+
+        LongList positions = new LongArrayList();
+        for (LongIterator itr = this.loadedCubes.iterator(); itr.hasNext(); ) {
+            long pos = itr.nextLong();
+            if (!keep.isNeeded(CubePositionList.unpackX(pos), CubePositionList.unpackY(pos), CubePositionList.unpackZ(pos))) {
+                positions.add(pos);
+            }
+        }
+        this.unload(positions, 0, columns);
+    }
+
+    private void unloadAll(boolean columns) {
+        for (LongIterator itr = this.loadedCubes.iterator(); itr.hasNext(); ) {
+            if (this.dirtyCubes.remove(itr.nextLong())) {
+                this.save();
+            }
+        }
+        this.loadedCubes.clear();
+
+        if (columns) {
+            for (LongIterator itr = this.loadedColumns.keySet().iterator(); itr.hasNext(); ) {
+                if (this.dirtyColumns.remove(itr.nextLong())) {
+                    this.saveColumn();
+                }
+            }
+            this.loadedColumns.clear();
+        } else { //the columns stay loaded even though they're empty now
+            this.loadedColumns.replaceAll((column, count) -> 0);
+        }
+    }
+
+    private void saveColumn() {
+        this.columnSaves++;
+        this.save();
+    }
+
+    private void save() {
+        this.saves++;
+        this.saveQueue++;
+        this.peakSaveQueue = max(this.peakSaveQueue, (long) ceil(this.saveQueue));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-26s %-8s %9s %7b %9b | %11d %11d %12d %14d %13d %10d %10d %9d",
+                this.order, this.unloadMode, this.unloadMode == PregenConfig.UnloadMode.PERIODIC ? String.valueOf(this.unloadCubesInterval) : "-",
+                this.unloadColumns, this.immediateCubeSave,
+                this.peakCubes, this.peakColumns, this.cubeReloads, this.columnReloads, this.peakSaveQueue, this.saves, this.columnSaves, this.leftoverCubes);
+    }
+
+    /**
+     * A heap which is collected every {@link #gcInterval} generated cubes, and is filled up by {@link #heapCubes} loaded cubes.
+     *
+     * @author DaPorkchop_
+     */
+    private final class SimulatedHeap extends HeapMonitor {
+        private long lastCollection;
+        private double occupancy;
+
+        @Override
+        public boolean poll() {
+            PregenSimulation simulation = PregenSimulation.this;
+            if (simulation.heapCubes <= 0 || simulation.generated - this.lastCollection < simulation.gcInterval) {
+                return false;
+            }
+            this.lastCollection = simulation.generated;
+            this.occupancy = simulation.loadedCubes.size() / (double) simulation.heapCubes;
+            return true;
+        }
+
+        @Override
+        public double occupancy() {
+            return this.occupancy;
+        }
+    }
+}
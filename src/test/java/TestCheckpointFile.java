@@ -0,0 +1,75 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import net.daporkchop.ccpregen.util.CheckpointFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestCheckpointFile {
+    @Test
+    public void testWriteRead() throws IOException {
+        Path dir = Files.createTempDirectory("ccpregen");
+        Path path = dir.resolve("checkpoint.bin");
+        try (CheckpointFile checkpoint = new CheckpointFile(path, 1337)) {
+            if (checkpoint.read() != null) {
+                throw new IllegalStateException("checkpoint exists before being written");
+            }
+
+            SplittableRandom rng = new SplittableRandom(1337L);
+            for (int i = 0; i < 256; i++) {
+                byte[] data = new byte[rng.nextInt(0, 4096)];
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = (byte) rng.nextInt();
+                }
+                checkpoint.write(data);
+
+                if (rng.nextInt(8) == 0) { //only the most recently written checkpoint may be read back
+                    checkpoint.flush();
+                    if (!Arrays.equals(data, checkpoint.read())) {
+                        throw new IllegalStateException("checkpoint " + i + " doesn't match");
+                    }
+                }
+            }
+            checkpoint.flush();
+
+            //damage the checkpoint
+            byte[] file = Files.readAllBytes(path);
+            file[file.length - 1] ^= 1;
+            Files.write(path, file);
+            try {
+                checkpoint.read();
+                throw new IllegalStateException("damaged checkpoint was read successfully");
+            } catch (IOException e) {
+                //expected
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(dir);
+        }
+    }
+}
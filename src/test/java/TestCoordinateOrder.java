@@ -0,0 +1,154 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import io.github.opencubicchunks.cubicchunks.api.util.CubePos;
+import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.CubeCursor;
+import net.daporkchop.ccpregen.util.Volume;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestCoordinateOrder {
+    @Test
+    public void testSeekMatchesReplay() {
+        for (CoordinateOrder order : CoordinateOrder.values()) {
+            new SplittableRandom(1337L).longs(1024L).parallel()
+                    .mapToObj(SplittableRandom::new)
+                    .forEach(rng -> {
+                        int x = rng.nextInt(-10000000, 10000000);
+                        int y = rng.nextInt(-10000000, 10000000);
+                        int z = rng.nextInt(-10000000, 10000000);
+
+                        //randomly make the volume shorter along some axes
+                        int i = rng.nextInt() & 7;
+                        Volume volume = new Volume(x, y, z,
+                                x + rng.nextInt(0, (i & 1) != 0 ? 10 : 40),
+                                y + rng.nextInt(0, (i & 2) != 0 ? 10 : 40),
+                                z + rng.nextInt(0, (i & 4) != 0 ? 10 : 40));
+
+                        //replay the original iterator from the beginning, as was previously done when resuming
+                        List<CubePos> reference = new ArrayList<>();
+                        ReferenceCoordinateOrder.iterator(order, volume).forEachRemaining(reference::add);
+                        if (reference.size() != volume.total) {
+                            throw new IllegalStateException(order + ": " + reference.size() + " != " + volume.total);
+                        }
+
+                        for (int j = 0; j < 16; j++) {
+                            long startIndex = j == 0 ? 0L : j == 1 ? volume.total : rng.nextLong(volume.total);
+
+                            Iterator<CubePos> itr = order.iterator(volume, startIndex);
+                            for (long index = startIndex; index < volume.total; index++) {
+                                if (!itr.hasNext() || !Objects.equals(reference.get((int) index), itr.next())) {
+                                    throw new IllegalStateException(order + ": mismatch at index " + index + " after seeking to " + startIndex);
+                                }
+                            }
+
+                            if (itr.hasNext()) { //the iterator still has positions remaining
+                                throw new IllegalStateException(order + ": too many positions after seeking to " + startIndex);
+                            }
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void testCursorMatchesIterator() {
+        for (CoordinateOrder order : CoordinateOrder.values()) {
+            new SplittableRandom(1337L).longs(1024L).parallel()
+                    .mapToObj(SplittableRandom::new)
+                    .forEach(rng -> {
+                        int x = rng.nextInt(-10000000, 10000000);
+                        int y = rng.nextInt(-10000000, 10000000);
+                        int z = rng.nextInt(-10000000, 10000000);
+
+                        //randomly make the volume shorter along some axes
+                        int i = rng.nextInt() & 7;
+                        Volume volume = new Volume(x, y, z,
+                                x + rng.nextInt(0, (i & 1) != 0 ? 10 : 40),
+                                y + rng.nextInt(0, (i & 2) != 0 ? 10 : 40),
+                                z + rng.nextInt(0, (i & 4) != 0 ? 10 : 40));
+
+                        for (int j = 0; j < 4; j++) {
+                            long startIndex = j == 0 ? 0L : j == 1 ? volume.total : rng.nextLong(volume.total);
+
+                            Iterator<CubePos> itr = order.iterator(volume, startIndex);
+                            CubeCursor cursor = order.cursor(volume, startIndex);
+                            for (long index = startIndex; index < volume.total; index++) {
+                                if (!cursor.hasNext()) {
+                                    throw new IllegalStateException(order + ": cursor ended early at index " + index + " after seeking to " + startIndex);
+                                }
+                                cursor.advance();
+
+                                CubePos pos = itr.next();
+                                if (cursor.index() != index || cursor.x() != pos.getX() || cursor.y() != pos.getY() || cursor.z() != pos.getZ()) {
+                                    throw new IllegalStateException(order + ": mismatch at index " + index + " after seeking to " + startIndex);
+                                }
+                            }
+
+                            if (cursor.hasNext()) { //the cursor still has positions remaining
+                                throw new IllegalStateException(order + ": too many positions after seeking to " + startIndex);
+                            }
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void testBrickIndex() {
+        new SplittableRandom(1337L).longs(1024L).parallel()
+                .mapToObj(SplittableRandom::new)
+                .forEach(rng -> {
+                    int x = rng.nextInt(-10000000, 10000000);
+                    int y = rng.nextInt(-10000000, 10000000);
+                    int z = rng.nextInt(-10000000, 10000000);
+
+                    //randomly make the volume shorter along some axes
+                    int i = rng.nextInt() & 7;
+                    Volume volume = new Volume(x, y, z,
+                            x + rng.nextInt(0, (i & 1) != 0 ? 10 : 40),
+                            y + rng.nextInt(0, (i & 2) != 0 ? 10 : 40),
+                            z + rng.nextInt(0, (i & 4) != 0 ? 10 : 40));
+
+                    //the first cube visited in each brick
+                    Map<CubePos, Long> firstIndices = new HashMap<>();
+                    for (CubeCursor cursor = CoordinateOrder.BRICKS.cursor(volume, 0L); cursor.hasNext(); ) {
+                        cursor.advance();
+                        CubePos brick = new CubePos(
+                                (cursor.x() - volume.minX) / CoordinateOrder.BRICK_SIZE,
+                                (cursor.y() - volume.minY) / CoordinateOrder.BRICK_SIZE,
+                                (cursor.z() - volume.minZ) / CoordinateOrder.BRICK_SIZE);
+                        long firstIndex = firstIndices.computeIfAbsent(brick, b -> cursor.index());
+                        if (CoordinateOrder.BRICKS.brickIndex(volume, cursor.x(), cursor.y(), cursor.z()) != firstIndex) {
+                            throw new IllegalStateException("cube " + cursor.index() + " isn't in the brick starting at index " + firstIndex);
+                        }
+                    }
+                });
+    }
+}
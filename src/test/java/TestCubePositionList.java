@@ -0,0 +1,105 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import net.daporkchop.ccpregen.util.CubePositionList;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestCubePositionList {
+    private static final Comparator<int[]> ORDER = (a, b) -> {
+        int d = Integer.compare(a[0], b[0]);
+        if (d == 0 && (d = Integer.compare(a[2], b[2])) == 0) {
+            d = -Integer.compare(a[1], b[1]);
+        }
+        return d;
+    };
+
+    @Test
+    public void testSort() {
+        new SplittableRandom(1337L).longs(64L).parallel()
+                .mapToObj(SplittableRandom::new)
+                .forEach(rng -> {
+                    //randomly use either a small area (lots of duplicates) or the whole supported range
+                    int rangeXZ = rng.nextBoolean() ? 1 << 21 : rng.nextInt(1, 64);
+                    int rangeY = rng.nextBoolean() ? 1 << 19 : rng.nextInt(1, 64);
+
+                    TreeSet<int[]> reference = new TreeSet<>(ORDER);
+                    try (CubePositionList list = new CubePositionList()) {
+                        for (int i = 0, count = rng.nextInt(0, 100000); i < count; i++) {
+                            int x = rng.nextInt(-rangeXZ, rangeXZ);
+                            int y = rng.nextInt(-rangeY, rangeY);
+                            int z = rng.nextInt(-rangeXZ, rangeXZ);
+                            reference.add(new int[]{ x, y, z });
+                            list.add(x, y, z);
+                        }
+                        list.sort();
+
+                        if (list.size() != reference.size()) {
+                            throw new IllegalStateException("size " + list.size() + " != " + reference.size());
+                        }
+                        long i = 0L;
+                        for (int[] pos : reference) {
+                            long packed = list.get(i++);
+                            if (CubePositionList.unpackX(packed) != pos[0] || CubePositionList.unpackY(packed) != pos[1] || CubePositionList.unpackZ(packed) != pos[2]) {
+                                throw new IllegalStateException("index " + (i - 1L));
+                            }
+                        }
+                    }
+                });
+    }
+
+    @Test
+    public void testWriteReadSeek() throws Exception {
+        Path file = Files.createTempFile("ccpregen", ".bin");
+        try (CubePositionList list = new CubePositionList()) {
+            SplittableRandom rng = new SplittableRandom(1337L);
+            for (int i = 0; i < 200000; i++) {
+                list.add(rng.nextInt(-100, 100), rng.nextInt(-100, 100), rng.nextInt(-100, 100));
+            }
+            list.sort();
+            list.write(file);
+
+            try (CubePositionList read = CubePositionList.read(file)) {
+                if (read.size() != list.size()) {
+                    throw new IllegalStateException("size " + read.size() + " != " + list.size());
+                }
+                for (long i = 0L; i < list.size(); i++) {
+                    long packed = list.get(i);
+                    if (read.get(i) != packed || read.ceilingIndex(packed) != i) {
+                        throw new IllegalStateException("index " + i);
+                    }
+                }
+                if (read.ceilingIndex(0L) != 0L || read.ceilingIndex(-1L) != read.size()) {
+                    throw new IllegalStateException();
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
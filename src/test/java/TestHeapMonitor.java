@@ -0,0 +1,50 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import net.daporkchop.ccpregen.util.HeapMonitor;
+import org.junit.Test;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestHeapMonitor {
+    @Test
+    public void testRetained() throws InterruptedException {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long[] retained = new long[(int) Math.min(maxHeap / 4L / Long.BYTES, Integer.MAX_VALUE - 8)];
+
+        HeapMonitor monitor = new HeapMonitor();
+        monitor.poll();
+        System.gc();
+
+        //garbage collection notifications are delivered asynchronously
+        for (int i = 0; !monitor.poll(); i++) {
+            if (i >= 100) {
+                throw new IllegalStateException("no sample after garbage collection");
+            }
+            Thread.sleep(50L);
+        }
+
+        if (monitor.occupancy() < retained.length * (double) Long.BYTES / maxHeap || monitor.occupancy() > 1.0d) {
+            throw new IllegalStateException("occupancy " + monitor.occupancy() + " doesn't include the retained " + retained.length * Long.BYTES + " bytes");
+        }
+        retained[0] = 1L; //keep the array reachable until here
+    }
+}
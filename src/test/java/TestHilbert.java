@@ -86,6 +86,29 @@ public class TestHilbert {
                 });
     }
 
+    @Test
+    public void test2dIndex() {
+        new SplittableRandom(1337L).longs(4096L).parallel()
+                .mapToObj(SplittableRandom::new)
+                .forEach(rng -> {
+                    int x = rng.nextInt(-10000000, 10000000);
+                    int z = rng.nextInt(-10000000, 10000000);
+
+                    //randomly make the area shorter along some axes
+                    int i = rng.nextInt() & 3;
+                    int sizeX = rng.nextInt(1, (i & 1) != 0 ? 10 : 100);
+                    int sizeZ = rng.nextInt(1, (i & 2) != 0 ? 10 : 100);
+
+                    long index = 0L;
+                    for (Iterator<ChunkPos> itr = Hilbert.hilbert2d(x, z, sizeX, sizeZ).iterator(); itr.hasNext(); index++) {
+                        ChunkPos pos = itr.next();
+                        if (Hilbert.index2d(x, z, sizeX, sizeZ, pos.x, pos.z) != index) {
+                            throw new IllegalStateException(pos + " isn't at index " + index);
+                        }
+                    }
+                });
+    }
+
     @Test
     public void test3dIsFull() {
         new SplittableRandom(1337L).longs(4096L).parallel()
@@ -0,0 +1,73 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import net.daporkchop.ccpregen.metrics.Histogram;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestHistogram {
+    @Test
+    public void testBuckets() {
+        for (int bucket = 0; bucket < Histogram.BUCKETS; bucket++) {
+            long min = Histogram.bucketMin(bucket);
+            long max = Histogram.bucketMax(bucket);
+            if (Histogram.bucket(min) != bucket || Histogram.bucket(max) != bucket) {
+                throw new IllegalStateException("bucket " + bucket + ": [" + min + ", " + max + ']');
+            } else if (bucket > 0 && Histogram.bucketMax(bucket - 1) + 1L != min) {
+                throw new IllegalStateException("gap before bucket " + bucket);
+            } else if (min >= Histogram.SUB_BUCKETS && (max - min + 1L) * Histogram.SUB_BUCKETS > min) {
+                throw new IllegalStateException("bucket " + bucket + " is too wide");
+            }
+        }
+        if (Histogram.bucketMax(Histogram.BUCKETS - 1) != Long.MAX_VALUE) {
+            throw new IllegalStateException();
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        new SplittableRandom(1337L).longs(256L).parallel()
+                .mapToObj(SplittableRandom::new)
+                .forEach(rng -> {
+                    long[] values = rng.longs(rng.nextInt(1, 10000), 0L, 1L << rng.nextInt(1, 48)).toArray();
+                    Histogram histogram = new Histogram("test", "", false);
+                    for (long value : values) {
+                        histogram.record(value);
+                    }
+                    Arrays.sort(values);
+
+                    if (histogram.count() != values.length || histogram.max() != values[values.length - 1]) {
+                        throw new IllegalStateException();
+                    }
+                    for (double quantile : new double[]{ 0.0d, 0.5d, 0.9d, 0.99d, 1.0d }) {
+                        long expected = values[Math.max((int) Math.ceil(quantile * values.length), 1) - 1];
+                        long actual = histogram.quantile(quantile);
+                        if (actual < expected || actual > expected + (expected >> 3)) {
+                            throw new IllegalStateException("quantile " + quantile + ": expected " + expected + ", got " + actual);
+                        }
+                    }
+                });
+    }
+}
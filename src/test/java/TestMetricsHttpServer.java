@@ -0,0 +1,82 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import net.daporkchop.ccpregen.metrics.Metrics;
+import net.daporkchop.ccpregen.metrics.MetricsHttpServer;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestMetricsHttpServer {
+    @Test
+    public void testScrape() throws Exception {
+        Metrics.CUBES_GENERATED.add(1337L);
+        Metrics.SAVE_QUEUE_SIZE.set(42L);
+        for (long i = 0L; i < 1000L; i++) {
+            Metrics.GET_CUBE.record(i * 1000L);
+        }
+
+        MetricsHttpServer server = new MetricsHttpServer("127.0.0.1", 0);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.port() + "/metrics").openConnection();
+            if (connection.getResponseCode() != 200) {
+                throw new IllegalStateException("response code " + connection.getResponseCode());
+            } else if (!MetricsHttpServer.CONTENT_TYPE.equals(connection.getContentType())) {
+                throw new IllegalStateException("content type " + connection.getContentType());
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (InputStream in = connection.getInputStream()) {
+                byte[] buf = new byte[4096];
+                for (int i; (i = in.read(buf)) > 0; ) {
+                    baos.write(buf, 0, i);
+                }
+            }
+            String body = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+
+            for (String expected : new String[]{
+                    "# TYPE ccpregen_cubes_generated counter\n",
+                    "\nccpregen_cubes_generated_total 1337\n",
+                    "# TYPE ccpregen_save_queue_size gauge\n",
+                    "\nccpregen_save_queue_size 42\n",
+                    "# TYPE ccpregen_get_cube_nanos histogram\n",
+                    "\nccpregen_get_cube_nanos_bucket{le=\"+Inf\"} 1000\n",
+                    "\nccpregen_get_cube_nanos_count 1000\n",
+                    "\nccpregen_get_cube_nanos_sum 499500000\n",
+            }) {
+                if (!body.contains(expected)) {
+                    throw new IllegalStateException("missing " + expected.trim() + " in:\n" + body);
+                }
+            }
+            if (!body.endsWith("# EOF\n")) {
+                throw new IllegalStateException("missing EOF");
+            }
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.CubeCursor;
+import net.daporkchop.ccpregen.util.CubePositionList;
+import net.daporkchop.ccpregen.util.Volume;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Simulates generating a volume in every {@link CoordinateOrder} while only a limited number of cubes may stay loaded, and counts how often a cube
+ * which is needed as a neighbor has to be loaded again after being unloaded.
+ *
+ * @author DaPorkchop_
+ */
+public class TestNeighborReloads {
+    //small enough that no order can keep a whole slice or row of columns loaded
+    private static final int WORKING_SET = 1024;
+
+    @Test
+    public void testBricksReloadLess() {
+        Stream.of(
+                new Volume(0, 0, 0, 47, 15, 47),
+                new Volume(0, 0, 0, 63, 7, 63),
+                new Volume(0, 0, 0, 31, 31, 31)
+        ).parallel().forEach(volume -> {
+            Map<CoordinateOrder, Long> reloads = new EnumMap<>(CoordinateOrder.class);
+            for (CoordinateOrder order : CoordinateOrder.values()) {
+                reloads.put(order, reloads(order, volume));
+            }
+
+            long bricks = reloads.get(CoordinateOrder.BRICKS);
+            if (bricks > reloads.get(CoordinateOrder.HILBERT_3D) * 11L / 10L) {
+                throw new IllegalStateException("BRICKS reloads more than HILBERT_3D: " + reloads);
+            }
+            for (CoordinateOrder order : new CoordinateOrder[]{
+                    CoordinateOrder.SLICES_TOP_TO_BOTTOM, CoordinateOrder.SLICES_BOTTOM_TO_TOP,
+                    CoordinateOrder.COLUMNS_TOP_TO_BOTTOM, CoordinateOrder.COLUMNS_BOTTOM_TO_TOP }) {
+                if (bricks * 2L > reloads.get(order)) {
+                    throw new IllegalStateException("BRICKS doesn't reload much less than " + order + ": " + reloads);
+                }
+            }
+        });
+    }
+
+    /**
+     * Generates every cube in the volume at {@code Requirement.LIGHT}, which loads its 3x3x3 neighborhood. The least recently used cube is
+     * unloaded whenever more than {@link #WORKING_SET} cubes are loaded.
+     *
+     * @return the number of times a cube had to be loaded again after being unloaded
+     */
+    private static long reloads(CoordinateOrder order, Volume volume) {
+        LinkedHashMap<Long, Boolean> loaded = new LinkedHashMap<>(16, 0.75f, true);
+        Set<Long> everLoaded = new HashSet<>();
+        long reloads = 0L;
+
+        for (CubeCursor cursor = order.cursor(volume, 0L); cursor.hasNext(); ) {
+            cursor.advance();
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dz = -1; dz <= 1; dz++) {
+                        Long pos = CubePositionList.pack(cursor.x() + dx, cursor.y() + dy, cursor.z() + dz);
+                        if (loaded.get(pos) != null) { //already loaded, this also marks it as recently used
+                            continue;
+                        }
+
+                        if (!everLoaded.add(pos)) {
+                            reloads++;
+                        }
+                        loaded.put(pos, Boolean.TRUE);
+                        if (loaded.size() > WORKING_SET) { //unload the least recently used cube
+                            Iterator<Long> itr = loaded.keySet().iterator();
+                            itr.next();
+                            itr.remove();
+                        }
+                    }
+                }
+            }
+        }
+        return reloads;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import net.daporkchop.ccpregen.PlayerProximityCursor;
+import net.daporkchop.ccpregen.util.CubeCursor;
+import net.daporkchop.ccpregen.util.Volume;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.SplittableRandom;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestPlayerProximityCursor {
+    @Test
+    public void testVisitsEveryCubeOnceAcrossRestarts() {
+        new SplittableRandom(1337L).longs(256L).parallel()
+                .mapToObj(SplittableRandom::new)
+                .forEach(rng -> {
+                    int x = rng.nextInt(-10000000, 10000000);
+                    int y = rng.nextInt(-10000000, 10000000);
+                    int z = rng.nextInt(-10000000, 10000000);
+                    Volume volume = new Volume(x, y, z, x + rng.nextInt(0, 40), y + rng.nextInt(0, 10), z + rng.nextInt(0, 40));
+
+                    BitSet visited = new BitSet();
+                    PlayerProximityCursor cursor = new PlayerProximityCursor(volume);
+                    while (true) {
+                        //generate a random number of cubes, then simulate the job being stopped and resumed
+                        long count = rng.nextLong(1L, volume.total + 1L);
+                        for (long i = 0L; i < count && cursor.hasNext(); i++) {
+                            cursor.advance();
+                            this.visit(volume, visited, cursor);
+                        }
+
+                        if (!cursor.hasNext()) {
+                            break;
+                        }
+                        long completed = cursor.completedCubes() + cursor.nextIndex();
+                        cursor = PlayerProximityCursor.decode(volume, cursor.bitmap(cursor.nextIndex()));
+
+                        //cubes in partially completed regions have to be generated again
+                        if (cursor.completedCubes() > completed || cursor.completedCubes() + cursor.total() != volume.total) {
+                            throw new IllegalStateException("completed " + cursor.completedCubes() + ", total " + cursor.total());
+                        }
+                    }
+
+                    if (visited.cardinality() != volume.total) {
+                        throw new IllegalStateException("visited " + visited.cardinality() + " != " + volume.total);
+                    }
+                });
+    }
+
+    @Test
+    public void testRegionsNearPlayerFirst() {
+        new SplittableRandom(1337L).longs(256L).parallel()
+                .mapToObj(SplittableRandom::new)
+                .forEach(rng -> {
+                    //small enough for every region to be within the default radius
+                    Volume volume = new Volume(0, 0, 0, rng.nextInt(0, 40), rng.nextInt(0, 4), rng.nextInt(0, 40));
+                    double playerX = rng.nextDouble(volume.minX, volume.maxX + 1) * 16.0d;
+                    double playerZ = rng.nextDouble(volume.minZ, volume.maxZ + 1) * 16.0d;
+
+                    PlayerProximityCursor cursor = new PlayerProximityCursor(volume);
+                    cursor.refresh(Collections.singletonMap(new Object(), new double[]{ playerX, playerZ }));
+
+                    //regions must be started in order of increasing distance from the player. distances are truncated to whole squared cubes
+                    // when they're compared, so regions which are almost equally far away may be swapped
+                    double lastDistance = 0.0d;
+                    BitSet visited = new BitSet();
+                    while (cursor.hasNext()) {
+                        cursor.advance();
+                        this.visit(volume, visited, cursor);
+
+                        double dx = (Math.floorDiv(cursor.x() - volume.minX, PlayerProximityCursor.REGION_SIZE) + 0.5d) * PlayerProximityCursor.REGION_SIZE - playerX / 16.0d;
+                        double dz = (Math.floorDiv(cursor.z() - volume.minZ, PlayerProximityCursor.REGION_SIZE) + 0.5d) * PlayerProximityCursor.REGION_SIZE - playerZ / 16.0d;
+                        double distance = dx * dx + dz * dz;
+                        if (distance < lastDistance - 1.0d) {
+                            throw new IllegalStateException("(" + cursor.x() + ", " + cursor.z() + ") is closer to the player than the previous region");
+                        }
+                        lastDistance = Math.max(lastDistance, distance);
+                    }
+
+                    if (visited.cardinality() != volume.total) {
+                        throw new IllegalStateException("visited " + visited.cardinality() + " != " + volume.total);
+                    }
+                });
+    }
+
+    private void visit(Volume volume, BitSet visited, CubeCursor cursor) {
+        if (cursor.x() < volume.minX || cursor.x() > volume.maxX || cursor.y() < volume.minY || cursor.y() > volume.maxY
+            || cursor.z() < volume.minZ || cursor.z() > volume.maxZ) {
+            throw new IllegalStateException("(" + cursor.x() + ", " + cursor.y() + ", " + cursor.z() + ") is outside of the volume");
+        }
+        visited.set(((cursor.x() - volume.minX) * volume.sizeY() + cursor.y() - volume.minY) * volume.sizeZ() + cursor.z() - volume.minZ);
+    }
+}
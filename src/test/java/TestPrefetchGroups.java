@@ -0,0 +1,154 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+import io.github.opencubicchunks.cubicchunks.api.worldgen.ICubeGenerator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.daporkchop.ccpregen.PregenJob;
+import net.daporkchop.ccpregen.PregenLane;
+import net.daporkchop.ccpregen.PrefetchGroups;
+import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.Volume;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that {@link PrefetchGroups} polls a plain async generator at most once per waiting column or brick in each call.
+ *
+ * @author DaPorkchop_
+ */
+public class TestPrefetchGroups {
+    @Test
+    public void testColumns() {
+        test(CoordinateOrder.COLUMNS_TOP_TO_BOTTOM, new Volume(-5, -20, 3, 4, 19, 12), false);
+        test(CoordinateOrder.HILBERT_2D_BOTTOM_TO_TOP, new Volume(0, 0, 0, 7, 31, 7), false);
+    }
+
+    @Test
+    public void testBricks() {
+        test(CoordinateOrder.HILBERT_3D, new Volume(-5, -20, 3, 4, 19, 12), true);
+        test(CoordinateOrder.BRICKS, new Volume(0, 0, 0, 15, 15, 15), true);
+        test(CoordinateOrder.SLICES_TOP_TO_BOTTOM, new Volume(1, 1000000, 1, 8, 1000015, 8), true);
+    }
+
+    @Test
+    public void testOutOfRange() {
+        //the bricks at the top and bottom of the volume are too far away from its middle to be grouped, so they're always polled individually
+        Volume volume = new Volume(0, -4000000, 0, 1, 4000000, 1);
+        AtomicInteger polls = new AtomicInteger();
+        PrefetchGroups groups = new PrefetchGroups(generator(polls, (x, y, z) -> ICubeGenerator.GeneratorReadyState.WAITING), job(CoordinateOrder.BRICKS, volume));
+        for (int i = 0; i < 4; i++) {
+            groups.poll(0, volume.maxY, 0);
+            groups.poll(1, volume.minY, 1);
+            groups.poll(0, 0, 1);
+        }
+        if (polls.get() != 9) {
+            throw new IllegalStateException("polled " + polls.get() + " times");
+        }
+    }
+
+    private static void test(CoordinateOrder order, Volume volume, boolean bricks) {
+        new SplittableRandom(1337L).longs(64L).parallel().forEach(seed -> {
+            SplittableRandom r = new SplittableRandom(seed);
+
+            //each cube becomes ready after a random number of calls, or fails
+            int[] readyAfter = new int[(int) volume.total];
+            for (int i = 0; i < readyAfter.length; i++) {
+                readyAfter[i] = r.nextInt(8) == 0 ? -1 : r.nextInt(6);
+            }
+            int[] call = new int[1];
+            Readiness readiness = (x, y, z) -> {
+                int after = readyAfter[((x - volume.minX) * volume.sizeY() + (y - volume.minY)) * volume.sizeZ() + (z - volume.minZ)];
+                return after < 0 ? ICubeGenerator.GeneratorReadyState.FAIL
+                        : call[0] >= after ? ICubeGenerator.GeneratorReadyState.READY : ICubeGenerator.GeneratorReadyState.WAITING;
+            };
+
+            AtomicInteger polls = new AtomicInteger();
+            PrefetchGroups groups = new PrefetchGroups(generator(polls, readiness), job(order, volume));
+            for (; call[0] < 8; call[0]++) {
+                groups.reset();
+                polls.set(0);
+
+                //poll a random window of positions in random order, like the worker does
+                LongSet waitingGroups = new LongOpenHashSet();
+                int cubes = 0;
+                for (int i = r.nextInt(256); i >= 0; i--) {
+                    int x = volume.minX + r.nextInt(volume.sizeX());
+                    int y = volume.minY + r.nextInt(volume.sizeY());
+                    int z = volume.minZ + r.nextInt(volume.sizeZ());
+                    long group = bricks ? ((long) (x >> 1) << 42) ^ ((long) (y >> 1) << 21) ^ (z >> 1) : ((long) x << 32) ^ (z & 0xFFFFFFFFL);
+
+                    int before = polls.get();
+                    ICubeGenerator.GeneratorReadyState state = groups.poll(x, y, z);
+                    int polled = polls.get() - before;
+                    cubes++;
+
+                    if (state != ICubeGenerator.GeneratorReadyState.WAITING && state != readiness.state(x, y, z)) {
+                        throw new IllegalStateException("position (" + x + ", " + y + ", " + z + ") isn't " + state);
+                    } else if (polled != (waitingGroups.contains(group) ? 0 : 1)) { //polled exactly until the group is waiting
+                        throw new IllegalStateException("position (" + x + ", " + y + ", " + z + ") was polled " + polled + " times");
+                    } else if (state == ICubeGenerator.GeneratorReadyState.WAITING && polled != 0) {
+                        waitingGroups.add(group);
+                    }
+                }
+                if (polls.get() > cubes) {
+                    throw new IllegalStateException("polled " + polls.get() + " times for " + cubes + " cubes");
+                }
+
+                //prefetching a new position always polls it
+                int before = polls.get();
+                groups.prefetch(volume.minX, volume.minY, volume.minZ);
+                if (polls.get() != before + 1) {
+                    throw new IllegalStateException("prefetching didn't poll the generator");
+                }
+            }
+        });
+    }
+
+    private static PregenJob job(CoordinateOrder order, Volume volume) {
+        return new PregenJob(0, 0, volume, order, PregenLane.split(order, volume, 1));
+    }
+
+    private static ICubeGenerator generator(AtomicInteger polls, Readiness readiness) {
+        return (ICubeGenerator) Proxy.newProxyInstance(TestPrefetchGroups.class.getClassLoader(), new Class[]{ ICubeGenerator.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "pollAsyncCubeGenerator":
+                case "pollAsyncCubePopulator":
+                    polls.incrementAndGet();
+                    return readiness.state((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "FakeGenerator";
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Readiness {
+        ICubeGenerator.GeneratorReadyState state(int x, int y, int z);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import net.daporkchop.ccpregen.PregenConfig;
+import net.daporkchop.ccpregen.util.CoordinateOrder;
+import net.daporkchop.ccpregen.util.Volume;
+import org.junit.Test;
+
+import java.util.stream.Stream;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestPregenSimulation {
+    private static final Volume VOLUME = new Volume(0, 0, 0, 31, 7, 31);
+    private static final int[] INTERVALS = { 512, 2048, 8192 }; //each one is a multiple of the previous one
+    private static final int COLUMNS = (VOLUME.sizeX() + 2) * (VOLUME.sizeZ() + 2); //including the neighbors around the edges
+
+    @Test
+    public void testPeriodicUnloading() {
+        Stream.of(CoordinateOrder.values()).parallel().forEach(order -> {
+            for (boolean unloadColumns : new boolean[]{ true, false }) {
+                PregenSimulation previous = null;
+                for (int interval : INTERVALS) {
+                    PregenSimulation simulation = new PregenSimulation(VOLUME, order, interval, unloadColumns).run();
+                    this.check(simulation);
+
+                    //every window of the smaller interval is contained in a window of the larger one
+                    if (previous != null && (simulation.peakCubes < previous.peakCubes || simulation.cubeReloads > previous.cubeReloads)) {
+                        throw new IllegalStateException("longer interval performed better:\n" + previous + '\n' + simulation);
+                    }
+                    previous = simulation;
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testNoUnloading() {
+        Stream.of(CoordinateOrder.values()).parallel().forEach(order -> {
+            PregenSimulation simulation = new PregenSimulation(VOLUME, order, Integer.MAX_VALUE, true).run();
+            this.check(simulation);
+            if (simulation.cubeReloads != 0L || simulation.columnReloads != 0L) {
+                throw new IllegalStateException("reloaded without unloading: " + simulation);
+            } else if (simulation.peakCubes != (VOLUME.sizeX() + 2) * (VOLUME.sizeY() + 2) * (VOLUME.sizeZ() + 2)) {
+                throw new IllegalStateException("not every cube was loaded: " + simulation);
+            }
+        });
+    }
+
+    @Test
+    public void testColumnsUnloading() {
+        Stream.of(CoordinateOrder.values()).parallel().forEach(order -> {
+            for (boolean immediateCubeSave : new boolean[]{ false, true }) {
+                PregenSimulation frontier = new PregenSimulation(VOLUME, order, PregenConfig.UnloadMode.FRONTIER).immediateCubeSave(immediateCubeSave).run();
+                PregenSimulation columns = new PregenSimulation(VOLUME, order, PregenConfig.UnloadMode.COLUMNS).immediateCubeSave(immediateCubeSave).run();
+                this.check(frontier);
+                this.check(columns);
+
+                if (!order.columnMajor()) { //falls back to FRONTIER
+                    if (columns.peakCubes != frontier.peakCubes || columns.cubeReloads != frontier.cubeReloads || columns.saves != frontier.saves) {
+                        throw new IllegalStateException("COLUMNS didn't fall back to FRONTIER:\n" + frontier + '\n' + columns);
+                    }
+                } else if (columns.cubeReloads != 0L || columns.columnReloads != 0L || columns.peakCubes > frontier.peakCubes) {
+                    throw new IllegalStateException("COLUMNS performed worse than FRONTIER:\n" + frontier + '\n' + columns);
+                } else if (!immediateCubeSave && columns.columnSaves != COLUMNS) {
+                    throw new IllegalStateException("columns weren't saved exactly once: " + columns);
+                } else if (columns.leftoverCubes != 0) {
+                    throw new IllegalStateException("cubes were still loaded when the job finished: " + columns);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testResume() {
+        //resume from the middle of a column, so that it was partially generated before the restart
+        long resumeIndex = VOLUME.total / 2L + VOLUME.sizeY() / 2;
+        Stream.of(CoordinateOrder.values()).parallel().filter(CoordinateOrder::columnMajor).forEach(order -> {
+            PregenSimulation fresh = new PregenSimulation(VOLUME, order, PregenConfig.UnloadMode.COLUMNS).run();
+            PregenSimulation resumed = new PregenSimulation(VOLUME, order, PregenConfig.UnloadMode.COLUMNS).resumeAt(resumeIndex).run();
+            this.check(resumed);
+
+            //columns which were partially or fully generated before the restart must still be finished and unloaded
+            if (resumed.leftoverCubes != 0 || resumed.peakCubes > fresh.peakCubes) {
+                throw new IllegalStateException("cubes were pinned after resuming:\n" + fresh + '\n' + resumed);
+            }
+        });
+    }
+
+    @Test
+    public void testBricksUnloading() {
+        Stream.of(
+                VOLUME,
+                new Volume(0, 0, 0, 47, 15, 47),
+                new Volume(0, 0, 0, 63, 7, 63),
+                new Volume(0, 0, 0, 31, 31, 31)
+        ).parallel().forEach(volume -> {
+            //the cubes around unfinished bricks are kept until nothing needs them any more, so they're never loaded again
+            PregenSimulation hilbert = new PregenSimulation(volume, CoordinateOrder.HILBERT_3D, PregenConfig.UnloadMode.FRONTIER).run();
+            PregenSimulation bricks = new PregenSimulation(volume, CoordinateOrder.BRICKS, PregenConfig.UnloadMode.FRONTIER).run();
+            if (bricks.cubeReloads != 0L || bricks.cubeReloads >= hilbert.cubeReloads || bricks.peakCubes > hilbert.peakCubes) {
+                throw new IllegalStateException("BRICKS didn't perform better than HILBERT_3D:\n" + hilbert + '\n' + bricks);
+            }
+
+            //PERIODIC unloading skips them as well
+            hilbert = new PregenSimulation(volume, CoordinateOrder.HILBERT_3D, INTERVALS[0], true).run();
+            bricks = new PregenSimulation(volume, CoordinateOrder.BRICKS, INTERVALS[0], true).run();
+            if (bricks.cubeReloads != 0L || bricks.cubeReloads >= hilbert.cubeReloads) {
+                throw new IllegalStateException("BRICKS didn't reload less than HILBERT_3D:\n" + hilbert + '\n' + bricks);
+            }
+        });
+    }
+
+    @Test
+    public void testImmediateCubeSave() {
+        Stream.of(CoordinateOrder.values()).parallel().forEach(order -> {
+            for (PregenConfig.UnloadMode mode : PregenConfig.UnloadMode.values()) {
+                PregenSimulation onUnload = new PregenSimulation(VOLUME, order, mode, INTERVALS[0], true).run();
+                PregenSimulation immediate = new PregenSimulation(VOLUME, order, mode, INTERVALS[0], true).immediateCubeSave(true).run();
+                this.check(onUnload);
+                this.check(immediate);
+
+                //saving early can only cause cubes which are modified again afterwards to be saved again
+                if (immediate.saves < onUnload.saves || immediate.peakCubes != onUnload.peakCubes) {
+                    throw new IllegalStateException("saving immediately saved less or changed what was loaded:\n" + onUnload + '\n' + immediate);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testMemoryPressure() {
+        int heapCubes = VOLUME.sizeX() * VOLUME.sizeY() * VOLUME.sizeZ() / 8;
+        int targetCubes = heapCubes * PregenConfig.heapTargetMaxPercent / 100;
+        Stream.of(CoordinateOrder.values()).parallel().forEach(order -> {
+            PregenSimulation unlimited = new PregenSimulation(VOLUME, order, PregenConfig.UnloadMode.FRONTIER).run();
+            PregenSimulation limited = new PregenSimulation(VOLUME, order, PregenConfig.UnloadMode.FRONTIER).heapCubes(heapCubes).run();
+            this.check(limited);
+
+            //cubes are only unloaded early if more are loaded than the heap's target occupancy
+            if (unlimited.peakCubes > targetCubes ? limited.peakCubes >= unlimited.peakCubes : limited.peakCubes != unlimited.peakCubes) {
+                throw new IllegalStateException("memory pressure had the wrong effect:\n" + unlimited + '\n' + limited);
+            }
+
+            //cubes in unfinished columns are only unloaded early once the working set limit has been hit, but the others still are
+            unlimited = new PregenSimulation(VOLUME, order, PregenConfig.UnloadMode.COLUMNS).run();
+            limited = new PregenSimulation(VOLUME, order, PregenConfig.UnloadMode.COLUMNS).heapCubes(heapCubes).run();
+            this.check(limited);
+            if (limited.peakCubes > unlimited.peakCubes) {
+                throw new IllegalStateException("memory pressure loaded more cubes:\n" + unlimited + '\n' + limited);
+            }
+
+            //PERIODIC unloading waits until the heap is getting full
+            PregenSimulation periodic = new PregenSimulation(VOLUME, order, INTERVALS[0], true).heapCubes(heapCubes).run();
+            this.check(periodic);
+            if (periodic.peakCubes <= new PregenSimulation(VOLUME, order, INTERVALS[0], true).run().peakCubes) {
+                throw new IllegalStateException("PERIODIC unloading didn't wait for memory pressure: " + periodic);
+            }
+        });
+    }
+
+    @Test
+    public void testWorkingSetLimitGrowth() {
+        int maxWorkingSetCubes = PregenConfig.maxWorkingSetCubes;
+        PregenConfig.maxWorkingSetCubes = 64;
+        try {
+            Stream.of(CoordinateOrder.values()).parallel().forEach(order -> {
+                //the heap is practically empty, so the limit keeps growing, but only up to a multiple of maxWorkingSetCubes
+                PregenSimulation simulation = new PregenSimulation(VOLUME, order, PregenConfig.UnloadMode.FRONTIER).heapCubes(Integer.MAX_VALUE);
+                simulation.gcInterval = simulation.cubesPerCall;
+                simulation.run();
+                this.check(simulation);
+                if (simulation.peakCubes > PregenConfig.maxWorkingSetCubes * 8 * 2) { //cubes loaded since the previous unload call come on top of the limit
+                    throw new IllegalStateException("the working set limit grew too much: " + simulation);
+                }
+            });
+        } finally {
+            PregenConfig.maxWorkingSetCubes = maxWorkingSetCubes;
+        }
+    }
+
+    private void check(PregenSimulation simulation) {
+        if (simulation.saves < VOLUME.total - simulation.resumeIndex + (simulation.resumeIndex == 0L ? COLUMNS : 0L)) {
+            throw new IllegalStateException("not every cube and column was saved: " + simulation);
+        } else if (!simulation.unloadColumns && (simulation.columnReloads != 0L || simulation.peakColumns != COLUMNS)) {
+            throw new IllegalStateException("columns were unloaded: " + simulation);
+        } else if (simulation.peakColumns > COLUMNS) {
+            throw new IllegalStateException("too many columns: " + simulation);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Adapted from The MIT License (MIT)
+ *
+ * Copyright (c) 2020-2022 DaPorkchop_
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software
+ * is furnished to do so, subject to the following conditions:
+ *
+ * Any persons and/or organizations using this software must include the above copyright notice and this permission notice,
+ * provide sufficient credit to the original authors of the project (IE: DaPorkchop_), as well as provide a link to the original project.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+
+import net.daporkchop.ccpregen.util.ProgressTracker;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * @author DaPorkchop_
+ */
+public class TestProgressTracker {
+    @Test
+    public void testOutOfOrderCompletion() {
+        new SplittableRandom(1337L).longs(256L).parallel()
+                .mapToObj(SplittableRandom::new)
+                .forEach(rng -> {
+                    int total = rng.nextInt(1, 5000);
+                    int window = rng.nextInt(1, 2048);
+                    BitSet reference = new BitSet(total);
+                    ProgressTracker tracker = new ProgressTracker();
+
+                    //complete indices in random order, but never more than the window size ahead of the first incomplete index
+                    while (reference.cardinality() < total) {
+                        int first = reference.nextClearBit(0);
+                        int index = Math.min(first + rng.nextInt(window), total - 1);
+                        boolean changed = !reference.get(index);
+                        reference.set(index);
+
+                        if (tracker.markComplete(index) != changed) {
+                            throw new IllegalStateException("markComplete(" + index + ") returned " + !changed);
+                        }
+
+                        if (rng.nextInt(64) == 0) { //simulate saving and restoring the progress
+                            tracker = new ProgressTracker(tracker.watermark(), tracker.encodeBitmap());
+                            this.check(reference, tracker, total);
+                        } else if (tracker.watermark() != reference.nextClearBit(0) || tracker.completed() != reference.cardinality()) {
+                            throw new IllegalStateException("watermark " + tracker.watermark() + ", completed " + tracker.completed());
+                        }
+                    }
+
+                    if (tracker.watermark() != total || !tracker.encodeBitmap().isEmpty()) {
+                        throw new IllegalStateException();
+                    }
+                });
+    }
+
+    private void check(BitSet reference, ProgressTracker tracker, int total) {
+        if (tracker.watermark() != reference.nextClearBit(0)) {
+            throw new IllegalStateException("watermark " + tracker.watermark() + " != " + reference.nextClearBit(0));
+        } else if (tracker.completed() != reference.cardinality()) {
+            throw new IllegalStateException("completed " + tracker.completed() + " != " + reference.cardinality());
+        }
+
+        for (int i = 0; i < total; i++) {
+            if (tracker.isComplete(i) != reference.get(i)) {
+                throw new IllegalStateException("isComplete(" + i + ") != " + reference.get(i));
+            }
+        }
+    }
+}